@@ -0,0 +1,66 @@
+package org.the429ers.gameboy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/***
+ *
+ * ROMs for the benchmarks. Real games can be passed with -p rom=path/to/game.gb;
+ * by default a small generated ROM is used so the benchmarks run anywhere.
+ *
+ */
+public class BenchmarkRoms {
+    public static final int BOOT_FRAMES = 200; //the boot ROM takes about 150 frames to hand over to the cartridge
+
+    private static final int[] NINTENDO_LOGO = {
+            0xCE, 0xED, 0x66, 0x66, 0xCC, 0x0D, 0x00, 0x0B, 0x03, 0x73, 0x00, 0x83, 0x00, 0x0C, 0x00, 0x0D,
+            0x00, 0x08, 0x11, 0x1F, 0x88, 0x89, 0x00, 0x0E, 0xDC, 0xCC, 0x6E, 0xE6, 0xDD, 0xDD, 0xD9, 0x99,
+            0xBB, 0xBB, 0x67, 0x63, 0x6E, 0x0E, 0xEC, 0xCC, 0xDD, 0xDC, 0x99, 0x9F, 0xBB, 0xB9, 0x33, 0x3E};
+
+    //loads, ALU, CB prefixed and jumps over work RAM, forever
+    private static final int[] PROGRAM = {
+            0x21, 0x00, 0xC0, //      LD HL,C000
+            0x06, 0x00,       //      LD B,0
+            0x2A,             //loop: LD A,(HL+)
+            0x80,             //      ADD A,B
+            0x77,             //      LD (HL),A
+            0x04,             //      INC B
+            0xCB, 0x27,       //      SLA A
+            0x7C,             //      LD A,H
+            0xFE, 0xD0,       //      CP D0
+            0x20, 0xF5,       //      JR NZ,loop
+            0x21, 0x00, 0xC0, //      LD HL,C000
+            0x18, 0xF0};      //      JR loop
+
+    private static String synthetic;
+
+    //path of the given ROM, or of the generated one if rom is empty
+    public static synchronized String path(String rom) throws IOException {
+        if (!rom.isEmpty()) {
+            return rom;
+        }
+        if (synthetic == null) {
+            byte[] data = new byte[0x8000];
+            int[] entry = {0x00, 0xC3, 0x50, 0x01}; //NOP, JP 0150
+            for (int i = 0; i < entry.length; i++) data[0x100 + i] = (byte) entry[i];
+            for (int i = 0; i < NINTENDO_LOGO.length; i++) data[0x104 + i] = (byte) NINTENDO_LOGO[i];
+            int checksum = 0;
+            for (int i = 0x134; i <= 0x14C; i++) checksum = checksum - data[i] - 1;
+            data[0x14D] = (byte) checksum;
+            for (int i = 0; i < PROGRAM.length; i++) data[0x150 + i] = (byte) PROGRAM[i];
+            File file = File.createTempFile("benchmark", ".gb");
+            file.deleteOnExit();
+            Files.write(file.toPath(), data);
+            synthetic = file.getPath();
+        }
+        return synthetic;
+    }
+
+    //an emulator that has finished booting, without a screen or sound
+    public static Emulator booted(String rom) throws IOException {
+        Emulator emulator = new Emulator(path(rom), null, null);
+        emulator.runFrames(BOOT_FRAMES);
+        return emulator;
+    }
+}
@@ -0,0 +1,50 @@
+package org.the429ers.gameboy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ * Executing instructions, including clocking the PPU, timer and link cable
+ * for each of them like the emulator always does.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CpuBenchmark {
+    private static final int INSTRUCTIONS = 1000;
+
+    @Param("")
+    String rom;
+
+    Emulator emulator;
+    CPU cpu;
+
+    @Setup
+    public void setUp() throws IOException {
+        emulator = BenchmarkRoms.booted(rom);
+        cpu = emulator.getCPU();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public long executeOneInstruction() {
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            cpu.executeOneInstruction(false, true);
+        }
+        return emulator.getTotalClocks();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long runFrame() {
+        emulator.runFrames(1);
+        return emulator.getTotalClocks();
+    }
+}
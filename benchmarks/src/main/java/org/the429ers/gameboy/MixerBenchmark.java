@@ -0,0 +1,45 @@
+package org.the429ers.gameboy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ * Mixing one video frame of samples from the four channels, without the
+ * synthesis in front of it or the audio output behind it.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MixerBenchmark {
+    private static final int SAMPLES = SoundChip.SAMPLES_PER_FRAME;
+
+    int[][] channels = new int[4][SAMPLES];
+    int[] leftGains = new int[4];
+    int[] rightGains = new int[4];
+    byte[] out = new byte[SAMPLES * StereoMixer.BYTES_PER_FRAME];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        for (int[] channel : channels) {
+            for (int i = 0; i < SAMPLES; i++) {
+                channel[i] = random.nextInt(2 * 15 * SoundChannel.AMPLITUDE) - 15 * SoundChannel.AMPLITUDE;
+            }
+        }
+        StereoMixer.computeGains(new boolean[] {true, true, false, true}, 7, leftGains);
+        StereoMixer.computeGains(new boolean[] {true, false, true, true}, 5, rightGains);
+    }
+
+    @Benchmark
+    public byte[] mixFrame() {
+        StereoMixer.mix(channels, SAMPLES, leftGains, rightGains, out);
+        return out;
+    }
+}
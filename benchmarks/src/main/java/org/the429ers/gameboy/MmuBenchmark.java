@@ -0,0 +1,86 @@
+package org.the429ers.gameboy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ * Memory accesses spread over ROM, work RAM and high RAM. readByte and
+ * writeByte are the direct path, slowReadByte and slowWriteByte are the CPU's
+ * bus accesses, which also clock the rest of the machine for 4 cycles and
+ * check watchpoints.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MmuBenchmark {
+    private static final int ACCESSES = 4096;
+
+    @Param("")
+    String rom;
+
+    MMU mmu;
+    int[] readAddresses = new int[ACCESSES];
+    int[] writeAddresses = new int[ACCESSES];
+
+    @Setup
+    public void setUp() throws IOException {
+        mmu = BenchmarkRoms.booted(rom).getMMU();
+        Random random = new Random(0);
+        for (int i = 0; i < ACCESSES; i++) {
+            int region = random.nextInt(8);
+            if (region < 4) {
+                readAddresses[i] = random.nextInt(0x8000);
+            } else if (region < 7) {
+                readAddresses[i] = 0xc000 + random.nextInt(0x2000);
+            } else {
+                readAddresses[i] = 0xff80 + random.nextInt(0x7f);
+            }
+            //writes stay out of ROM and IO so they don't switch banks or poke hardware
+            writeAddresses[i] = region < 7 ? 0xc000 + random.nextInt(0x2000) : 0xff80 + random.nextInt(0x7f);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int readByte() {
+        int sum = 0;
+        for (int location : readAddresses) {
+            sum += mmu.readByte(location);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void writeByte() {
+        for (int i = 0; i < ACCESSES; i++) {
+            mmu.writeByte(writeAddresses[i], i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int slowReadByte() {
+        int sum = 0;
+        for (int location : readAddresses) {
+            sum += mmu.slowReadByte(location);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void slowWriteByte() {
+        for (int i = 0; i < ACCESSES; i++) {
+            mmu.slowWriteByte(writeAddresses[i], i & 0xff);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.the429ers.gameboy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ * One frame's worth of PPU ticks, with and without composing pixels.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PpuBenchmark {
+    @Param("")
+    String rom;
+
+    @Param({"false", "true"})
+    boolean skipRendering;
+
+    IPPU ppu;
+
+    @Setup
+    public void setUp() throws IOException {
+        ppu = BenchmarkRoms.booted(rom).getPPU();
+        ppu.setSkipRendering(skipRendering);
+    }
+
+    @Benchmark
+    public boolean tickFrame() {
+        boolean drew = false;
+        for (int i = 0; i < Emulator.CLOCKS_PER_FRAME; i++) {
+            ppu.tick();
+            drew |= ppu.drewFrame();
+        }
+        return drew;
+    }
+}
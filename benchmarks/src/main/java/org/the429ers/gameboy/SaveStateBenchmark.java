@@ -0,0 +1,57 @@
+package org.the429ers.gameboy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ * Save states the way the frontend makes them, by serializing the MMU and
+ * everything it reaches, and forking, which autosaves could use instead.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SaveStateBenchmark {
+    @Param("")
+    String rom;
+
+    Emulator emulator;
+    byte[] saved;
+
+    @Setup
+    public void setUp() throws IOException {
+        emulator = BenchmarkRoms.booted(rom);
+        saved = save();
+    }
+
+    @Benchmark
+    public byte[] save() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(emulator.getMMU());
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public MMU load() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(saved))) {
+            return (MMU) in.readObject();
+        }
+    }
+
+    @Benchmark
+    public Emulator fork() {
+        return emulator.fork();
+    }
+}
@@ -0,0 +1,62 @@
+package org.the429ers.gameboy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ * Synthesizing and mixing one frame of sound with all four channels playing,
+ * with some register writes in between like a music driver makes.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SoundChipBenchmark {
+    @Param({"0", "16"})
+    int writesPerFrame;
+
+    //wants every sample and throws it away
+    static class DiscardingSink implements AudioSink {
+        @Override
+        public int write(byte[] samples, int off, int len) {
+            return len;
+        }
+    }
+
+    SoundChip soundChip;
+    long now = 0;
+    int frequency = 0;
+
+    @Setup
+    public void setUp() {
+        soundChip = new SoundChip(new DiscardingSink());
+        int[][] writes = {
+                {0xff11, 0x80}, {0xff12, 0xf0}, {0xff13, 0xd6}, {0xff14, 0x86}, //square 1, 440 Hz
+                {0xff16, 0x40}, {0xff17, 0xf3}, {0xff18, 0x00}, {0xff19, 0x87}, //square 2 with a decaying envelope
+                {0xff1a, 0x80}, {0xff1c, 0x20}, {0xff1d, 0x00}, {0xff1e, 0x86}, //wave
+                {0xff21, 0xf1}, {0xff22, 0x31}, {0xff23, 0x80}, //noise
+        };
+        for (int i = 0; i < 16; i++) {
+            soundChip.writeRegister(0xff30 + i, i * 0x11, 0);
+        }
+        for (int[] write : writes) {
+            soundChip.writeRegister(write[0], write[1], 0);
+        }
+    }
+
+    @Benchmark
+    public long tick() {
+        for (int i = 0; i < writesPerFrame; i++) {
+            frequency = (frequency + 37) & 0xff;
+            soundChip.writeRegister(0xff18, frequency, now + (long) i * Emulator.CLOCKS_PER_FRAME / writesPerFrame);
+        }
+        now += Emulator.CLOCKS_PER_FRAME;
+        soundChip.tick(now);
+        return now;
+    }
+}
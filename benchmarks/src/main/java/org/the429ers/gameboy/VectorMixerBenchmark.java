@@ -0,0 +1,64 @@
+package org.the429ers.gameboy;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ * StereoMixer.mix written with the incubating Vector API, run next to the
+ * scalar mixFrame inherited from MixerBenchmark. Left and right are packed into the low and high half of
+ * an int, which is one little endian frame, so the lanes can be stored
+ * without interleaving. Needs --add-modules jdk.incubator.vector, which
+ * the benchmark forks pass on.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class VectorMixerBenchmark extends MixerBenchmark {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    public static void mix(int[][] channels, int count, int[] leftGains, int[] rightGains, byte[] out) {
+        int[] c0 = channels[0], c1 = channels[1], c2 = channels[2], c3 = channels[3];
+        int l0 = leftGains[0], l1 = leftGains[1], l2 = leftGains[2], l3 = leftGains[3];
+        int r0 = rightGains[0], r1 = rightGains[1], r2 = rightGains[2], r3 = rightGains[3];
+        int i = 0;
+        for (int bound = INTS.loopBound(count); i < bound; i += INTS.length()) {
+            IntVector s0 = IntVector.fromArray(INTS, c0, i);
+            IntVector s1 = IntVector.fromArray(INTS, c1, i);
+            IntVector s2 = IntVector.fromArray(INTS, c2, i);
+            IntVector s3 = IntVector.fromArray(INTS, c3, i);
+            IntVector left = s0.mul(l0).add(s1.mul(l1)).add(s2.mul(l2)).add(s3.mul(l3))
+                    .lanewise(VectorOperators.ASHR, StereoMixer.GAIN_SHIFT).max(Short.MIN_VALUE).min(Short.MAX_VALUE);
+            IntVector right = s0.mul(r0).add(s1.mul(r1)).add(s2.mul(r2)).add(s3.mul(r3))
+                    .lanewise(VectorOperators.ASHR, StereoMixer.GAIN_SHIFT).max(Short.MIN_VALUE).min(Short.MAX_VALUE);
+            left.and(0xffff).or(right.lanewise(VectorOperators.LSHL, 16)).reinterpretAsBytes()
+                    .intoByteArray(out, StereoMixer.BYTES_PER_FRAME * i, ByteOrder.LITTLE_ENDIAN);
+        }
+        //the samples that don't fill a whole vector
+        for (; i < count; i++) {
+            int s0 = c0[i], s1 = c1[i], s2 = c2[i], s3 = c3[i];
+            int left = (s0 * l0 + s1 * l1 + s2 * l2 + s3 * l3) >> StereoMixer.GAIN_SHIFT;
+            int right = (s0 * r0 + s1 * r1 + s2 * r2 + s3 * r3) >> StereoMixer.GAIN_SHIFT;
+            int frame = (Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, left)) & 0xffff)
+                    | Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, right)) << 16;
+            for (int b = 0; b < StereoMixer.BYTES_PER_FRAME; b++) {
+                out[StereoMixer.BYTES_PER_FRAME * i + b] = (byte) (frame >> 8 * b);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] mixFrameWithVectors() {
+        mix(channels, channels[0].length, leftGains, rightGains, out);
+        return out;
+    }
+}
@@ -0,0 +1,60 @@
+package org.the429ers.gameboy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/***
+ *
+ * Skipping ahead while the CPU is halted has to be exactly the same as
+ * stepping through HALT 4 cycles at a time.
+ *
+ */
+class HaltSkipTest {
+    public static final int FRAMES = TestRoms.BOOT_FRAMES + 120;
+
+    //counts VBlank and timer interrupts in C000 and C001, and wakeups in B
+    private static final int[] PROGRAM = {
+            0x3E, 0x04, 0xE0, 0x07, //LD A,04 ; LDH (07),A    timer on at 4096 Hz
+            0x3E, 0x05, 0xE0, 0xFF, //LD A,05 ; LDH (FF),A    VBlank and timer
+            0xFB,                   //EI
+            0x76,                   //HALT
+            0x04,                   //INC B
+            0x18, 0xFC};            //JR -4
+    private static final int[] COUNT_VBLANK = {0xE5, 0x21, 0x00, 0xC0, 0x34, 0xE1, 0xD9}; //PUSH HL ; LD HL,C000 ; INC (HL) ; POP HL ; RETI
+    private static final int[] COUNT_TIMER = {0xE5, 0x21, 0x01, 0xC0, 0x34, 0xE1, 0xD9}; //the same with C001
+
+    private static Emulator run(String rom, boolean stepHalt, FrameHashRecorder hashes) {
+        Emulator emulator = new Emulator(rom, null, null);
+        emulator.getCPU().stepHalt = stepHalt;
+        emulator.setFrameSink(hashes);
+        emulator.runFrames(FRAMES);
+        return emulator;
+    }
+
+    private static int[] registers(Emulator emulator) {
+        RegisterFile regs = emulator.getCPU().regs;
+        return new int[] {regs.AF.read(), regs.BC.read(), regs.DE.read(), regs.HL.read(), regs.SP.read(), regs.PC.read()};
+    }
+
+    @Test
+    void skippingMatchesStepping() throws Exception {
+        String rom = TestRoms.write(PROGRAM, COUNT_VBLANK, null, COUNT_TIMER);
+        FrameHashRecorder steppedHashes = new FrameHashRecorder();
+        FrameHashRecorder skippedHashes = new FrameHashRecorder();
+        Emulator stepped = run(rom, true, steppedHashes);
+        Emulator skipped = run(rom, false, skippedHashes);
+
+        assertEquals(stepped.getTotalClocks(), skipped.getTotalClocks());
+        assertEquals(FRAMES, skippedHashes.size());
+        assertArrayEquals(steppedHashes.getHashes(), skippedHashes.getHashes());
+        assertArrayEquals(registers(stepped), registers(skipped));
+        MMU steppedMemory = stepped.getMMU();
+        MMU skippedMemory = skipped.getMMU();
+        assertEquals(steppedMemory.readByte(0xC000), skippedMemory.readByte(0xC000));
+        assertEquals(steppedMemory.readByte(0xC001), skippedMemory.readByte(0xC001));
+        assertEquals(InputMovie.hashRam(steppedMemory, InputMovie.ramBuffer(steppedMemory)),
+                InputMovie.hashRam(skippedMemory, InputMovie.ramBuffer(skippedMemory)));
+    }
+}
@@ -0,0 +1,74 @@
+package org.the429ers.gameboy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/***
+ *
+ * Skipping the iterations of an idle polling loop has to be exactly the same
+ * as running them.
+ *
+ */
+class IdleLoopSkipTest {
+    public static final int FRAMES = TestRoms.BOOT_FRAMES + 120;
+
+    //waits for line 0x90 and then for the VBlank handler, counting frames in C002 and
+    //logging TIMA after every wait to C100-C1FF, so leaving a loop late shows up in RAM
+    private static final int[] PROGRAM = {
+            0x3E, 0x05, 0xE0, 0x07,             //LD A,05 ; LDH (07),A    timer on at 262144 Hz
+            0x3E, 0x05, 0xE0, 0xFF,             //LD A,05 ; LDH (FF),A    VBlank and timer
+            0x11, 0x00, 0xC1,                   //LD DE,C100
+            0xFB,                               //EI
+            0xF0, 0x44, 0xFE, 0x90, 0x20, 0xFA, //loop: LDH A,(44) ; CP 90 ; JR NZ,-6    wait for line 0x90
+            0xF0, 0x05, 0x12, 0x1C,             //LDH A,(05) ; LD (DE),A ; INC E
+            0xFA, 0x02, 0xC0, 0x3C, 0xEA, 0x02, 0xC0, //LD A,(C002) ; INC A ; LD (C002),A
+            0xF0, 0x44, 0xFE, 0x90, 0x28, 0xFA, //LDH A,(44) ; CP 90 ; JR Z,-6    wait for the next line
+            0xF0, 0x05, 0x12, 0x1C,             //LDH A,(05) ; LD (DE),A ; INC E
+            0x21, 0x80, 0xFF,                   //LD HL,FF80
+            0x7E, 0xA7, 0x28, 0xFC,             //LD A,(HL) ; AND A ; JR Z,-4    wait for the VBlank handler
+            0xF0, 0x05, 0x12, 0x1C,             //LDH A,(05) ; LD (DE),A ; INC E
+            0xAF, 0x77,                         //XOR A ; LD (HL),A
+            0x18, 0xD6};                        //JR loop
+    private static final int[] COUNT_VBLANK = {0xE5, 0x21, 0x80, 0xFF, 0x34, 0xE1, 0xD9}; //PUSH HL ; LD HL,FF80 ; INC (HL) ; POP HL ; RETI
+    private static final int[] COUNT_TIMER = {0xE5, 0x21, 0x01, 0xC0, 0x34, 0xE1, 0xD9}; //the same with C001
+
+    private static Emulator run(String rom, boolean skipping, FrameHashRecorder hashes) {
+        Emulator emulator = new Emulator(rom, null, null);
+        emulator.setIdleLoopSkipping(skipping);
+        emulator.setFrameSink(hashes);
+        emulator.runFrames(FRAMES);
+        return emulator;
+    }
+
+    private static int[] registers(Emulator emulator) {
+        RegisterFile regs = emulator.getCPU().regs;
+        return new int[] {regs.AF.read(), regs.BC.read(), regs.DE.read(), regs.HL.read(), regs.SP.read(), regs.PC.read()};
+    }
+
+    @Test
+    void skippingMatchesPolling() throws Exception {
+        String rom = TestRoms.write(PROGRAM, COUNT_VBLANK, null, COUNT_TIMER);
+        FrameHashRecorder polledHashes = new FrameHashRecorder();
+        FrameHashRecorder skippedHashes = new FrameHashRecorder();
+        Emulator polled = run(rom, false, polledHashes);
+        Emulator skipped = run(rom, true, skippedHashes);
+
+        assertEquals(0, polled.getIdleLoopSkipper().getSkippedCycles());
+        assertTrue(skipped.getIdleLoopSkipper().getSkippedCycles() > 0);
+        assertTrue(polled.getMMU().readByte(0xC002) > 0);
+
+        assertEquals(polled.getTotalClocks(), skipped.getTotalClocks());
+        assertEquals(FRAMES, skippedHashes.size());
+        assertArrayEquals(polledHashes.getHashes(), skippedHashes.getHashes());
+        assertArrayEquals(registers(polled), registers(skipped));
+        MMU polledMemory = polled.getMMU();
+        MMU skippedMemory = skipped.getMMU();
+        assertEquals(polledMemory.readByte(0xC001), skippedMemory.readByte(0xC001));
+        assertEquals(polledMemory.readByte(0xC002), skippedMemory.readByte(0xC002));
+        assertEquals(InputMovie.hashRam(polledMemory, InputMovie.ramBuffer(polledMemory)),
+                InputMovie.hashRam(skippedMemory, InputMovie.ramBuffer(skippedMemory)));
+    }
+}
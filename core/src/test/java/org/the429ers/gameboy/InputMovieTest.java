@@ -0,0 +1,105 @@
+package org.the429ers.gameboy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.awt.Canvas;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/***
+ *
+ * Records a movie of random key presses on a generated ROM, saves and loads
+ * it, and replays it, which has to match the recording on every frame.
+ *
+ */
+class InputMovieTest {
+    public static final int FRAMES = 300;
+
+    //adds the directions held to the bytes of C000-C0FF in turn and copies each sum into VRAM
+    private static final int[] PROGRAM = {
+            0x21, 0x00, 0xC0, //      LD HL,C000
+            0x11, 0x10, 0x80, //      LD DE,8010
+            0x3E, 0x20,       //loop: LD A,20     select the directions
+            0xE0, 0x00,       //      LDH (00),A
+            0xF0, 0x00,       //      LDH A,(00)
+            0x2F,             //      CPL
+            0xE6, 0x0F,       //      AND 0F
+            0x86,             //      ADD A,(HL)
+            0x22,             //      LD (HL+),A
+            0x12,             //      LD (DE),A
+            0x1C,             //      INC E
+            0x7C,             //      LD A,H
+            0xFE, 0xC1,       //      CP C1
+            0x20, 0xEE,       //      JR NZ,loop
+            0x26, 0xC0,       //      LD H,C0
+            0x18, 0xEA};      //      JR loop
+    private static final int[] KEYS = {KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_DOWN};
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void restoreColorMode() {
+        Pallette.colorMode = Pallette.GRAY_MODE;
+    }
+
+    private InputMovie record(String rom) {
+        Emulator emulator = new Emulator(rom, null, null);
+        emulator.runFrames(TestRoms.BOOT_FRAMES);
+        MovieRecorder recorder;
+        try {
+            recorder = new MovieRecorder(emulator, rom);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        int[] frames = {0};
+        emulator.setFrameSink(recorder);
+        emulator.setFrameListener(() -> {
+            recorder.frameEnded();
+            frames[0]++;
+        });
+        Joypad joypad = emulator.getJoypad();
+        Canvas source = new Canvas();
+        Random random = new Random(1);
+        while (frames[0] < FRAMES) {
+            int key = KEYS[random.nextInt(KEYS.length)];
+            joypad.keyPressed(new KeyEvent(source, KeyEvent.KEY_PRESSED, 0, 0, key, KeyEvent.CHAR_UNDEFINED));
+            emulator.runFrames(1 + random.nextInt(3));
+            joypad.keyReleased(new KeyEvent(source, KeyEvent.KEY_RELEASED, 0, 0, key, KeyEvent.CHAR_UNDEFINED));
+            emulator.runFrames(random.nextInt(2));
+        }
+        return recorder.finish();
+    }
+
+    @Test
+    void replayMatchesRecording() throws IOException {
+        String rom = TestRoms.write(PROGRAM);
+        Pallette.colorMode = Pallette.GREEN_MODE;
+        InputMovie recorded = record(rom);
+        Path file = dir.resolve("test.gbmovie");
+        recorded.save(file);
+        Pallette.colorMode = Pallette.GRAY_MODE; //playback has to switch back to the recorded mode
+
+        InputMovie loaded = InputMovie.load(file);
+        assertEquals(recorded.size(), loaded.size());
+        assertEquals(Pallette.GREEN_MODE, loaded.getColorMode());
+        int inputs = 0;
+        for (int frame = 0; frame < loaded.size(); frame++) {
+            inputs |= loaded.getInput(frame);
+            assertNotEquals(InputMovie.NO_HASH, loaded.getFrameHash(frame));
+        }
+        assertNotEquals(0, inputs);
+
+        MoviePlayer player = new MoviePlayer(loaded, loaded.createEmulator(rom));
+        player.play();
+        assertEquals(-1, player.getFirstDivergence(), () -> "diverged in " + player.getDivergence());
+        assertEquals(loaded.size(), player.getFrame());
+    }
+}
@@ -0,0 +1,140 @@
+package org.the429ers.gameboy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/***
+ *
+ * The interrupt controller on its own, and EI and RETI timing in a running
+ * emulator.
+ *
+ */
+class InterruptHandlerTest {
+    //stores A in C000 and stops
+    private static final int[] STORE_A = {0xEA, 0x00, 0xC0, 0x18, 0xFE}; //LD (C000),A ; JR -2
+
+    private static InterruptHandler enabledHandler() {
+        InterruptHandler handler = new InterruptHandler(null);
+        handler.writeIE(InterruptHandler.INTERRUPT_BITS);
+        handler.setInterruptsEnabled(true);
+        return handler;
+    }
+
+    @Test
+    void lowestPendingBitWins() {
+        InterruptHandler handler = enabledHandler();
+        handler.request(InterruptHandler.JOYPAD);
+        handler.request(InterruptHandler.TIMER_OVERFLOW);
+        handler.request(InterruptHandler.LCDC);
+        assertEquals(InterruptHandler.LCDC, handler.dispatch());
+        //dispatching clears IME and only the bit that was serviced
+        assertFalse(handler.isInterruptsEnabled());
+        assertEquals(0xe0 | InterruptHandler.bitOf(InterruptHandler.TIMER_OVERFLOW)
+                | InterruptHandler.bitOf(InterruptHandler.JOYPAD), handler.readIF());
+
+        handler.setInterruptsEnabled(true);
+        assertEquals(InterruptHandler.TIMER_OVERFLOW, handler.dispatch());
+    }
+
+    @Test
+    void disabledInterruptsDontCompete() {
+        InterruptHandler handler = enabledHandler();
+        handler.writeIE(InterruptHandler.bitOf(InterruptHandler.SERIAL_COMPLETION));
+        handler.request(InterruptHandler.VBLANK);
+        handler.request(InterruptHandler.SERIAL_COMPLETION);
+        assertEquals(InterruptHandler.SERIAL_COMPLETION, handler.dispatch());
+    }
+
+    @Test
+    void upperBitsOfIFReadAsOne() {
+        InterruptHandler handler = new InterruptHandler(null);
+        assertEquals(0xe0, handler.readIF());
+        handler.writeIF(0xff);
+        assertEquals(0xff, handler.readIF());
+        handler.writeIF(0x01);
+        assertEquals(0xe1, handler.readIF());
+    }
+
+    @Test
+    void requestWithoutIMEOnlySetsIF() {
+        InterruptHandler handler = new InterruptHandler(null);
+        handler.writeIE(InterruptHandler.INTERRUPT_BITS);
+        handler.request(InterruptHandler.SERIAL_COMPLETION);
+        assertEquals(0xe8, handler.readIF());
+        assertFalse(handler.isDue());
+        assertEquals(-1, handler.dispatch());
+        //still there to wake HALT and for when IME is set
+        assertEquals(0xe8, handler.readIF());
+        assertEquals(0x08, handler.pending());
+
+        handler.setInterruptsEnabled(true);
+        assertEquals(InterruptHandler.SERIAL_COMPLETION, handler.dispatch());
+        assertEquals(0xe0, handler.readIF());
+    }
+
+    @Test
+    void eiTakesEffectAfterTheNextInstruction() {
+        InterruptHandler handler = new InterruptHandler(null);
+        handler.writeIE(InterruptHandler.INTERRUPT_BITS);
+        handler.request(InterruptHandler.VBLANK);
+        handler.enableAfterNextInstruction();
+        assertFalse(handler.isInterruptsEnabled());
+        assertEquals(-1, handler.dispatch()); //the end of EI itself
+        assertTrue(handler.isInterruptsEnabled());
+        assertEquals(InterruptHandler.VBLANK, handler.dispatch()); //the end of the instruction after it
+    }
+
+    @Test
+    void eiThenDiNeverEnables() {
+        InterruptHandler handler = new InterruptHandler(null);
+        handler.enableAfterNextInstruction();
+        handler.setInterruptsEnabled(false);
+        handler.dispatch();
+        assertFalse(handler.isInterruptsEnabled());
+    }
+
+    private static Emulator boot(int[] program, int[]... handlers) throws Exception {
+        Emulator emulator = new Emulator(TestRoms.write(program, handlers), null, null);
+        emulator.runFrames(TestRoms.BOOT_FRAMES);
+        return emulator;
+    }
+
+    @Test
+    void eiRunsOneMoreInstruction() throws Exception {
+        Emulator emulator = boot(new int[] {
+                0xF3,             //DI
+                0x3E, 0x01,       //LD A,01
+                0xE0, 0xFF,       //LDH (FF),A    VBlank only
+                0xE0, 0x0F,       //LDH (0F),A    and already requested
+                0x3E, 0x10,       //LD A,10
+                0xFB,             //EI
+                0x3C,             //INC A         still runs
+                0x3C,             //INC A
+                0x3C,             //INC A
+                0x18, 0xFE},      //JR -2
+                STORE_A);
+        assertEquals(0x11, emulator.getMMU().readByte(0xC000));
+    }
+
+    @Test
+    void retiEnablesImmediately() throws Exception {
+        Emulator emulator = boot(new int[] {
+                0xF3,             //DI
+                0x3E, 0x05,       //LD A,05
+                0xE0, 0xFF,       //LDH (FF),A    VBlank and timer
+                0xE0, 0x0F,       //LDH (0F),A    both requested
+                0x3E, 0x10,       //LD A,10
+                0xFB,             //EI
+                0x3C,             //INC A         runs before VBlank
+                0x3C,             //INC A         only runs if RETI waits an instruction like EI
+                0x3C,             //INC A
+                0x18, 0xFE},      //JR -2
+                new int[] {0xD9}, //RETI
+                null,
+                STORE_A);
+        assertEquals(0x11, emulator.getMMU().readByte(0xC000));
+    }
+}
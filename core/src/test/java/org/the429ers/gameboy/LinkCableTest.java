@@ -0,0 +1,119 @@
+package org.the429ers.gameboy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/***
+ *
+ * The serial port talking to a PipeTransport whose other end the tests
+ * play themselves.
+ *
+ */
+class LinkCableTest {
+    private static final int SERIAL_BIT = InterruptHandler.bitOf(InterruptHandler.SERIAL_COMPLETION);
+
+    private Emulator emulator;
+    private LinkCable cable;
+    private PipeTransport other;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        emulator = new Emulator(TestRoms.write(new int[] {0x18, 0xFE}), null, null); //JR -2
+        cable = emulator.cable;
+        PipeTransport[] ends = PipeTransport.pair();
+        cable.setTransport(ends[0]);
+        other = ends[1];
+    }
+
+    private int serialRequested() {
+        return emulator.getCPU().interruptHandler.readIF() & SERIAL_BIT;
+    }
+
+    //the number of the transfer the cable just started, read off its DATA message
+    private int startTransfer(int value) {
+        cable.writeSB(value);
+        cable.writeSC(0x81);
+        int message = other.receive();
+        assertEquals(LinkCable.DATA, message & LinkCable.TYPE_MASK);
+        assertEquals(value, message & 0xff);
+        return message >> LinkCable.SEQUENCE_SHIFT & LinkCable.SEQUENCE_MASK;
+    }
+
+    private void reply(int number, int value) {
+        other.send(LinkCable.REPLY | number << LinkCable.SEQUENCE_SHIFT | value);
+    }
+
+    private void tickTransfer() {
+        for (int cycles = 0; cycles <= LinkCable.CYCLES_PER_BYTE; cycles += LinkCable.POLL_INTERVAL) {
+            cable.tick(LinkCable.POLL_INTERVAL);
+        }
+    }
+
+    @Test
+    void replyCompletesTransfer() {
+        int number = startTransfer(0x42);
+        reply(number, 0x99);
+        tickTransfer();
+        assertEquals(0x99, cable.readSB());
+        assertEquals(0, cable.readSC() & 0x80);
+        assertEquals(SERIAL_BIT, serialRequested());
+    }
+
+    @Test
+    void staleReplyIsIgnored() {
+        int first = startTransfer(0x42);
+        cable.writeSC(0x01);
+        int second = startTransfer(0x43);
+        reply(first, 0x11); //the answer to the abandoned transfer, arriving late
+        reply(second, 0x22);
+        tickTransfer();
+        assertEquals(0x22, cable.readSB());
+    }
+
+    @Test
+    void clearingStartBitAbortsTransfer() {
+        int number = startTransfer(0x42);
+        cable.writeSC(0x01);
+        reply(number, 0x99);
+        tickTransfer();
+        assertEquals(0x42, cable.readSB());
+        assertEquals(0, serialRequested());
+    }
+
+    @Test
+    void failingTransportIsDropped() {
+        IOException broken = new IOException("broken pipe");
+        cable.setTransport(new SerialTransport() {
+            @Override
+            public void send(int message) throws IOException {
+                throw broken;
+            }
+
+            @Override
+            public int receive() {
+                return -1;
+            }
+
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+        });
+        cable.writeSB(0x42);
+        cable.writeSC(0x81);
+        assertNull(cable.getTransport());
+        assertEquals(broken, cable.getFailure());
+        tickTransfer();
+        assertEquals(0xff, cable.readSB()); //finishes as if unplugged
+
+        cable.setTransport(other);
+        assertNotNull(cable.getTransport());
+        assertNull(cable.getFailure());
+    }
+}
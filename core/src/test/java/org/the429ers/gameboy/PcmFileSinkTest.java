@@ -0,0 +1,72 @@
+package org.the429ers.gameboy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/***
+ *
+ * Writing more than one buffer's worth of samples, so they go out in
+ * several blocks, and checking the sizes in the WAV header afterwards.
+ *
+ */
+class PcmFileSinkTest {
+    private static final int LENGTH = PcmFileSink.BUFFER_SIZE * 2 + 1000;
+
+    @TempDir
+    Path dir;
+
+    private static byte[] samples() {
+        byte[] samples = new byte[LENGTH];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) (i * 7);
+        }
+        return samples;
+    }
+
+    private static void writeInPieces(AudioSink sink, byte[] samples) {
+        for (int off = 0; off < samples.length; off += 3000) {
+            int len = Math.min(3000, samples.length - off);
+            assertEquals(len, sink.write(samples, off, len));
+        }
+        sink.close();
+    }
+
+    @Test
+    void wavHeaderHasFinalSizes() throws IOException {
+        Path file = dir.resolve("out.wav");
+        byte[] samples = samples();
+        writeInPieces(new PcmFileSink(file, SoundChip.AUDIO_FORMAT, true), samples);
+
+        byte[] data = Files.readAllBytes(file);
+        assertEquals(PcmFileSink.WAV_HEADER_SIZE + LENGTH, data.length);
+        ByteBuffer header = ByteBuffer.wrap(data, 0, PcmFileSink.WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RIFF", new String(data, 0, 4, "US-ASCII"));
+        assertEquals(36 + LENGTH, header.getInt(4));
+        assertEquals("WAVEfmt ", new String(data, 8, 8, "US-ASCII"));
+        assertEquals(2, header.getShort(22)); //channels
+        assertEquals((int) SoundChip.AUDIO_FORMAT.getSampleRate(), header.getInt(24));
+        assertEquals(StereoMixer.BYTES_PER_FRAME, header.getShort(32));
+        assertEquals(16, header.getShort(34));
+        assertEquals("data", new String(data, 36, 4, "US-ASCII"));
+        assertEquals(LENGTH, header.getInt(40));
+        assertArrayEquals(samples, Arrays.copyOfRange(data, PcmFileSink.WAV_HEADER_SIZE, data.length));
+    }
+
+    @Test
+    void rawPcmHasNoHeader() throws IOException {
+        Path file = dir.resolve("out.pcm");
+        byte[] samples = samples();
+        writeInPieces(new PcmFileSink(file, SoundChip.AUDIO_FORMAT, false), samples);
+        assertArrayEquals(samples, Files.readAllBytes(file));
+    }
+}
@@ -0,0 +1,165 @@
+package org.the429ers.gameboy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/***
+ *
+ * Both ends of a SocketTransport in one test, over TCP on localhost and
+ * over a Unix domain socket. Neither side blocks, so the tests poll until
+ * something arrives or TIMEOUT_NANOS pass.
+ *
+ */
+class SocketTransportTest {
+    public static final long TIMEOUT_NANOS = 5_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    //the next message, polling both ends so either can finish connecting
+    private static int await(SerialTransport receiver, SerialTransport other) throws IOException {
+        long giveUp = System.nanoTime() + TIMEOUT_NANOS;
+        while (System.nanoTime() < giveUp) {
+            int message = receiver.receive();
+            if (message != -1) {
+                return message;
+            }
+            if (other != null) {
+                other.receive();
+            }
+            Thread.onSpinWait();
+        }
+        return fail("Nothing arrived");
+    }
+
+    private static void awaitConnected(SerialTransport a, SerialTransport b) throws IOException {
+        long giveUp = System.nanoTime() + TIMEOUT_NANOS;
+        while (!(a.isConnected() && b.isConnected())) {
+            assertTrue(System.nanoTime() < giveUp, "Didn't connect");
+            a.receive();
+            b.receive();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void exchange(SocketTransport host, SocketTransport guest) throws IOException {
+        awaitConnected(host, guest);
+        guest.send(LinkCable.DATA | 0x42);
+        assertEquals(LinkCable.DATA | 0x42, await(host, guest));
+        host.send(LinkCable.REPLY | 0x99);
+        host.send(LinkCable.REPLY | 0x98);
+        assertEquals(LinkCable.REPLY | 0x99, await(guest, host));
+        assertEquals(LinkCable.REPLY | 0x98, await(guest, host));
+    }
+
+    @Test
+    void exchangesOverTcp() throws IOException {
+        String address = Integer.toString(freePort());
+        try (SocketTransport host = SocketTransport.listen(address);
+             SocketTransport guest = SocketTransport.connect("localhost:" + address)) {
+            exchange(host, guest);
+        }
+    }
+
+    @Test
+    void exchangesOverUnixSocketAndRemovesItsFile() throws IOException {
+        Path file = dir.resolve("link.sock");
+        String address = "unix:" + file;
+        try (SocketTransport host = SocketTransport.listen(address);
+             SocketTransport guest = SocketTransport.connect(address)) {
+            assertTrue(Files.exists(file));
+            exchange(host, guest);
+        }
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void waitsForTheRestOfAMessage() throws IOException, InterruptedException {
+        Path file = dir.resolve("partial.sock");
+        try (SocketTransport host = SocketTransport.listen("unix:" + file);
+             SocketChannel raw = SocketChannel.open(UnixDomainSocketAddress.of(file))) {
+            raw.write(ByteBuffer.wrap(new byte[] {0x01}));
+            long giveUp = System.nanoTime() + TIMEOUT_NANOS;
+            while (!host.isConnected()) {
+                assertTrue(System.nanoTime() < giveUp, "Didn't accept");
+                assertEquals(-1, host.receive());
+            }
+            Thread.sleep(50);
+            assertEquals(-1, host.receive()); //only the high byte is there
+            raw.write(ByteBuffer.wrap(new byte[] {0x42, 0x02}));
+            assertEquals(0x142, await(host, null));
+            assertEquals(-1, host.receive()); //and half of the next one
+            raw.write(ByteBuffer.wrap(new byte[] {0x17}));
+            assertEquals(0x217, await(host, null));
+        }
+    }
+
+    @Test
+    void hostAcceptsAgainAfterTheGuestLeaves() throws IOException {
+        Path file = dir.resolve("again.sock");
+        String address = "unix:" + file;
+        try (SocketTransport host = SocketTransport.listen(address)) {
+            try (SocketTransport guest = SocketTransport.connect(address)) {
+                exchange(host, guest);
+            }
+            long giveUp = System.nanoTime() + TIMEOUT_NANOS;
+            while (host.isConnected()) {
+                assertTrue(System.nanoTime() < giveUp, "Didn't notice the guest leaving");
+                assertEquals(-1, host.receive());
+            }
+            try (SocketTransport guest = SocketTransport.connect(address)) {
+                exchange(host, guest);
+            }
+        }
+    }
+
+    //keeps polling, which has to throw before TIMEOUT_NANOS pass
+    private static void pollUntilThrows(SerialTransport transport) throws IOException {
+        long giveUp = System.nanoTime() + TIMEOUT_NANOS;
+        while (System.nanoTime() < giveUp) {
+            transport.receive();
+        }
+    }
+
+    @Test
+    void guestThrowsWhenTheHostLeaves() throws IOException {
+        String address = "unix:" + dir.resolve("gone.sock");
+        SocketTransport host = SocketTransport.listen(address);
+        try (SocketTransport guest = SocketTransport.connect(address)) {
+            exchange(host, guest);
+            host.close();
+            assertThrows(IOException.class, () -> pollUntilThrows(guest));
+            assertFalse(guest.isConnected());
+        }
+    }
+
+    @Test
+    void refusedConnectionThrows() throws IOException {
+        String address = "localhost:" + freePort(); //nothing listens there any more
+        //connecting can fail straight away or on a later poll
+        assertThrows(IOException.class, () -> {
+            try (SocketTransport guest = SocketTransport.connect(address)) {
+                pollUntilThrows(guest);
+            }
+        });
+    }
+}
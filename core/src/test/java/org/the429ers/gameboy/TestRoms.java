@@ -0,0 +1,47 @@
+package org.the429ers.gameboy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/***
+ *
+ * Writes tiny ROMs for the tests, a program at 0x150 and interrupt handlers
+ * at their vectors, so the tests don't need any real games.
+ *
+ */
+class TestRoms {
+    public static final int BOOT_FRAMES = 200; //the boot ROM takes about 150 frames to hand over to the cartridge
+
+    private static final int[] NINTENDO_LOGO = {
+            0xCE, 0xED, 0x66, 0x66, 0xCC, 0x0D, 0x00, 0x0B, 0x03, 0x73, 0x00, 0x83, 0x00, 0x0C, 0x00, 0x0D,
+            0x00, 0x08, 0x11, 0x1F, 0x88, 0x89, 0x00, 0x0E, 0xDC, 0xCC, 0x6E, 0xE6, 0xDD, 0xDD, 0xD9, 0x99,
+            0xBB, 0xBB, 0x67, 0x63, 0x6E, 0x0E, 0xEC, 0xCC, 0xDD, 0xDC, 0x99, 0x9F, 0xBB, 0xB9, 0x33, 0x3E};
+
+    /***
+     * Writes a ROM running program after the boot ROM and returns its path.
+     * handlers[i] goes at the vector of interrupt bit i and can be up to 8
+     * bytes, or null to leave it empty.
+     */
+    static String write(int[] program, int[]... handlers) throws IOException {
+        byte[] data = new byte[0x8000];
+        int[] entry = {0x00, 0xC3, 0x50, 0x01}; //NOP, JP 0150
+        for (int i = 0; i < entry.length; i++) data[0x100 + i] = (byte) entry[i];
+        for (int i = 0; i < NINTENDO_LOGO.length; i++) data[0x104 + i] = (byte) NINTENDO_LOGO[i];
+        int checksum = 0;
+        for (int i = 0x134; i <= 0x14C; i++) checksum = checksum - data[i] - 1;
+        data[0x14D] = (byte) checksum;
+        for (int i = 0; i < program.length; i++) data[0x150 + i] = (byte) program[i];
+        for (int bit = 0; bit < handlers.length; bit++) {
+            if (handlers[bit] == null) continue;
+            if (handlers[bit].length > 8) throw new IllegalArgumentException("Handler " + bit + " is too long");
+            for (int i = 0; i < handlers[bit].length; i++) {
+                data[InterruptHandler.VBLANK + (bit << 3) + i] = (byte) handlers[bit][i];
+            }
+        }
+        File file = File.createTempFile("test", ".gb");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        return file.getPath();
+    }
+}
@@ -14,8 +14,8 @@ special_operands = {
     "(a8)": "cpu.mem.a8Location(cpu.regs.PC)",
     "(d8)": "cpu.mem.d8Location(cpu.regs.PC)",
     "(C)": "cpu.mem.shortRegisterLocation(cpu.regs.C)",
-    "(HL+)": "cpu.mem.registerLocation(selfIncrement(cpu.regs.HL))",
-    "(HL-)": "cpu.mem.registerLocation(selfDecrement(cpu.regs.HL))",
+    "(HL+)": "cpu.mem.registerLocation(cpu.selfIncrement(cpu.regs.HL))",
+    "(HL-)": "cpu.mem.registerLocation(cpu.selfDecrement(cpu.regs.HL))",
     "SP+r8": "cpu.SPr8()",
 }
 
@@ -0,0 +1,102 @@
+package org.the429ers.gameboy;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/***
+ *
+ * Runs another sink on its own thread. Frames are copied into a fixed pool of
+ * images and queued, so nothing is allocated per frame. When the queue is full
+ * the frame is either dropped, so recording never slows down emulation, or the
+ * emulator waits, so batch runs don't lose frames.
+ *
+ */
+public class AsyncFrameSink implements FrameSink {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final BufferedImage END = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+
+    private final FrameSink sink;
+    private final boolean dropWhenFull;
+    private final BlockingQueue<BufferedImage> queued;
+    private final BlockingQueue<BufferedImage> free;
+    private final Thread thread;
+    private final int capacity;
+    private int allocated = 0; //images in the pool so far, only touched by the emulation thread
+    private volatile long dropped = 0;
+
+    public AsyncFrameSink(FrameSink sink, int capacity, boolean dropWhenFull) {
+        this.sink = sink;
+        this.dropWhenFull = dropWhenFull;
+        this.capacity = capacity;
+        queued = new ArrayBlockingQueue<>(capacity + 1);
+        free = new ArrayBlockingQueue<>(capacity);
+        thread = new Thread(this::run, "Frame encoder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                BufferedImage frame = queued.take();
+                if (frame == END) {
+                    break;
+                }
+                sink.frameDone(frame);
+                free.offer(frame);
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        sink.close();
+    }
+
+    private BufferedImage nextFree(BufferedImage frame) throws InterruptedException {
+        BufferedImage copy = free.poll();
+        if (copy == null && allocated < capacity) {
+            //the pool fills up lazily, up to the capacity
+            copy = new BufferedImage(frame.getWidth(), frame.getHeight(), frame.getType());
+            allocated++;
+        }
+        if (copy == null && !dropWhenFull) {
+            copy = free.take();
+        }
+        return copy;
+    }
+
+    @Override
+    public void frameDone(BufferedImage frame) {
+        try {
+            BufferedImage copy = nextFree(frame);
+            if (copy == null) {
+                dropped++;
+                return;
+            }
+            byte[] source = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+            byte[] dest = ((DataBufferByte) copy.getRaster().getDataBuffer()).getData();
+            System.arraycopy(source, 0, dest, 0, source.length);
+            queued.put(copy);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //frames that were thrown away because the queue was full
+    public long getDropped() {
+        return dropped;
+    }
+
+    //waits for every queued frame to be written, then closes the wrapped sink
+    @Override
+    public void close() {
+        try {
+            queued.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.the429ers.gameboy;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ *
+ * Plays samples from a ring buffer on its own thread, so a slow audio driver
+ * can't stall emulation and emulation hiccups only cause underruns. The
+ * emulator fills the ring buffer and uses getBufferedFrames() to nudge its
+ * output rate towards TARGET_FRAMES.
+ *
+ */
+public class AudioOutput implements AudioSink {
+    public static final int RING_FRAMES = 16384;
+    public static final int TARGET_FRAMES = 2 * SoundChip.SAMPLES_PER_FRAME; //roughly two video frames of latency
+    public static final int CHUNK_FRAMES = 256;
+    public static final int LINE_BUFFER_FRAMES = 2048;
+
+    private final AudioRingBuffer ring;
+    private final SourceDataLine line;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long underruns = 0;
+
+    public AudioOutput(AudioFormat format) throws LineUnavailableException {
+        int frameSize = format.getFrameSize();
+        ring = new AudioRingBuffer(RING_FRAMES, frameSize);
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, LINE_BUFFER_FRAMES * frameSize);
+        line.start();
+        thread = new Thread(this::run, "Audio output");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    private void run() {
+        byte[] chunk = new byte[CHUNK_FRAMES * ring.getFrameSize()];
+        boolean starved = false;
+        while (running) {
+            int n = ring.read(chunk, 0, chunk.length);
+            if (n == 0) {
+                //only count an underrun once per gap rather than once per poll
+                if (!starved) underruns++;
+                starved = true;
+                LockSupport.parkNanos(1_000_000);
+                continue;
+            }
+            starved = false;
+            line.write(chunk, 0, n); //blocks until the line has room, which paces this thread
+        }
+        line.stop();
+        line.close();
+    }
+
+    @Override
+    public int write(byte[] samples, int off, int len) {
+        return ring.write(samples, off, len);
+    }
+
+    @Override
+    public int getBufferedFrames() {
+        return ring.available();
+    }
+
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+    }
+}
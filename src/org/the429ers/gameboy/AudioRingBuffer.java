@@ -0,0 +1,69 @@
+package org.the429ers.gameboy;
+
+/***
+ *
+ * Lock-free ring buffer of audio frames for exactly one producer thread (the
+ * emulator) and one consumer thread (the audio output). Each side only ever
+ * writes its own position, so publishing a position through a volatile is enough.
+ * Reads and writes are always whole frames.
+ *
+ */
+public class AudioRingBuffer {
+    private final byte[] buffer;
+    private final int mask;
+    private final int frameSize;
+    private volatile long writePos = 0; //in bytes, only changed by the producer
+    private volatile long readPos = 0; //in bytes, only changed by the consumer
+
+    //capacity is in frames and gets rounded up to a power of two number of bytes
+    public AudioRingBuffer(int capacity, int frameSize) {
+        int bytes = Integer.highestOneBit(capacity * frameSize - 1) << 1;
+        this.buffer = new byte[bytes];
+        this.mask = bytes - 1;
+        this.frameSize = frameSize;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public int capacity() {
+        return buffer.length / frameSize;
+    }
+
+    //frames that can be read right now
+    public int available() {
+        return (int) (writePos - readPos) / frameSize;
+    }
+
+    //frames that can be written right now
+    public int free() {
+        return capacity() - available();
+    }
+
+    //writes up to len bytes, returns how many were written without blocking
+    public int write(byte[] src, int off, int len) {
+        long w = writePos;
+        int n = Math.min(len, buffer.length - (int) (w - readPos));
+        n -= n % frameSize;
+        int start = (int) w & mask;
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(src, off, buffer, start, first);
+        System.arraycopy(src, off + first, buffer, 0, n - first);
+        writePos = w + n;
+        return n;
+    }
+
+    //reads up to len bytes, returns how many were read without blocking
+    public int read(byte[] dst, int off, int len) {
+        long r = readPos;
+        int n = Math.min(len, (int) (writePos - r));
+        n -= n % frameSize;
+        int start = (int) r & mask;
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(buffer, start, dst, off, first);
+        System.arraycopy(buffer, 0, dst, off + first, n - first);
+        readPos = r + n;
+        return n;
+    }
+}
@@ -0,0 +1,25 @@
+package org.the429ers.gameboy;
+
+/***
+ *
+ * Where the APU sends its mixed 16 bit stereo samples: the speakers, a file,
+ * or nowhere at all.
+ *
+ */
+public interface AudioSink {
+    //false if samples would just be thrown away, in which case the APU doesn't synthesize any
+    default boolean wantsSamples() {
+        return true;
+    }
+
+    //writes as much as fits without blocking, returns the number of bytes written
+    int write(byte[] samples, int off, int len);
+
+    //frames waiting to be played, used to keep latency steady, or -1 for sinks that never fall behind
+    default int getBufferedFrames() {
+        return -1;
+    }
+
+    default void close() {
+    }
+}
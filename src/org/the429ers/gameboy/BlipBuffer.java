@@ -0,0 +1,123 @@
+package org.the429ers.gameboy;
+
+import java.util.Arrays;
+
+/***
+ *
+ * Band-limited synthesis buffer. Channels report when their output level
+ * changes (in clock cycles) and the buffer turns each change into a
+ * band-limited step at the output sample rate, so square waves don't alias
+ * and no per-sample work is needed while a level stays the same.
+ *
+ * Each step is added as a windowed sinc impulse; reading integrates the
+ * impulses back into levels and removes any DC offset.
+ *
+ */
+public class BlipBuffer {
+    private static final int FRAC_BITS = 32; //fixed point fraction of the sample position
+    private static final int PHASE_BITS = 5;
+    private static final int PHASES = 1 << PHASE_BITS;
+    private static final int HALF_WIDTH = 8;
+    private static final int WIDTH = 2 * HALF_WIDTH;
+    private static final int KERNEL_BITS = 15; //each kernel phase sums to 1 << KERNEL_BITS
+    private static final int BASS_SHIFT = 9; //strength of the DC removal
+    private static final double CUTOFF = 0.9; //as a fraction of the nyquist frequency
+
+    private static final int[][] KERNEL = new int[PHASES][WIDTH];
+    static {
+        for (int p = 0; p < PHASES; p++) {
+            double[] taps = new double[WIDTH];
+            double sum = 0;
+            for (int j = 0; j < WIDTH; j++) {
+                double d = j - HALF_WIDTH - (double) p / PHASES;
+                double x = Math.PI * d * CUTOFF;
+                double sinc = d == 0 ? 1 : Math.sin(x) / x;
+                double window = 0.42 + 0.5 * Math.cos(Math.PI * d / (HALF_WIDTH + 1)) + 0.08 * Math.cos(2 * Math.PI * d / (HALF_WIDTH + 1));
+                taps[j] = sinc * window;
+                sum += taps[j];
+            }
+            int total = 0;
+            int largest = 0;
+            for (int j = 0; j < WIDTH; j++) {
+                KERNEL[p][j] = (int) Math.round(taps[j] / sum * (1 << KERNEL_BITS));
+                total += KERNEL[p][j];
+                if (KERNEL[p][j] > KERNEL[p][largest]) largest = j;
+            }
+            //make every phase add exactly the same amount so steps don't leave DC errors behind
+            KERNEL[p][largest] += (1 << KERNEL_BITS) - total;
+        }
+    }
+
+    private final int[] buffer;
+    private final double clockRate;
+    private long factor; //output samples per clock, in fixed point
+    private long offset = 0; //position of clock 0 of the current frame, in fixed point samples
+    private int integrator = 0;
+
+    //capacity is the most samples that can be buffered before they are read
+    public BlipBuffer(double clockRate, double sampleRate, int capacity) {
+        this.clockRate = clockRate;
+        this.buffer = new int[capacity + WIDTH];
+        setSampleRate(sampleRate);
+    }
+
+    //can be changed between frames to resample slightly
+    public void setSampleRate(double sampleRate) {
+        factor = (long) (sampleRate / clockRate * (1L << FRAC_BITS));
+    }
+
+    //adds a change in level at time clocks after the start of the current frame
+    public void addDelta(int time, int delta) {
+        long pos = time * factor + offset;
+        int index = (int) (pos >>> FRAC_BITS);
+        if (index + WIDTH > buffer.length) {
+            return; //more than a buffer's worth of time without reading, drop it
+        }
+        int[] kernel = KERNEL[(int) (pos >>> (FRAC_BITS - PHASE_BITS)) & (PHASES - 1)];
+        for (int j = 0; j < WIDTH; j++) {
+            buffer[index + j] += kernel[j] * delta;
+        }
+    }
+
+    //ends the current frame after the given number of clocks, making its samples available
+    public void endFrame(int clocks) {
+        offset += clocks * factor;
+        long limit = (long) (buffer.length - WIDTH) << FRAC_BITS;
+        if (offset > limit) {
+            offset = limit;
+        }
+    }
+
+    public int samplesAvailable() {
+        return (int) (offset >>> FRAC_BITS);
+    }
+
+    //reads up to count samples into out and returns how many were read
+    public int readSamples(int[] out, int count) {
+        count = Math.min(count, samplesAvailable());
+        int sum = integrator;
+        for (int i = 0; i < count; i++) {
+            int s = sum >> KERNEL_BITS;
+            out[i] = s;
+            sum += buffer[i];
+            sum -= s << (KERNEL_BITS - BASS_SHIFT);
+        }
+        integrator = sum;
+        removeSamples(count);
+        return count;
+    }
+
+    //throws away samples without reading them, e.g. when nothing is listening
+    public void clear() {
+        Arrays.fill(buffer, 0);
+        integrator = 0;
+        offset &= (1L << FRAC_BITS) - 1;
+    }
+
+    private void removeSamples(int count) {
+        int remaining = samplesAvailable() - count + WIDTH;
+        System.arraycopy(buffer, count, buffer, 0, remaining);
+        Arrays.fill(buffer, remaining, remaining + count, 0);
+        offset -= (long) count << FRAC_BITS;
+    }
+}
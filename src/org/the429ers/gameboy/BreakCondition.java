@@ -0,0 +1,153 @@
+package org.the429ers.gameboy;
+
+/***
+ *
+ * Compiles debugger conditions such as "A==0x3F && HL>0xC000" into a tree of
+ * lambdas once, so checking a condition does not re-parse anything.
+ *
+ * Operands are registers (A, F, B, C, D, E, H, L, AF, BC, DE, HL, SP, PC),
+ * numbers (decimal, or hex with a 0x prefix) and memory reads written as [expr].
+ * Operators are ! == != < > <= >= && || and parentheses. Results are nonzero
+ * when the condition holds.
+ *
+ */
+public class BreakCondition {
+    private final String text;
+    private int pos = 0;
+
+    private BreakCondition(String text) {
+        this.text = text;
+    }
+
+    public static Lambda compile(String text) {
+        BreakCondition parser = new BreakCondition(text);
+        Lambda result = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.pos != text.length()) {
+            throw parser.error("unexpected '" + text.charAt(parser.pos) + "'");
+        }
+        return result;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + " in \"" + text + "\"");
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean accept(String token) {
+        skipSpaces();
+        if (text.startsWith(token, pos)) {
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private Lambda parseOr() {
+        Lambda left = parseAnd();
+        while (accept("||")) {
+            Lambda l = left, r = parseAnd();
+            left = (CPU cpu) -> (l.exec(cpu) != 0 || r.exec(cpu) != 0) ? 1 : 0;
+        }
+        return left;
+    }
+
+    private Lambda parseAnd() {
+        Lambda left = parseComparison();
+        while (accept("&&")) {
+            Lambda l = left, r = parseComparison();
+            left = (CPU cpu) -> (l.exec(cpu) != 0 && r.exec(cpu) != 0) ? 1 : 0;
+        }
+        return left;
+    }
+
+    private Lambda parseComparison() {
+        Lambda l = parseUnary();
+        //two character operators have to be tried first
+        if (accept("==")) {
+            Lambda r = parseUnary();
+            return (CPU cpu) -> l.exec(cpu) == r.exec(cpu) ? 1 : 0;
+        } else if (accept("!=")) {
+            Lambda r = parseUnary();
+            return (CPU cpu) -> l.exec(cpu) != r.exec(cpu) ? 1 : 0;
+        } else if (accept("<=")) {
+            Lambda r = parseUnary();
+            return (CPU cpu) -> l.exec(cpu) <= r.exec(cpu) ? 1 : 0;
+        } else if (accept(">=")) {
+            Lambda r = parseUnary();
+            return (CPU cpu) -> l.exec(cpu) >= r.exec(cpu) ? 1 : 0;
+        } else if (accept("<")) {
+            Lambda r = parseUnary();
+            return (CPU cpu) -> l.exec(cpu) < r.exec(cpu) ? 1 : 0;
+        } else if (accept(">")) {
+            Lambda r = parseUnary();
+            return (CPU cpu) -> l.exec(cpu) > r.exec(cpu) ? 1 : 0;
+        }
+        return l;
+    }
+
+    private Lambda parseUnary() {
+        if (accept("!")) {
+            Lambda operand = parseUnary();
+            return (CPU cpu) -> operand.exec(cpu) == 0 ? 1 : 0;
+        }
+        if (accept("(")) {
+            Lambda inner = parseOr();
+            if (!accept(")")) throw error("expected ')'");
+            return inner;
+        }
+        if (accept("[")) {
+            Lambda address = parseOr();
+            if (!accept("]")) throw error("expected ']'");
+            return (CPU cpu) -> cpu.mem.readByte(address.exec(cpu) & 0xffff);
+        }
+        skipSpaces();
+        int start = pos;
+        while (pos < text.length() && Character.isLetterOrDigit(text.charAt(pos))) {
+            pos++;
+        }
+        String word = text.substring(start, pos);
+        if (word.isEmpty()) {
+            throw error("expected a register, number or [address]");
+        }
+        if (Character.isDigit(word.charAt(0))) {
+            int value;
+            try {
+                if (word.startsWith("0x") || word.startsWith("0X")) {
+                    value = Integer.parseInt(word.substring(2), 16);
+                } else {
+                    value = Integer.parseInt(word);
+                }
+            } catch (NumberFormatException e) {
+                throw error("bad number " + word);
+            }
+            return (CPU cpu) -> value;
+        }
+        return register(word.toUpperCase());
+    }
+
+    private Lambda register(String name) {
+        switch (name) {
+            case "A": return (CPU cpu) -> cpu.regs.A.read();
+            case "F": return (CPU cpu) -> cpu.regs.F.read();
+            case "B": return (CPU cpu) -> cpu.regs.B.read();
+            case "C": return (CPU cpu) -> cpu.regs.C.read();
+            case "D": return (CPU cpu) -> cpu.regs.D.read();
+            case "E": return (CPU cpu) -> cpu.regs.E.read();
+            case "H": return (CPU cpu) -> cpu.regs.H.read();
+            case "L": return (CPU cpu) -> cpu.regs.L.read();
+            case "AF": return (CPU cpu) -> cpu.regs.AF.read();
+            case "BC": return (CPU cpu) -> cpu.regs.BC.read();
+            case "DE": return (CPU cpu) -> cpu.regs.DE.read();
+            case "HL": return (CPU cpu) -> cpu.regs.HL.read();
+            case "SP": return (CPU cpu) -> cpu.regs.SP.read();
+            case "PC": return (CPU cpu) -> cpu.regs.PC.read();
+        }
+        throw error("unknown register " + name);
+    }
+}
@@ -8,7 +8,7 @@ interface Lambda{
     int exec(CPU cpu);
 }
 
-public class CPU implements Serializable {
+public class CPU implements Serializable, Cloneable {
     
     /**
      * 
@@ -19,6 +19,13 @@ public class CPU implements Serializable {
     InterruptHandler interruptHandler = new InterruptHandler(this);
     private int clockCycleDelta;
     Timer timer;
+    transient TraceRecorder tracer;
+    transient EmulatorMetrics metrics;
+    transient GuestProfiler profiler;
+    boolean haltBug = false;
+    IdleLoopSkipper idleLoops; //null never skips
+    boolean stepHalt; //waits out HALT 4 cycles at a time as if MAX_HALT_SKIP were 0, tests compare the two
+    public static final int MAX_HALT_SKIP = 1 << 16; //keeps cycle counts well within an int
     
     public CPU(MMU mem) {
         this.mem = mem;
@@ -26,6 +33,25 @@ public class CPU implements Serializable {
         timer = new Timer(mem);
     }
     
+    CPU fork(MMU mem) {
+        CPU copy;
+        try {
+            copy = (CPU) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.mem = mem;
+        copy.tracer = null;
+        copy.metrics = null;
+        copy.profiler = null;
+        mem.setCPU(copy);
+        copy.regs = regs.fork();
+        copy.interruptHandler = interruptHandler.fork(copy);
+        copy.timer = timer.fork(mem);
+        copy.idleLoops = idleLoops == null ? null : idleLoops.fork();
+        return copy;
+    }
+    
     public void setMMU(MMU mmu) {
         this.mem = mmu;
     }
@@ -37,8 +63,6 @@ public class CPU implements Serializable {
         return clockCycleDelta;
     }
 
-    public boolean interrupted = false;
-    public int pendingInterrupt = 0;
     private int clockCycles = 0;
     
     public static final int ZFLAG = RegisterFile.ZFLAG;
@@ -61,40 +85,75 @@ public class CPU implements Serializable {
         regs.dump();
     }
     
-    public void interrupt(int handle) {
-        this.interrupted = true;
-        pendingInterrupt = handle;
+    public void executeOneInstruction(boolean printOutput, boolean haltEnabled) {
+        if (metrics != null && metrics.startInstruction()) {
+            long start = System.nanoTime();
+            step(printOutput, haltEnabled);
+            metrics.instructionTimed(System.nanoTime() - start);
+        } else {
+            step(printOutput, haltEnabled);
+        }
     }
     
-    public void executeOneInstruction(boolean printOutput, boolean haltEnabled) {
+    private void step(boolean printOutput, boolean haltEnabled) {
         
         clockCycleDelta = 0;
         
+        if(tracer != null) {
+            tracer.beginInstruction(this, halted && haltEnabled, mem.getEmulator().getTotalClocks());
+        }
+        
         if(halted && haltEnabled) {
+            //nothing can wake the CPU until a device raises an interrupt, so skip straight to the next
+            //4 cycle step in which one could
+            int skipped = 0;
+            if (interruptHandler.pending() == 0 && !stepHalt) {
+                skipped = Math.min(mem.getEmulator().quietCycles(), MAX_HALT_SKIP) & ~3;
+                if (skipped > 0) mem.getEmulator().skipQuietCycles(skipped);
+            }
+            mem.getEmulator().resetClocks();
             clockCycleDelta = 4;
+            if (metrics != null) metrics.halted(4 + skipped);
+            if (profiler != null) profiler.instruction(regs.PC.read() - 1, 0x76, 4 + skipped); //the HALT that's waiting
             serviceInterrupts();
-            GameBoy.getInstance().clockTick(clockCycleDelta);
+            //waking up to an interrupt has already ticked for pushing PC
+            mem.getEmulator().clockTick(clockCycleDelta - mem.getEmulator().getClocks());
             return;
         }
         
-        GameBoy.getInstance().resetClocks();
+        mem.getEmulator().resetClocks();
         
         int opcode = mem.slowReadByte(regs.PC.read());
+        if (haltBug) {
+            //PC failed to move past the opcode, so its operands start at the opcode itself
+            haltBug = false;
+            regs.PC.write(regs.PC.read() - 1);
+        }
         
         Operation op = operations[opcode];
+        if (metrics != null) metrics.opcode(opcode);
         
         int currentPC = regs.PC.read();
         
         int result = op.execute(this);
         
-        if(GameBoy.getInstance().getClocks() < this.clockCycleDelta) {
-            GameBoy.getInstance().clockTick(this.clockCycleDelta - GameBoy.getInstance().getClocks());
-        }else if(GameBoy.getInstance().getClocks() > this.clockCycleDelta){
+        if(mem.getEmulator().getClocks() < this.clockCycleDelta) {
+            mem.getEmulator().clockTick(this.clockCycleDelta - mem.getEmulator().getClocks());
+        }else if(mem.getEmulator().getClocks() > this.clockCycleDelta){
             System.out.println("Invalid clock ticks: " + op.description);
             System.out.println("Expected: " + this.clockCycleDelta);
-            System.out.println("Received: " + GameBoy.getInstance().getClocks());
+            System.out.println("Received: " + mem.getEmulator().getClocks());
         }
         
+        //a jump back might have closed a loop that's only waiting for something to change
+        int skipped = 0;
+        if (idleLoops != null && regs.PC.read() <= currentPC && !interruptHandler.isDue() && tracer == null && !printOutput) {
+            skipped = idleLoops.loopedBack(this, currentPC);
+            if (metrics != null && skipped > 0) metrics.idleLoopSkipped(skipped);
+        }
+        
+        if (profiler != null) profiler.instruction(currentPC, opcode, clockCycleDelta + skipped);
+        
         if(printOutput) {
             System.out.println(Integer.toString(currentPC, 16) + ": " + op.description);
             
@@ -229,6 +288,7 @@ public class CPU implements Serializable {
             int cbOpcode = cpu.mem.slowReadByte(cpu.regs.PC.read() + 1); //the cb opcode follows directly after cb
 
             Operation cbOperation = cbOperations[cbOpcode];
+            if (cpu.metrics != null) cpu.metrics.cbOpcode(cbOpcode);
             
             int result = cbOperation.execute(cpu);
             //cpu clockCycles and clockCycleDelta are set by the cbOperation
@@ -242,17 +302,17 @@ public class CPU implements Serializable {
         NZ, Z, NC, C
     }
     
+    //called at every instruction boundary, any enabled and requested interrupt ends a HALT
     void serviceInterrupts() {
-        if(interrupted) {
-            interrupted = false;
+        if (interruptHandler.pending() != 0) {
             this.halted = false;
-            int interruptVector = pendingInterrupt;
-            if(interruptVector != -1) {
-                clockCycleDelta += 16;
-                PUSH(regs.PC);
-                regs.PC.write(interruptVector);
-                interruptHandler.setInterruptsEnabled(false);
-            }
+        }
+        int interruptVector = interruptHandler.dispatch();
+        if(interruptVector != -1) {
+            clockCycleDelta += 20;
+            PUSH(regs.PC);
+            regs.PC.write(interruptVector);
+            if (profiler != null) profiler.call(interruptVector, regs.SP.read());
         }
     }
     
@@ -712,6 +772,11 @@ public class CPU implements Serializable {
     } 
     
     int HALT() {
+        //with IME off and an interrupt already pending, HALT doesn't halt and the next byte is read twice
+        if (!interruptHandler.isInterruptsEnabled() && interruptHandler.pending() != 0) {
+            haltBug = true;
+            return 0;
+        }
         halted = true;
         
         return 0;
@@ -729,7 +794,7 @@ public class CPU implements Serializable {
     }
     
     int EI() {
-        this.interruptHandler.setInterruptsEnabled(true);
+        this.interruptHandler.enableAfterNextInstruction();
         return 1;
     }
     
@@ -927,7 +992,9 @@ public class CPU implements Serializable {
         //push next PC onto stack
         PUSH(temp);
         
-        return JP(jumpLocation);
+        int result = JP(jumpLocation);
+        if (profiler != null) profiler.call(regs.PC.read(), regs.SP.read());
+        return result;
     }
     
     int CALL(Condition cond, Readable jumpLocation) {
@@ -948,7 +1015,9 @@ public class CPU implements Serializable {
         LongRegister temp = new LongRegister();
         temp.write(n);
         
-        return JP(temp);
+        int result = JP(temp);
+        if (profiler != null) profiler.call(n, regs.SP.read());
+        return result;
     }
     
     //pop two bytes from stack & jump there
@@ -957,7 +1026,9 @@ public class CPU implements Serializable {
         
         POP(temp);
         
-        return JP(temp);
+        int result = JP(temp);
+        if (profiler != null) profiler.ret(regs.SP.read());
+        return result;
     }
     
     int RET(Condition cond){
@@ -970,13 +1041,13 @@ public class CPU implements Serializable {
     
     //return while enabling interrupts
     int RETI(){
-        EI();
+        this.interruptHandler.setInterruptsEnabled(true); //unlike EI, straight away
         
         return RET();
     }
 
     static Operation[] operations = new Operation[256];
-    {
+    static {
         operations[0x0] = new Operation("NOP", CPU::NOP, 1, "- - - -", 4);
         operations[0x1] = new Operation("LD BC,d16", (CPU cpu) -> cpu.LD(cpu.regs.BC, cpu.d16()), 3, "- - - -", 12);
         operations[0x2] = new Operation("LD (BC),A", (CPU cpu) -> cpu.LD(cpu.mem.registerLocation(cpu.regs.BC), cpu.regs.A), 1, "- - - -", 8);
@@ -1011,7 +1082,7 @@ public class CPU implements Serializable {
         operations[0x1f] = new Operation("RRA", CPU::RRA, 1, "0 0 0 C", 4);
         operations[0x20] = new Jump("JR NZ,r8", (CPU cpu) -> cpu.JR(Condition.NZ, cpu.d8()), 2, "- - - -", 12, 8);
         operations[0x21] = new Operation("LD HL,d16", (CPU cpu) -> cpu.LD(cpu.regs.HL, cpu.d16()), 3, "- - - -", 12);
-        operations[0x22] = new Operation("LD (HL+),A", (CPU cpu) -> cpu.LD(cpu.mem.registerLocation(selfIncrement(cpu.regs.HL)), cpu.regs.A), 1, "- - - -", 8);
+        operations[0x22] = new Operation("LD (HL+),A", (CPU cpu) -> cpu.LD(cpu.mem.registerLocation(cpu.selfIncrement(cpu.regs.HL)), cpu.regs.A), 1, "- - - -", 8);
         operations[0x23] = new Operation("INC HL", (CPU cpu) -> cpu.INC(cpu.regs.HL), 1, "- - - -", 8);
         operations[0x24] = new Operation("INC H", (CPU cpu) -> cpu.INC(cpu.regs.H), 1, "Z 0 H -", 4);
         operations[0x25] = new Operation("DEC H", (CPU cpu) -> cpu.DEC(cpu.regs.H), 1, "Z 1 H -", 4);
@@ -1019,7 +1090,7 @@ public class CPU implements Serializable {
         operations[0x27] = new Operation("DAA", CPU::DAA, 1, "Z - 0 C", 4);
         operations[0x28] = new Jump("JR Z,r8", (CPU cpu) -> cpu.JR(Condition.Z, cpu.d8()), 2, "- - - -", 12, 8);
         operations[0x29] = new Operation("ADD HL,HL", (CPU cpu) -> cpu.ADD(cpu.regs.HL, cpu.regs.HL), 1, "- 0 H C", 8);
-        operations[0x2a] = new Operation("LD A,(HL+)", (CPU cpu) -> cpu.LD(cpu.regs.A, cpu.mem.registerLocation(selfIncrement(cpu.regs.HL))), 1, "- - - -", 8);
+        operations[0x2a] = new Operation("LD A,(HL+)", (CPU cpu) -> cpu.LD(cpu.regs.A, cpu.mem.registerLocation(cpu.selfIncrement(cpu.regs.HL))), 1, "- - - -", 8);
         operations[0x2b] = new Operation("DEC HL", (CPU cpu) -> cpu.DEC(cpu.regs.HL), 1, "- - - -", 8);
         operations[0x2c] = new Operation("INC L", (CPU cpu) -> cpu.INC(cpu.regs.L), 1, "Z 0 H -", 4);
         operations[0x2d] = new Operation("DEC L", (CPU cpu) -> cpu.DEC(cpu.regs.L), 1, "Z 1 H -", 4);
@@ -1027,7 +1098,7 @@ public class CPU implements Serializable {
         operations[0x2f] = new Operation("CPL", CPU::CPL, 1, "- 1 1 -", 4);
         operations[0x30] = new Jump("JR NC,r8", (CPU cpu) -> cpu.JR(Condition.NC, cpu.d8()), 2, "- - - -", 12, 8);
         operations[0x31] = new Operation("LD SP,d16", (CPU cpu) -> cpu.LD(cpu.regs.SP, cpu.d16()), 3, "- - - -", 12);
-        operations[0x32] = new Operation("LD (HL-),A", (CPU cpu) -> cpu.LD(cpu.mem.registerLocation(selfDecrement(cpu.regs.HL)), cpu.regs.A), 1, "- - - -", 8);
+        operations[0x32] = new Operation("LD (HL-),A", (CPU cpu) -> cpu.LD(cpu.mem.registerLocation(cpu.selfDecrement(cpu.regs.HL)), cpu.regs.A), 1, "- - - -", 8);
         operations[0x33] = new Operation("INC SP", (CPU cpu) -> cpu.INC(cpu.regs.SP), 1, "- - - -", 8);
         operations[0x34] = new Operation("INC (HL)", (CPU cpu) -> cpu.INC(cpu.mem.registerLocation(cpu.regs.HL)), 1, "Z 0 H -", 12);
         operations[0x35] = new Operation("DEC (HL)", (CPU cpu) -> cpu.DEC(cpu.mem.registerLocation(cpu.regs.HL)), 1, "Z 1 H -", 12);
@@ -1035,7 +1106,7 @@ public class CPU implements Serializable {
         operations[0x37] = new Operation("SCF", CPU::SCF, 1, "- 0 0 1", 4);
         operations[0x38] = new Jump("JR C(cond),r8", (CPU cpu) -> cpu.JR(Condition.C, cpu.d8()), 2, "- - - -", 12, 8);
         operations[0x39] = new Operation("ADD HL,SP", (CPU cpu) -> cpu.ADD(cpu.regs.HL, cpu.regs.SP), 1, "- 0 H C", 8);
-        operations[0x3a] = new Operation("LD A,(HL-)", (CPU cpu) -> cpu.LD(cpu.regs.A, cpu.mem.registerLocation(selfDecrement(cpu.regs.HL))), 1, "- - - -", 8);
+        operations[0x3a] = new Operation("LD A,(HL-)", (CPU cpu) -> cpu.LD(cpu.regs.A, cpu.mem.registerLocation(cpu.selfDecrement(cpu.regs.HL))), 1, "- - - -", 8);
         operations[0x3b] = new Operation("DEC SP", (CPU cpu) -> cpu.DEC(cpu.regs.SP), 1, "- - - -", 8);
         operations[0x3c] = new Operation("INC A", (CPU cpu) -> cpu.INC(cpu.regs.A), 1, "Z 0 H -", 4);
         operations[0x3d] = new Operation("DEC A", (CPU cpu) -> cpu.DEC(cpu.regs.A), 1, "Z 1 H -", 4);
@@ -1237,7 +1308,7 @@ public class CPU implements Serializable {
     }
     
     static Operation[] cbOperations = new Operation[256];
-    {
+    static {
         cbOperations[0x0] = new Operation("RLC B", (CPU cpu) -> cpu.RLC(cpu.regs.B), 2, "Z 0 0 C", 8);
         cbOperations[0x1] = new Operation("RLC C", (CPU cpu) -> cpu.RLC(cpu.regs.C), 2, "Z 0 0 C", 8);
         cbOperations[0x2] = new Operation("RLC D", (CPU cpu) -> cpu.RLC(cpu.regs.D), 2, "Z 0 0 C", 8);
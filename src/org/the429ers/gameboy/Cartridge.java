@@ -38,7 +38,34 @@ public interface Cartridge extends Serializable {
     int readByte(int location);
     void writeByte(int location, int toWrite);
     void cleanUp();
+    //returns a cartridge sharing the ROM banks, with copy-on-write RAM
+    Cartridge fork();
+    //external RAM, with bank n starting at n * getRamBankSize(), or null if there is none
+    default PagedMemory getRam() {
+        return null;
+    }
+    default int getRamBankSize() {
+        return 0x2000;
+    }
+    //the bank mapped at 0x4000-0x7fff
+    default int getRomBank() {
+        return 1;
+    }
+    //the bank mapped at 0xa000-0xbfff, for MBC3 8 and up select the clock registers
+    default int getRamBank() {
+        return 0;
+    }
     public boolean isGBC();
+    //the title in the header, up to 16 characters
+    default String getTitle() {
+        StringBuilder title = new StringBuilder();
+        for (int location = 0x134; location < 0x144; location++) {
+            int c = readByte(location);
+            if (c == 0) break;
+            title.append((char) c);
+        }
+        return title.toString().trim();
+    }
 }
 
 
@@ -0,0 +1,213 @@
+package org.the429ers.gameboy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ *
+ * Narrows down which RAM locations hold a value, like the cheat finders in
+ * other emulators. Every WRAM bank, every cartridge RAM bank and HRAM are
+ * copied into one flat snapshot, and candidates are kept as a sorted int array
+ * of offsets into it. Each search compares a fresh snapshot with the previous
+ * one, so a search is a couple of array passes and is cheap enough to run every frame.
+ *
+ */
+public class CheatSearch {
+    public enum Comparison { EQUAL, INCREASED, DECREASED, UNCHANGED, CHANGED }
+
+    //a contiguous piece of memory that shows up at base..base+length-1 in the address space
+    private static class Region {
+        PagedMemory memory;
+        int start; //where the region starts in memory
+        int length;
+        int base;
+        int bank;
+        String name;
+        int offset; //where the region starts in the snapshot
+
+        Region(PagedMemory memory, int start, int length, int base, int bank, String name) {
+            this.memory = memory;
+            this.start = start;
+            this.length = length;
+            this.base = base;
+            this.bank = bank;
+            this.name = name;
+        }
+    }
+
+    private List<Region> regions = new ArrayList<>();
+    private byte[] previous = new byte[0];
+    private byte[] current = new byte[0];
+    private String game; //the title of the ROM the snapshots are from
+    private int[] candidates = null; //null until the first search, which means everything is a candidate
+    private int numCandidates = 0;
+
+    private List<Region> findRegions(MMU mmu) {
+        List<Region> result = new ArrayList<>();
+        PagedMemory wram = mmu.getWRAM();
+        result.add(new Region(wram, 0, MMU.WRAM_BANK_SIZE, 0xC000, 0, "WRAM"));
+        int numBanks = mmu.isCGB() ? 8 : 2;
+        for (int bank = 1; bank < numBanks; bank++) {
+            result.add(new Region(wram, bank * MMU.WRAM_BANK_SIZE, MMU.WRAM_BANK_SIZE, 0xD000, bank, "WRAM"));
+        }
+        Cartridge rom = mmu.getROM();
+        PagedMemory ram = rom == null ? null : rom.getRam();
+        if (ram != null) {
+            int bankSize = rom.getRamBankSize();
+            for (int bank = 0; bank * bankSize < ram.size(); bank++) {
+                int length = Math.min(0x2000, ram.size() - bank * bankSize);
+                result.add(new Region(ram, bank * bankSize, length, 0xA000, bank, "SRAM"));
+            }
+        }
+        result.add(new Region(mmu.getMemory(), 0xFF80, 0x7F, 0xFF80, 0, "HRAM"));
+        int offset = 0;
+        for (Region region : result) {
+            region.offset = offset;
+            offset += region.length;
+        }
+        return result;
+    }
+
+    private void snapshot(MMU mmu) {
+        List<Region> found = findRegions(mmu);
+        int size = 0;
+        for (Region region : found) {
+            size += region.length;
+        }
+        String title = mmu.getROM() == null ? "" : mmu.getROM().getTitle();
+        boolean changed = size != current.length || !title.equals(game);
+        if (changed) {
+            //a different game was loaded, so nothing from before is meaningful
+            game = title;
+            previous = new byte[size];
+            current = new byte[size];
+            candidates = null;
+        }
+        byte[] temp = previous;
+        previous = current;
+        current = temp;
+        regions = found;
+        for (Region region : regions) {
+            region.memory.copyTo(region.start, current, region.offset, region.length);
+        }
+        if (changed) {
+            //there's nothing to compare with yet, so the first search compares the snapshot with itself
+            System.arraycopy(current, 0, previous, 0, size);
+        }
+    }
+
+    //forgets every candidate and takes a new snapshot to compare the next search against
+    public void reset(MMU mmu) {
+        snapshot(mmu);
+        candidates = null;
+    }
+
+    public int getNumCandidates() {
+        return candidates == null ? current.length : numCandidates;
+    }
+
+    private int value(byte[] snapshot, int i, boolean wide) {
+        return wide ? (snapshot[i] & 0xff) | ((snapshot[i + 1] & 0xff) << 8) : snapshot[i] & 0xff;
+    }
+
+    private boolean test(Comparison comparison, int before, int now, int value) {
+        switch (comparison) {
+            case EQUAL: return now == value;
+            case INCREASED: return now > before;
+            case DECREASED: return now < before;
+            case UNCHANGED: return now == before;
+            case CHANGED: return now != before;
+        }
+        return false;
+    }
+
+    /***
+     * Keeps the candidates whose 8 bit (or 16 bit little endian if wide) value
+     * compares as requested with the last snapshot. value is only used for EQUAL.
+     */
+    public int search(MMU mmu, Comparison comparison, int value, boolean wide) {
+        snapshot(mmu);
+        int[] result = new int[getNumCandidates()];
+        int n = 0;
+        int c = 0;
+        for (Region region : regions) {
+            //16 bit values can't start on the last byte of a region
+            int end = region.offset + region.length - (wide ? 1 : 0);
+            if (candidates == null) {
+                for (int i = region.offset; i < end; i++) {
+                    if (test(comparison, value(previous, i, wide), value(current, i, wide), value)) {
+                        result[n++] = i;
+                    }
+                }
+            } else {
+                for (; c < numCandidates && candidates[c] < region.offset + region.length; c++) {
+                    int i = candidates[c];
+                    if (i < end && test(comparison, value(previous, i, wide), value(current, i, wide), value)) {
+                        result[n++] = i;
+                    }
+                }
+            }
+        }
+        candidates = result;
+        numCandidates = n;
+        return n;
+    }
+
+    //keeps the candidates where the given bytes appear
+    public int search(MMU mmu, byte[] sequence) {
+        snapshot(mmu);
+        int[] result = new int[getNumCandidates()];
+        int n = 0;
+        int c = 0;
+        for (Region region : regions) {
+            int end = region.offset + region.length - sequence.length + 1;
+            if (candidates == null) {
+                for (int i = region.offset; i < end; i++) {
+                    if (matches(i, sequence)) result[n++] = i;
+                }
+            } else {
+                for (; c < numCandidates && candidates[c] < region.offset + region.length; c++) {
+                    int i = candidates[c];
+                    if (i < end && matches(i, sequence)) result[n++] = i;
+                }
+            }
+        }
+        candidates = result;
+        numCandidates = n;
+        return n;
+    }
+
+    private boolean matches(int i, byte[] sequence) {
+        for (int j = 0; j < sequence.length; j++) {
+            if (current[i + j] != sequence[j]) return false;
+        }
+        return true;
+    }
+
+    private Region regionOf(int i) {
+        for (Region region : regions) {
+            if (i < region.offset + region.length) return region;
+        }
+        throw new IllegalArgumentException("Offset out of range: " + i);
+    }
+
+    //e.g. "d123 (WRAM bank 2) = 3f"
+    public String describe(int i) {
+        Region region = regionOf(i);
+        int address = region.base + i - region.offset;
+        return String.format("%04x (%s bank %d) = %02x", address, region.name, region.bank, current[i] & 0xff);
+    }
+
+    public void print(int max) {
+        if (candidates == null) {
+            System.out.println("A search has not yet been performed. Use hes to perform a search.");
+            return;
+        }
+        for (int c = 0; c < Math.min(max, numCandidates); c++) {
+            System.out.println(describe(candidates[c]));
+        }
+        if (numCandidates > max) {
+            System.out.println("... " + (numCandidates - max) + " more");
+        }
+    }
+}
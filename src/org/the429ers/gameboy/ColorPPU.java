@@ -5,7 +5,7 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
-public class ColorPPU implements IPPU, Serializable {
+public class ColorPPU implements IPPU, Serializable, Cloneable {
     private MMU mem;
     private LCDControl lcdControl;
     private ColorPaletteManager backgroundColorPaletteManager;
@@ -29,6 +29,10 @@ public class ColorPPU implements IPPU, Serializable {
     private boolean hBlank;
     private boolean vBlank;
     private boolean disabledLastTick;
+    private boolean skipRendering;
+    private transient FrameSink frameSink;
+    private transient EmulatorMetrics metrics;
+    private boolean skippingFrame; //latched at the start of each frame so a frame is never half drawn
     
     public ColorPPU(MMU mem, GameBoyScreen gbs) {
         this.mem = mem;
@@ -43,10 +47,49 @@ public class ColorPPU implements IPPU, Serializable {
         mem.setSpriteManager(spriteManager);
     }
     
+    public ColorPPU fork(MMU mem) {
+        ColorPPU copy;
+        try {
+            copy = (ColorPPU) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.mem = mem;
+        mem.setPPU(copy);
+        copy.gbs = null;
+        copy.frameSink = null;
+        copy.metrics = null;
+        copy.lcdControl = lcdControl.fork(mem);
+        copy.tileSetManager = tileSetManager.fork();
+        mem.setTileSetManager(copy.tileSetManager);
+        copy.spriteManager = new SpriteManager(mem, copy.tileSetManager, copy.lcdControl);
+        copy.spriteManager.initializeSprites();
+        mem.setSpriteManager(copy.spriteManager);
+        copy.backgroundColorPaletteManager = backgroundColorPaletteManager.fork();
+        copy.spriteColorPaletteManager = spriteColorPaletteManager.fork();
+        mem.setColorPaletteManagers(copy.backgroundColorPaletteManager, copy.spriteColorPaletteManager);
+        //the cached maps and sprites keep pointing at tiles from before the fork until they are reloaded
+        copy.sprites = new HashMap<>(sprites);
+        copy.frame = IPPU.copyFrame(frame);
+        return copy;
+    }
+    
     public void toggleHBlankIndicator() {
         hBlank = false;
     }
     
+    public void setSkipRendering(boolean skip) {
+        this.skipRendering = skip;
+    }
+    
+    public void setFrameSink(FrameSink sink) {
+        this.frameSink = sink;
+    }
+    
+    public void setMetrics(EmulatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
     
     public void loadMap() {
         int address = lcdControl.isUse9800TileMapAddressingForBackground() ? 0x9800 : 0x9c00;
@@ -90,11 +133,12 @@ public class ColorPPU implements IPPU, Serializable {
             }
             mem.writeByte(0xFF44, currentY);
             if (currentY == 0) {
-                this.loadMap();
+                skippingFrame = skipRendering;
+                if (!skippingFrame) this.loadMap();
                 vBlank = false;
                 //this.tileSetManager.updateTileSets();
             }
-            if (lcdControl.isSpritesEnabled()) {
+            if (lcdControl.isSpritesEnabled() && !skippingFrame) {
                 loadSprites();
             }
             //loadWindow(useTileSet1, useWindowTileMap1);
@@ -102,7 +146,7 @@ public class ColorPPU implements IPPU, Serializable {
             windowY = mem.readByte(0xff4a);
             currentX = 0;
             scrollX = mem.readByte(0xFF43);
-            loadWindow();
+            if (!skippingFrame) loadWindow();
         }
         if (cycleCount == PIXEL_TRANSFER_START) {
             int status = mem.readByte(0xFF41) & 0x3F;
@@ -112,7 +156,7 @@ public class ColorPPU implements IPPU, Serializable {
         
         
         // Actually transfer pixels
-        if (cycleCount >= PIXEL_TRANSFER_START && cycleCount < PIXEL_TRANSFER_START + 160 && currentY < ACTUAL_LINES) {
+        if (cycleCount >= PIXEL_TRANSFER_START && cycleCount < PIXEL_TRANSFER_START + 160 && currentY < ACTUAL_LINES && !skippingFrame) {
             int yPos = currentY + scrollY;
             int xPos = scrollX + currentX;
             Tile currentTile;
@@ -171,6 +215,7 @@ public class ColorPPU implements IPPU, Serializable {
         }
         // H-Blank Interrupt
         if (cycleCount == H_BLANK_START && currentY < ACTUAL_LINES) {
+            if (metrics != null) metrics.line(skippingFrame);
             hBlank = true;
             int status = mem.readByte(0xFF41) & 0x3F;
             mem.writeByte(0xFF41, status | 0xC0);
@@ -195,8 +240,7 @@ public class ColorPPU implements IPPU, Serializable {
         
         //send LCDC interrupt
         if (currentY == LYCompare){
-            int interruptRegister = mem.readByte(0xFF0F) & 0xFE;
-            mem.writeByte(0xFF0F, interruptRegister | 0x02);
+            mem.requestInterrupt(InterruptHandler.LCDC);
         }
         
         cycleCount++;
@@ -204,13 +248,51 @@ public class ColorPPU implements IPPU, Serializable {
     }
     
     
+    public int quietCycles() {
+        if (drewFrame) {
+            return 0;
+        }
+        if (!lcdControl.isDisplayEnabled()) {
+            return Integer.MAX_VALUE; //nothing happens until the CPU turns the display back on
+        }
+        if (disabledLastTick || currentY == LYCompare || cycleCount == OAM_SEARCH_START) {
+            return 0;
+        }
+        int next;
+        if (cycleCount <= PIXEL_TRANSFER_START) {
+            next = PIXEL_TRANSFER_START;
+        } else if (currentY < ACTUAL_LINES && cycleCount < PIXEL_TRANSFER_START + 160 && !skippingFrame) {
+            return 0; //composing pixels
+        } else if (currentY < ACTUAL_LINES && cycleCount <= H_BLANK_START) {
+            next = H_BLANK_START;
+        } else {
+            next = H_BLANK_END;
+        }
+        return next - cycleCount;
+    }
+    
+    //a quiet tick only rereads the registers it caches
+    public void skipQuietCycles(int cycles) {
+        if (cycles <= 0) {
+            return;
+        }
+        lcdControl.update();
+        if (!lcdControl.isDisplayEnabled()) {
+            disabledLastTick = true;
+            return;
+        }
+        scrollX = mem.readByte(0xFF43);
+        drewFrame = false;
+        cycleCount += cycles;
+    }
+    
     private void drawFrame() {
         int status = mem.readByte(0xFF41) & 0x3F;
         mem.writeByte(0xFF41, status | 0x40);
-        gbs.drawFrame(frame);
+        if (frameSink != null && !skippingFrame && frame != null) frameSink.frameDone(frame);
+        if (gbs != null && !skippingFrame) frame = gbs.drawFrame(frame);
         drewFrame = true;
-        int interruptRegister = mem.readByte(0xFF0F) & 0xFE;
-        mem.writeByte(0xFF0F, interruptRegister | 0x01);
+        mem.requestInterrupt(InterruptHandler.VBLANK);
         //mem.writeByte(0xFF85, 0xFF);
         //mem.writeByte(0xFF44, 0x90);
     }
@@ -13,6 +13,17 @@ public class ColorPalette implements Serializable {
         }
     }
     
+    public ColorPalette copy() {
+        ColorPalette copy = new ColorPalette();
+        for (int i = 0; i < 4; i++) {
+            ColorData color = copy.colors[i];
+            color.red = colors[i].red;
+            color.green = colors[i].green;
+            color.blue = colors[i].blue;
+        }
+        return copy;
+    }
+    
     public Color getColor(int colorNum) {
         return colors[colorNum].getColor();
     }
@@ -14,6 +14,16 @@ public class ColorPaletteManager implements Serializable {
         }
     }
     
+    public ColorPaletteManager fork() {
+        ColorPaletteManager copy = new ColorPaletteManager();
+        for (int i = 0; i < 8; i++) {
+            copy.palettes[i] = palettes[i].copy();
+        }
+        copy.currentIndex = currentIndex;
+        copy.autoIncrement = autoIncrement;
+        return copy;
+    }
+    
     public ColorPalette getPalette(int paletteNum) {
         return palettes[paletteNum];
     }
@@ -0,0 +1,267 @@
+package org.the429ers.gameboy;
+
+import java.io.Serializable;
+
+/***
+ *
+ * The emulated hardware without any of the Swing frontend: CPU, MMU, PPU and
+ * peripherals, all clocked together. Instances are independent of each other,
+ * so several can run in one JVM and {@link #fork()} can branch off new ones.
+ *
+ */
+public class Emulator implements Serializable, Cloneable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = 4931563377105530583L;
+    public static final int CLOCK_SPEED = 4194304;
+    public static final int CLOCKS_PER_FRAME = 70224;
+    public static final double FRAME_RATE = (double) CLOCK_SPEED / CLOCKS_PER_FRAME; //about 59.73
+    MMU mmu;
+    CPU cpu;
+    IPPU ppu;
+    LinkCable cable;
+    boolean haltEnabled = true;
+    long framesDrawn = 0;
+
+    private int numClocks = 0;
+    private long totalClocks = 0;
+    private transient Runnable frameListener;
+    private transient EmulatorMetrics metrics;
+    private transient FlightEvents.Frame frameEvent; //begun at the end of the previous frame
+
+    public Emulator(String romFileName, GameBoyScreen gbs, AudioSink audioSink) {
+        mmu = new MMU(romFileName, audioSink);
+        mmu.setEmulator(this);
+        cpu = new CPU(mmu);
+        if (mmu.isCGB()) {
+            ppu = new ColorPPU(mmu, gbs);
+            ColorPaletteManager backgroundPaletteManager = new ColorPaletteManager();
+            ColorPaletteManager spritePaletteManager = new ColorPaletteManager();
+            mmu.setColorPaletteManagers(backgroundPaletteManager, spritePaletteManager);
+            ppu.setPaletteManagers(backgroundPaletteManager, spritePaletteManager);
+        }
+        else {
+            ppu = new PPU(mmu, gbs);
+        }
+        mmu.setPPU(ppu);
+        new Joypad(mmu, cpu.interruptHandler);
+        ppu.loadMap(true, true);
+        cable = new LinkCable(mmu, cpu.interruptHandler);
+        cpu.idleLoops = new IdleLoopSkipper(mmu.getROM() != null
+                && IdleLoopSkipper.isOptedOut(mmu.getROM().getTitle()));
+    }
+
+    public MMU getMMU() {
+        return mmu;
+    }
+
+    public CPU getCPU() {
+        return cpu;
+    }
+
+    public IPPU getPPU() {
+        return ppu;
+    }
+
+    public Joypad getJoypad() {
+        return mmu.getJoypad();
+    }
+
+    //called on the emulation thread every time the PPU finishes a frame
+    public void setFrameListener(Runnable frameListener) {
+        this.frameListener = frameListener;
+    }
+
+    public void resetClocks() {
+        numClocks = 0;
+    }
+
+    public int getClocks() {
+        return numClocks;
+    }
+
+    //clock cycles since power on
+    public long getTotalClocks() {
+        return totalClocks;
+    }
+
+    //where sound goes at the end of every frame, null or NullAudioSink skip sound entirely
+    public void setAudioSink(AudioSink sink) {
+        mmu.soundChip.setSink(sink);
+    }
+
+    //records every instruction the CPU executes, or stops recording if tracer is null
+    public void setTraceRecorder(TraceRecorder tracer) {
+        cpu.tracer = tracer;
+        mmu.setTraceRecorder(tracer);
+    }
+
+    //receives everything sent over the link cable instead of it being printed
+    public void setSerialListener(SerialListener listener) {
+        cable.setListener(listener);
+    }
+
+    //connects the link cable to another emulator, or unplugs it if transport is null; only call between instructions
+    public void setSerialTransport(SerialTransport transport) {
+        cable.setTransport(transport);
+    }
+
+    //plugs a link cable between this emulator and other, which can then run on separate threads
+    public void link(Emulator other) {
+        PipeTransport[] ends = PipeTransport.pair();
+        setSerialTransport(ends[0]);
+        other.setSerialTransport(ends[1]);
+    }
+
+    //hands every drawn frame to sink, or stops if sink is null
+    public void setFrameSink(FrameSink sink) {
+        ppu.setFrameSink(sink);
+    }
+
+    //counts what every part of the emulator does, or stops counting if metrics is null
+    public void setMetrics(EmulatorMetrics metrics) {
+        this.metrics = metrics;
+        cpu.metrics = metrics;
+        mmu.setMetrics(metrics);
+        ppu.setMetrics(metrics);
+        mmu.soundChip.setMetrics(metrics);
+    }
+
+    public EmulatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    //counts where the guest code spends its cycles, or stops if profiler is null, only call between instructions
+    public void setProfiler(GuestProfiler profiler) {
+        cpu.profiler = profiler;
+    }
+
+    //skips the iterations of polling loops that can't see anything change, never on for a ROM that opted out
+    public void setIdleLoopSkipping(boolean enabled) {
+        cpu.idleLoops.setEnabled(enabled);
+    }
+
+    public IdleLoopSkipper getIdleLoopSkipper() {
+        return cpu.idleLoops;
+    }
+
+    //ticks everything except for the CPU
+    public void clockTick(int ticks) {
+        numClocks += ticks;
+        totalClocks += ticks;
+        if (metrics != null && metrics.isTiming()) {
+            timedClockTick(ticks);
+            return;
+        }
+        for(int i = 0; i < ticks; i++) {
+            ppu.tick();
+            if (ppu.isHBlank()) {
+                //mmu.hBlankDMA();
+                //ppu.toggleHBlankIndicator();
+            }
+            if (ppu.drewFrame()) {
+                frameDone();
+            }
+            cpu.timer.tick();
+        }
+        cable.tick(ticks);
+    }
+
+    //the same as clockTick, but times the PPU and the other devices for the metrics
+    private void timedClockTick(int ticks) {
+        for(int i = 0; i < ticks; i++) {
+            long start = System.nanoTime();
+            long empty = System.nanoTime();
+            ppu.tick();
+            long ppuDone = System.nanoTime();
+            if (ppu.drewFrame()) {
+                frameDone();
+            }
+            cpu.timer.tick();
+            metrics.cycleTimed(start, empty, ppuDone, System.nanoTime());
+        }
+        cable.tick(ticks);
+    }
+
+    private void frameDone() {
+        framesDrawn++;
+        FlightEvents.Frame event = frameEvent;
+        frameEvent = new FlightEvents.Frame();
+        if (metrics == null && (event == null || !event.isEnabled())) {
+            mmu.soundChip.tick(totalClocks);
+            if (frameListener != null) frameListener.run();
+        } else {
+            long start = System.nanoTime();
+            mmu.soundChip.tick(totalClocks);
+            long soundDone = System.nanoTime();
+            if (frameListener != null) frameListener.run();
+            long end = System.nanoTime();
+            if (metrics != null) {
+                metrics.frameTimed(soundDone - start, end - soundDone);
+            }
+            if (event != null && event.shouldCommit()) {
+                event.frame = framesDrawn;
+                event.apuTime = soundDone - start;
+                event.frontendTime = end - soundDone;
+                if (metrics != null) {
+                    event.cpuTime = metrics.getLastFrameNanos(EmulatorMetrics.CPU_TIME);
+                    event.ppuTime = metrics.getLastFrameNanos(EmulatorMetrics.PPU_TIME);
+                }
+                event.commit();
+            }
+        }
+        frameEvent.begin();
+    }
+
+    //how many clock cycles can pass without any device raising an interrupt or finishing a frame
+    public int quietCycles() {
+        return Math.min(ppu.quietCycles(), Math.min(cpu.timer.quietCycles(), cable.quietCycles()));
+    }
+
+    //the same as clockTick(cycles) for at most quietCycles() cycles, but without ticking through them
+    public void skipQuietCycles(int cycles) {
+        numClocks += cycles;
+        totalClocks += cycles;
+        ppu.skipQuietCycles(cycles);
+        cpu.timer.skipQuietCycles(cycles);
+        cable.skipQuietCycles(cycles);
+    }
+
+    public void tick() {
+        cpu.executeOneInstruction(false, haltEnabled);
+    }
+
+    public void runFrames(int numFrames) {
+        long target = framesDrawn + numFrames;
+        while (framesDrawn < target) {
+            tick();
+        }
+    }
+
+    /***
+     * Creates an independent copy of this emulator. ROM banks are shared, and
+     * RAM pages and decoded tiles are shared until either emulator writes to
+     * them, so forking does not copy any of the big memory arrays.
+     * The copy has no screen or frame listener attached.
+     */
+    public Emulator fork() {
+        Emulator copy;
+        try {
+            copy = (Emulator) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.frameListener = null;
+        copy.metrics = null;
+        copy.frameEvent = null;
+        copy.mmu = mmu.fork();
+        copy.mmu.setEmulator(copy);
+        copy.cpu = cpu.fork(copy.mmu);
+        copy.ppu = ppu.fork(copy.mmu);
+        copy.mmu.setPPU(copy.ppu);
+        mmu.getJoypad().fork(copy.mmu, copy.cpu.interruptHandler);
+        copy.cable = cable.fork(copy.mmu, copy.cpu.interruptHandler);
+        return copy;
+    }
+}
@@ -0,0 +1,534 @@
+package org.the429ers.gameboy;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/***
+ *
+ * Counters for where an emulator spends its work: instructions per opcode,
+ * CPU memory accesses per region, PPU lines, sound samples, save states and
+ * time per subsystem. Everything is counted on the emulation thread with
+ * plain fields, so attaching metrics costs a null check per hook when off and
+ * an array increment per hook when on.
+ *
+ * The sound chip and the frame listener only run once per frame and are timed
+ * exactly, as is the time between frames. Timing every instruction would
+ * cost more than the instructions, so one in every SAMPLE_INTERVAL
+ * instructions is timed in detail, and the time between frames is shared
+ * between the CPU, the PPU and the timer and serial port in the proportions
+ * those samples found. Samples time every cycle, which takes about as long
+ * as ticking the PPU, so each cycle also times an empty span to measure the
+ * cost of System.nanoTime right there and take it back out.
+ *
+ * snapshot() and setSnapshotListener are only for the emulation thread. The
+ * MXBean getters read the counters from whatever thread JMX uses, so they can
+ * be slightly behind, and reset() only asks for the counters to be cleared
+ * at the end of the current frame.
+ *
+ */
+public class EmulatorMetrics implements EmulatorMetricsMXBean {
+    public static final int SAMPLE_INTERVAL = 256;
+    public static final long MAX_FRAME_GAP_NANOS = 1_000_000_000L; //longer gaps between frames, e.g. paused, aren't counted
+
+    public static final String[] REGIONS = {"ROM0", "ROMX", "VRAM", "SRAM", "WRAM", "Echo", "OAM", "IO", "HRAM"};
+    private static final int ROM0 = 0, ROMX = 1, VRAM = 2, SRAM = 3, WRAM = 4, ECHO = 5, OAM = 6, IO = 7, HRAM = 8;
+    private static final byte[] REGION_OF_PAGE = new byte[0x100]; //by the top byte of the address, except for 0xff
+    static {
+        for (int page = 0; page < 0x100; page++) {
+            int region;
+            if (page < 0x40) region = ROM0;
+            else if (page < 0x80) region = ROMX;
+            else if (page < 0xa0) region = VRAM;
+            else if (page < 0xc0) region = SRAM;
+            else if (page < 0xe0) region = WRAM;
+            else if (page < 0xfe) region = ECHO;
+            else if (page == 0xfe) region = OAM;
+            else region = IO;
+            REGION_OF_PAGE[page] = (byte) region;
+        }
+    }
+
+    public static final String[] SUBSYSTEMS = {"cpu", "ppu", "timer and serial", "apu", "frontend"};
+    static final int CPU_TIME = 0, PPU_TIME = 1, DEVICE_TIME = 2, APU_TIME = 3, FRONTEND_TIME = 4;
+
+    private final Emulator emulator;
+    private final long[] opcodes = new long[256];
+    private final long[] cbOpcodes = new long[256];
+    private final long[] reads = new long[REGIONS.length];
+    private final long[] writes = new long[REGIONS.length];
+    private final long[] nanos = new long[SUBSYSTEMS.length];
+    private final long[] lastFrameNanos = new long[SUBSYSTEMS.length];
+    private long haltedCycles;
+    private long idleSkippedCycles;
+    private long linesRendered;
+    private long linesSkipped;
+    private long samplesProduced;
+    private long statesSaved;
+    private long stateBytes;
+    private long startClocks;
+    private long startFrames;
+    private long startNanos;
+
+    //state of the instruction being timed
+    private int untilSample = SAMPLE_INTERVAL;
+    private boolean timing;
+    private long samplePpuNanos;
+    private long sampleDeviceNanos;
+    private long sampleFrameNanos;
+    private long sampleCycleNanos;
+    private long sampleOverheadNanos;
+    private long sampledCpuNanos; //sums of all samples, only their proportions matter
+    private long sampledPpuNanos;
+    private long sampledDeviceNanos;
+    private long lastFrameEnd;
+
+    private Consumer<Snapshot> snapshotListener;
+    private int snapshotInterval;
+    private int framesUntilSnapshot;
+    private ObjectName objectName;
+    private volatile boolean resetRequested;
+
+    public EmulatorMetrics(Emulator emulator) {
+        this.emulator = emulator;
+        clear();
+    }
+
+    private static int region(int location) {
+        location &= 0xffff;
+        int page = location >>> 8;
+        if (page != 0xff) {
+            return REGION_OF_PAGE[page];
+        }
+        return location < 0xff80 || location == 0xffff ? IO : HRAM;
+    }
+
+    void opcode(int opcode) {
+        opcodes[opcode]++;
+    }
+
+    void cbOpcode(int opcode) {
+        cbOpcodes[opcode]++;
+    }
+
+    void halted(int cycles) {
+        haltedCycles += cycles;
+    }
+
+    void idleLoopSkipped(int cycles) {
+        idleSkippedCycles += cycles;
+    }
+
+    void read(int location) {
+        reads[region(location)]++;
+    }
+
+    void write(int location) {
+        writes[region(location)]++;
+    }
+
+    void line(boolean skipped) {
+        if (skipped) {
+            linesSkipped++;
+        } else {
+            linesRendered++;
+        }
+    }
+
+    void samples(int count) {
+        samplesProduced += count;
+    }
+
+    public void stateSaved(long bytes) {
+        statesSaved++;
+        stateBytes += bytes;
+    }
+
+    //true if the next instruction should be timed, in which case call instructionTimed after it
+    boolean startInstruction() {
+        if (--untilSample > 0) {
+            return false;
+        }
+        untilSample = SAMPLE_INTERVAL;
+        timing = true;
+        samplePpuNanos = 0;
+        sampleDeviceNanos = 0;
+        sampleFrameNanos = 0;
+        sampleCycleNanos = 0;
+        sampleOverheadNanos = 0;
+        return true;
+    }
+
+    boolean isTiming() {
+        return timing;
+    }
+
+    void instructionTimed(long total) {
+        timing = false;
+        long cpu = total - sampleCycleNanos - sampleOverheadNanos;
+        sampledCpuNanos += Math.max(0, cpu);
+        sampledPpuNanos += samplePpuNanos;
+        sampledDeviceNanos += sampleDeviceNanos;
+    }
+
+    //start, empty, ppuDone and end are nanoTimes taken around one cycle, empty right after start
+    void cycleTimed(long start, long empty, long ppuDone, long end) {
+        long cost = empty - start;
+        samplePpuNanos += Math.max(0, ppuDone - empty - cost);
+        sampleDeviceNanos += Math.max(0, end - ppuDone - cost - sampleFrameNanos); //less the end of a frame, timed on its own
+        sampleFrameNanos = 0;
+        sampleCycleNanos += end - start;
+        sampleOverheadNanos += cost; //the nanoTime between cycles
+    }
+
+    //the end of frame work is timed exactly, so it's left out of the sampled instruction
+    void frameTimed(long apuTime, long frontendTime) {
+        if (timing) {
+            sampleFrameNanos = apuTime + frontendTime;
+        }
+        long now = System.nanoTime();
+        long emulation = now - lastFrameEnd - apuTime - frontendTime;
+        lastFrameEnd = now;
+        long sampled = sampledCpuNanos + sampledPpuNanos + sampledDeviceNanos;
+        Arrays.fill(lastFrameNanos, 0);
+        lastFrameNanos[APU_TIME] = apuTime;
+        lastFrameNanos[FRONTEND_TIME] = frontendTime;
+        if (emulation > 0 && emulation < MAX_FRAME_GAP_NANOS && sampled > 0) {
+            long ppu = (long) ((double) emulation * sampledPpuNanos / sampled);
+            long devices = (long) ((double) emulation * sampledDeviceNanos / sampled);
+            lastFrameNanos[PPU_TIME] = ppu;
+            lastFrameNanos[DEVICE_TIME] = devices;
+            lastFrameNanos[CPU_TIME] = emulation - ppu - devices;
+            for (int i = 0; i < nanos.length; i++) {
+                nanos[i] += lastFrameNanos[i];
+            }
+        } else {
+            nanos[APU_TIME] += apuTime;
+            nanos[FRONTEND_TIME] += frontendTime;
+        }
+        if (snapshotListener != null && --framesUntilSnapshot <= 0) {
+            framesUntilSnapshot = snapshotInterval;
+            snapshotListener.accept(snapshot());
+        }
+        if (resetRequested) {
+            resetRequested = false;
+            clear();
+        }
+    }
+
+    //time spent in one of the SUBSYSTEMS during the last frame
+    long getLastFrameNanos(int subsystem) {
+        return lastFrameNanos[subsystem];
+    }
+
+    //calls listener on the emulation thread every frames frames, or stops if listener is null
+    public void setSnapshotListener(int frames, Consumer<Snapshot> listener) {
+        this.snapshotInterval = frames;
+        this.framesUntilSnapshot = frames;
+        this.snapshotListener = listener;
+    }
+
+    //clears the counters at the end of the frame, on the emulation thread
+    @Override
+    public void reset() {
+        resetRequested = true;
+    }
+
+    private void clear() {
+        Arrays.fill(opcodes, 0);
+        Arrays.fill(cbOpcodes, 0);
+        Arrays.fill(reads, 0);
+        Arrays.fill(writes, 0);
+        Arrays.fill(nanos, 0);
+        haltedCycles = 0;
+        idleSkippedCycles = 0;
+        linesRendered = 0;
+        linesSkipped = 0;
+        samplesProduced = 0;
+        statesSaved = 0;
+        stateBytes = 0;
+        startClocks = emulator.getTotalClocks();
+        startFrames = emulator.framesDrawn;
+        startNanos = System.nanoTime();
+        lastFrameEnd = startNanos;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /***
+     *
+     * An immutable copy of the counters. minus gives the counts between two
+     * snapshots, e.g. for the last second.
+     *
+     */
+    public static class Snapshot {
+        public final long nanoTime;
+        public final long clocks;
+        public final long frames;
+        public final long haltedCycles;
+        public final long idleSkippedCycles;
+        public final long linesRendered;
+        public final long linesSkipped;
+        public final long samplesProduced;
+        public final long statesSaved;
+        public final long stateBytes;
+        public final long[] opcodes;
+        public final long[] cbOpcodes;
+        public final long[] reads;
+        public final long[] writes;
+        public final long[] nanos;
+
+        private Snapshot(EmulatorMetrics metrics) {
+            nanoTime = System.nanoTime() - metrics.startNanos;
+            clocks = metrics.emulator.getTotalClocks() - metrics.startClocks;
+            frames = metrics.emulator.framesDrawn - metrics.startFrames;
+            haltedCycles = metrics.haltedCycles;
+            idleSkippedCycles = metrics.idleSkippedCycles;
+            linesRendered = metrics.linesRendered;
+            linesSkipped = metrics.linesSkipped;
+            samplesProduced = metrics.samplesProduced;
+            statesSaved = metrics.statesSaved;
+            stateBytes = metrics.stateBytes;
+            opcodes = metrics.opcodes.clone();
+            cbOpcodes = metrics.cbOpcodes.clone();
+            reads = metrics.reads.clone();
+            writes = metrics.writes.clone();
+            nanos = metrics.nanos.clone();
+        }
+
+        private Snapshot(Snapshot a, Snapshot b) {
+            nanoTime = a.nanoTime - b.nanoTime;
+            clocks = a.clocks - b.clocks;
+            frames = a.frames - b.frames;
+            haltedCycles = a.haltedCycles - b.haltedCycles;
+            idleSkippedCycles = a.idleSkippedCycles - b.idleSkippedCycles;
+            linesRendered = a.linesRendered - b.linesRendered;
+            linesSkipped = a.linesSkipped - b.linesSkipped;
+            samplesProduced = a.samplesProduced - b.samplesProduced;
+            statesSaved = a.statesSaved - b.statesSaved;
+            stateBytes = a.stateBytes - b.stateBytes;
+            opcodes = minus(a.opcodes, b.opcodes);
+            cbOpcodes = minus(a.cbOpcodes, b.cbOpcodes);
+            reads = minus(a.reads, b.reads);
+            writes = minus(a.writes, b.writes);
+            nanos = minus(a.nanos, b.nanos);
+        }
+
+        private static long[] minus(long[] a, long[] b) {
+            long[] difference = new long[a.length];
+            for (int i = 0; i < a.length; i++) {
+                difference[i] = a[i] - b[i];
+            }
+            return difference;
+        }
+
+        //the counts since earlier
+        public Snapshot minus(Snapshot earlier) {
+            return new Snapshot(this, earlier);
+        }
+
+        public long getInstructions() {
+            long total = 0;
+            for (long count : opcodes) {
+                total += count;
+            }
+            return total;
+        }
+
+        //multiple of real Game Boy speed
+        public double getSpeed() {
+            return nanoTime == 0 ? 0 : clocks * 1e9 / nanoTime / Emulator.CLOCK_SPEED;
+        }
+
+        public String describe() {
+            StringBuilder text = new StringBuilder();
+            double seconds = nanoTime / 1e9;
+            text.append(String.format("%.2f s, %d frames, %d instructions, %.2fx speed, %.1f%% of cycles halted, %.1f%% skipped in idle loops%n",
+                    seconds, frames, getInstructions(), getSpeed(), clocks == 0 ? 0 : 100.0 * haltedCycles / clocks,
+                    clocks == 0 ? 0 : 100.0 * idleSkippedCycles / clocks));
+            text.append(String.format("lines: %d rendered, %d skipped; samples: %d; states: %d saved, %d bytes%n",
+                    linesRendered, linesSkipped, samplesProduced, statesSaved, stateBytes));
+            text.append("time:");
+            for (int i = 0; i < SUBSYSTEMS.length; i++) {
+                text.append(String.format(" %s %.1f%%", SUBSYSTEMS[i], nanoTime == 0 ? 0 : 100.0 * nanos[i] / nanoTime));
+            }
+            text.append(String.format("%nreads:"));
+            for (int i = 0; i < REGIONS.length; i++) {
+                text.append(' ').append(REGIONS[i]).append(' ').append(reads[i]);
+            }
+            text.append(String.format("%nwrites:"));
+            for (int i = 0; i < REGIONS.length; i++) {
+                text.append(' ').append(REGIONS[i]).append(' ').append(writes[i]);
+            }
+            return text.toString();
+        }
+    }
+
+    //registers these metrics with the platform MBean server, replacing any other emulator's
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("org.the429ers.gameboy:type=Emulator");
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        objectName = null;
+    }
+
+    private static Map<String, Long> byName(String[] names, long[] counts) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            map.put(names[i], counts[i]);
+        }
+        return map;
+    }
+
+    @Override
+    public long getInstructions() {
+        long total = 0;
+        for (long count : opcodes) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public long getHaltedCycles() {
+        return haltedCycles;
+    }
+
+    @Override
+    public long getIdleSkippedCycles() {
+        return idleSkippedCycles;
+    }
+
+    @Override
+    public long getClocks() {
+        return emulator.getTotalClocks() - startClocks;
+    }
+
+    @Override
+    public long getFrames() {
+        return emulator.framesDrawn - startFrames;
+    }
+
+    @Override
+    public long getLinesRendered() {
+        return linesRendered;
+    }
+
+    @Override
+    public long getLinesSkipped() {
+        return linesSkipped;
+    }
+
+    @Override
+    public long getSamplesProduced() {
+        return samplesProduced;
+    }
+
+    @Override
+    public long getStatesSaved() {
+        return statesSaved;
+    }
+
+    @Override
+    public long getStateBytes() {
+        return stateBytes;
+    }
+
+    @Override
+    public Map<String, Long> getReadsByRegion() {
+        return byName(REGIONS, reads);
+    }
+
+    @Override
+    public Map<String, Long> getWritesByRegion() {
+        return byName(REGIONS, writes);
+    }
+
+    @Override
+    public Map<String, Long> getNanosBySubsystem() {
+        return byName(SUBSYSTEMS, nanos);
+    }
+
+    @Override
+    public Map<String, Long> getOpcodeCounts() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < 256; i++) {
+            if (opcodes[i] != 0 && CPU.operations[i] != null) {
+                map.put(String.format("%02x %s", i, CPU.operations[i].description), opcodes[i]);
+            }
+        }
+        for (int i = 0; i < 256; i++) {
+            if (cbOpcodes[i] != 0 && CPU.cbOperations[i] != null) {
+                map.put(String.format("CB %02x %s", i, CPU.cbOperations[i].description), cbOpcodes[i]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public double getSpeed() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed == 0 ? 0 : getClocks() * 1e9 / elapsed / Emulator.CLOCK_SPEED;
+    }
+
+    /***
+     *
+     * Counts the bytes of a save state as they are written.
+     *
+     */
+    public static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
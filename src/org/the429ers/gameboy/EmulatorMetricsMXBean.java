@@ -0,0 +1,30 @@
+package org.the429ers.gameboy;
+
+import java.util.Map;
+
+/***
+ *
+ * The JMX view of an emulator's EmulatorMetrics, registered under
+ * org.the429ers.gameboy:type=Emulator. Counts are since the last reset.
+ *
+ */
+public interface EmulatorMetricsMXBean {
+    long getInstructions();
+    long getHaltedCycles();
+    long getIdleSkippedCycles();
+    long getClocks();
+    long getFrames();
+    long getLinesRendered();
+    long getLinesSkipped();
+    long getSamplesProduced();
+    long getStatesSaved();
+    long getStateBytes();
+    Map<String, Long> getReadsByRegion();
+    Map<String, Long> getWritesByRegion();
+    //estimated from sampled instructions, except for apu and frontend which are timed every frame
+    Map<String, Long> getNanosBySubsystem();
+    //executed opcodes keyed by their description, CB prefixed ones start with "CB "
+    Map<String, Long> getOpcodeCounts();
+    double getSpeed();
+    void reset();
+}
@@ -0,0 +1,128 @@
+package org.the429ers.gameboy;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/***
+ *
+ * Java Flight Recorder events for the emulator, so frame drops can be lined up
+ * with GC and JIT activity in a recording:
+ *
+ * java -XX:StartFlightRecording=filename=oopboy.jfr org.the429ers.gameboy.GameBoy
+ *
+ * Events are only built when a recording has them enabled, the rest of the
+ * time the JIT reduces each one to a check of a flag. Bank switches can
+ * happen thousands of times a frame, so they are off unless the recording's
+ * settings turn on org.the429ers.gameboy.BankSwitch.
+ *
+ */
+public class FlightEvents {
+    public static final String CATEGORY = "OOPBoy";
+
+    private FlightEvents() {
+    }
+
+    @Name("org.the429ers.gameboy.Frame")
+    @Label("Frame")
+    @Category(CATEGORY)
+    @Description("An emulated frame, from the end of the previous frame to the end of this one")
+    public static class Frame extends Event {
+        @Label("Frame Number")
+        public long frame;
+
+        @Label("CPU Time")
+        @Description("Estimated, only recorded while metrics are collected")
+        @Timespan
+        public long cpuTime;
+
+        @Label("PPU Time")
+        @Description("Estimated, only recorded while metrics are collected")
+        @Timespan
+        public long ppuTime;
+
+        @Label("APU Time")
+        @Description("Synthesizing and mixing this frame's sound")
+        @Timespan
+        public long apuTime;
+
+        @Label("Frontend Time")
+        @Description("The frame listener, which includes pacing")
+        @Timespan
+        public long frontendTime;
+    }
+
+    @Name("org.the429ers.gameboy.SaveState")
+    @Label("Save State")
+    @Category(CATEGORY)
+    public static class SaveState extends Event {
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Auto-save")
+        public boolean autoSave;
+    }
+
+    @Name("org.the429ers.gameboy.BankSwitch")
+    @Label("Bank Switch")
+    @Category(CATEGORY)
+    @Enabled(false)
+    public static class BankSwitch extends Event {
+        @Label("Memory")
+        @Description("ROM or RAM")
+        public String memory;
+
+        @Label("Previous Bank")
+        public int from;
+
+        @Label("New Bank")
+        public int to;
+    }
+
+    @Name("org.the429ers.gameboy.Dma")
+    @Label("DMA Transfer")
+    @Category(CATEGORY)
+    public static class Dma extends Event {
+        @Label("Kind")
+        @Description("OAM, general purpose or HBlank")
+        public String kind;
+
+        @Label("Source")
+        public int source;
+
+        @Label("Destination")
+        public int destination;
+
+        @Label("Length")
+        @DataAmount
+        public int length;
+    }
+
+    @Name("org.the429ers.gameboy.AudioUnderrun")
+    @Label("Audio Underrun")
+    @Category(CATEGORY)
+    @Description("The audio output ran out of samples before this frame's were written")
+    public static class AudioUnderrun extends Event {
+        @Label("Samples Written")
+        public int samples;
+    }
+
+    @Name("org.the429ers.gameboy.PacingWait")
+    @Label("Pacing Wait")
+    @Category(CATEGORY)
+    @Description("Time spent waiting for real time or the audio output after a frame")
+    public static class PacingWait extends Event {
+        @Label("Mode")
+        public String mode;
+
+        @Label("Late")
+        @Description("The frame finished after its deadline, so there was nothing to wait for")
+        public boolean late;
+    }
+}
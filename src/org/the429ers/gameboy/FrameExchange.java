@@ -0,0 +1,43 @@
+package org.the429ers.gameboy;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ *
+ * Triple buffer between the emulation thread, which draws frames, and the
+ * event dispatch thread, which paints them. Each side owns one image and the
+ * third holds the newest finished frame; publishing or taking a frame is a
+ * single atomic swap with that middle image, so neither thread ever waits for
+ * the other and painting never sees a half drawn frame.
+ *
+ */
+public class FrameExchange {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; //set when the middle image hasn't been painted yet
+
+    private final BufferedImage[] images = new BufferedImage[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0; //only touched by the emulation thread
+    private int front = 2; //only touched by the painting thread
+
+    //hands over a finished frame and returns the image to draw the next one into
+    public BufferedImage publish(BufferedImage finished) {
+        images[back] = finished;
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+        BufferedImage next = images[back];
+        if (next == null || next.getWidth() != finished.getWidth() || next.getHeight() != finished.getHeight()) {
+            next = new BufferedImage(finished.getWidth(), finished.getHeight(), finished.getType());
+            images[back] = next;
+        }
+        return next;
+    }
+
+    //the newest finished frame, or null if nothing was published yet
+    public BufferedImage latest() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return images[front];
+    }
+}
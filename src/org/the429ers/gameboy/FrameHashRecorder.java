@@ -0,0 +1,83 @@
+package org.the429ers.gameboy;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/***
+ *
+ * Keeps a 64 bit FNV-1a hash of every frame in memory, which is enough to
+ * compare a run against a known good one without storing any images. Hashing
+ * a frame takes microseconds, so this doesn't need its own thread.
+ *
+ */
+public class FrameHashRecorder implements FrameSink {
+    public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long[] hashes = new long[1024];
+    private int count = 0;
+
+    public static long hash(BufferedImage frame) {
+        byte[] data = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+        return hash(FNV_OFFSET, data, 0, data.length);
+    }
+
+    //continues hash over more data, start with FNV_OFFSET
+    public static long hash(long hash, byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= data[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    @Override
+    public void frameDone(BufferedImage frame) {
+        if (count == hashes.length) {
+            hashes = Arrays.copyOf(hashes, 2 * count);
+        }
+        hashes[count++] = hash(frame);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getHash(int frame) {
+        return hashes[frame];
+    }
+
+    public long[] getHashes() {
+        return Arrays.copyOf(hashes, count);
+    }
+
+    //index of the first frame that differs from expected, or -1 if they all match
+    public int firstMismatch(long[] expected) {
+        int n = Math.min(count, expected.length);
+        for (int i = 0; i < n; i++) {
+            if (hashes[i] != expected[i]) return i;
+        }
+        return count == expected.length ? -1 : n;
+    }
+
+    //one hex hash per line
+    public void writeTo(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (int i = 0; i < count; i++) {
+                out.printf("%016x%n", hashes[i]);
+            }
+        }
+    }
+
+    public static long[] readFrom(Path file) throws IOException {
+        return Files.readAllLines(file).stream()
+                .filter(line -> !line.isEmpty())
+                .mapToLong(line -> Long.parseUnsignedLong(line.trim(), 16))
+                .toArray();
+    }
+}
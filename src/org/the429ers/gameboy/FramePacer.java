@@ -0,0 +1,203 @@
+package org.the429ers.gameboy;
+
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ *
+ * Keeps emulation running at the speed of a real Game Boy. AUDIO waits for the
+ * audio output to drain, so video follows the sound card's clock and audio
+ * never underruns or drifts. REALTIME sleeps until fixed nanoTime deadlines at
+ * exactly Emulator.FRAME_RATE. UNTHROTTLED doesn't wait at all.
+ *
+ * Also measures the time between frames, so jitter can be checked.
+ *
+ * Everything but the mode and the published stats belongs to the emulation
+ * thread. setMode and resetStats can be called from anywhere and take effect
+ * at the next frameDone, and the getters read a snapshot taken after every
+ * frame.
+ *
+ */
+public class FramePacer {
+    public enum Mode {
+        AUDIO("Sync to audio"),
+        REALTIME("Sync to clock"),
+        UNTHROTTLED("Unthrottled");
+
+        public final String name;
+
+        Mode(String name) {
+            this.name = name;
+        }
+    }
+
+    public static final long FRAME_NANOS = Math.round(1e9 / Emulator.FRAME_RATE);
+    public static final int MAX_FRAMES_BEHIND = 5; //past this, give up catching up instead of running fast
+    public static final long AUDIO_POLL_NANOS = 250_000;
+    public static final long MAX_AUDIO_WAIT_NANOS = 4 * FRAME_NANOS; //in case the audio device stops taking samples
+
+    private volatile Mode mode = Mode.AUDIO;
+    private Mode lastMode = mode; //the mode of the last frame, a change restarts the deadlines
+    private long deadline = -1;
+    private volatile boolean resetRequested = false;
+
+    private long lastFrame = -1;
+    private long frames = 0;
+    private double mean = 0;
+    private double m2 = 0; //sum of squared differences from the mean, for the variance
+    private long minInterval = Long.MAX_VALUE;
+    private long maxInterval = 0;
+    private long lateFrames = 0;
+    private volatile Stats stats = new Stats(0, 0, 0, 0, 0, 0);
+
+    //the measurements as of one frame, so readers on other threads see them all from the same frame
+    private static final class Stats {
+        final long frames;
+        final double mean;
+        final double jitter;
+        final long minInterval;
+        final long maxInterval;
+        final long lateFrames;
+
+        Stats(long frames, double mean, double jitter, long minInterval, long maxInterval, long lateFrames) {
+            this.frames = frames;
+            this.mean = mean;
+            this.jitter = jitter;
+            this.minInterval = minInterval;
+            this.maxInterval = maxInterval;
+            this.lateFrames = lateFrames;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    //call after every frame, blocks until the next one should start
+    public void frameDone(AudioSink sink) {
+        FlightEvents.PacingWait event = new FlightEvents.PacingWait();
+        event.begin();
+        if (resetRequested) {
+            resetRequested = false;
+            clearStats();
+        }
+        Mode mode = this.mode;
+        if (mode != lastMode) {
+            lastMode = mode;
+            deadline = -1;
+        }
+        boolean waited;
+        if (mode == Mode.AUDIO && sink != null && sink.getBufferedFrames() >= 0) {
+            waited = waitForAudio(sink);
+            deadline = -1;
+        } else if (mode != Mode.UNTHROTTLED) {
+            waited = waitForDeadline();
+        } else {
+            deadline = -1;
+            waited = false;
+        }
+        record(System.nanoTime());
+        if (mode != Mode.UNTHROTTLED && event.shouldCommit()) {
+            event.mode = mode.name();
+            event.late = !waited;
+            event.commit();
+        }
+    }
+
+    //waits until there is room for another frame of samples on top of the target latency, returns whether it had to wait
+    private boolean waitForAudio(AudioSink sink) {
+        long giveUp = System.nanoTime() + MAX_AUDIO_WAIT_NANOS;
+        boolean waited = false;
+        while (sink.getBufferedFrames() > AudioOutput.TARGET_FRAMES - SoundChip.SAMPLES_PER_FRAME
+                && System.nanoTime() < giveUp) {
+            LockSupport.parkNanos(AUDIO_POLL_NANOS);
+            waited = true;
+        }
+        return waited;
+    }
+
+    private boolean waitForDeadline() {
+        long now = System.nanoTime();
+        if (deadline < 0 || now - deadline > MAX_FRAMES_BEHIND * FRAME_NANOS) {
+            deadline = now;
+        }
+        deadline += FRAME_NANOS;
+        boolean waited = now < deadline;
+        //parkNanos can return early, so keep going until the deadline has really passed
+        while ((now = System.nanoTime()) < deadline) {
+            LockSupport.parkNanos(deadline - now);
+        }
+        return waited;
+    }
+
+    private void record(long now) {
+        if (lastFrame >= 0) {
+            long interval = now - lastFrame;
+            frames++;
+            double delta = interval - mean;
+            mean += delta / frames;
+            m2 += delta * (interval - mean);
+            minInterval = Math.min(minInterval, interval);
+            maxInterval = Math.max(maxInterval, interval);
+            if (interval > FRAME_NANOS + FRAME_NANOS / 2) {
+                lateFrames++;
+            }
+            stats = new Stats(frames, mean, frames < 2 ? 0 : Math.sqrt(m2 / (frames - 1)), minInterval, maxInterval, lateFrames);
+        }
+        lastFrame = now;
+    }
+
+    //forgets the measurements at the next frame, e.g. after a pause so the gap doesn't count as jitter
+    public void resetStats() {
+        resetRequested = true;
+    }
+
+    private void clearStats() {
+        lastFrame = -1;
+        frames = 0;
+        mean = 0;
+        m2 = 0;
+        minInterval = Long.MAX_VALUE;
+        maxInterval = 0;
+        lateFrames = 0;
+        deadline = -1;
+        stats = new Stats(0, 0, 0, 0, 0, 0);
+    }
+
+    public long getFrames() {
+        return stats.frames;
+    }
+
+    public double getMeanFrameMillis() {
+        return stats.mean / 1e6;
+    }
+
+    //standard deviation of the time between frames
+    public double getJitterMillis() {
+        return stats.jitter / 1e6;
+    }
+
+    public double getMinFrameMillis() {
+        return stats.minInterval / 1e6;
+    }
+
+    public double getMaxFrameMillis() {
+        return stats.maxInterval / 1e6;
+    }
+
+    //frames that took more than one and a half times as long as they should have
+    public long getLateFrames() {
+        return stats.lateFrames;
+    }
+
+    public String describe() {
+        Stats stats = this.stats;
+        double mean = stats.mean / 1e6;
+        return String.format("%s: %d frames, mean %.3f ms (%.2f fps), jitter %.3f ms, min %.3f ms, max %.3f ms, %d late",
+                mode.name, stats.frames, mean, stats.frames == 0 ? 0 : 1000 / mean,
+                stats.jitter / 1e6, stats.minInterval / 1e6, stats.maxInterval / 1e6, stats.lateFrames);
+    }
+}
@@ -0,0 +1,37 @@
+package org.the429ers.gameboy;
+
+import java.awt.image.BufferedImage;
+
+/***
+ *
+ * Receives every frame the PPU finishes drawing, e.g. to record it. Frames
+ * skipped by turbo are not delivered. The image is reused for later frames,
+ * so it must be copied if it is kept after frameDone returns; wrap slow sinks
+ * in an AsyncFrameSink to do that and keep them off the emulation thread.
+ *
+ */
+public interface FrameSink {
+    void frameDone(BufferedImage frame);
+
+    default void close() {
+    }
+
+    //delivers frames to both sinks, either of which can be null
+    static FrameSink both(FrameSink first, FrameSink second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        return new FrameSink() {
+            @Override
+            public void frameDone(BufferedImage frame) {
+                first.frameDone(frame);
+                second.frameDone(frame);
+            }
+
+            @Override
+            public void close() {
+                first.close();
+                second.close();
+            }
+        };
+    }
+}
@@ -8,12 +8,12 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
 
-import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.LineUnavailableException;
 import javax.swing.*;
 
 class MainMenuBar extends MenuBar {
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
+    static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
    
     GameBoy gameBoy;
 
@@ -94,6 +94,35 @@ class MainMenuBar extends MenuBar {
             gameBoy.start();
         });
         
+        MenuItem hostLink = new MenuItem("Host link session...");
+        hostLink.addActionListener((ActionEvent e) -> {
+            String address = JOptionPane.showInputDialog(gameBoy, "Port or unix:path to listen on", "5000");
+            if (address != null) {
+                gameBoy.cancelLinkRequest(); //frees the port if an earlier session is still waiting to be plugged in
+                try {
+                    gameBoy.requestTransport(SocketTransport.listen(address.trim()));
+                } catch (IOException | RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
+        MenuItem joinLink = new MenuItem("Join link session...");
+        joinLink.addActionListener((ActionEvent e) -> {
+            String address = JOptionPane.showInputDialog(gameBoy, "Port, host:port or unix:path to connect to", "5000");
+            if (address != null) {
+                gameBoy.cancelLinkRequest();
+                try {
+                    gameBoy.requestTransport(SocketTransport.connect(address.trim()));
+                } catch (IOException | RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
+        MenuItem unplugLink = new MenuItem("Unplug link cable");
+        unplugLink.addActionListener((ActionEvent e) -> {
+            gameBoy.requestTransport(null);
+        });
+        
         MenuItem exit = new MenuItem("Exit");
         exit.addActionListener((ActionEvent e) -> {
             gameBoy.pause();
@@ -124,20 +153,90 @@ class MainMenuBar extends MenuBar {
 
         MenuItem breakPoint = new MenuItem("Break here");
         breakPoint.addActionListener((ActionEvent e) -> {
-            gameBoy.breaked = true;
+            gameBoy.breakHere();
         });
-        CheckboxMenuItem fastMode = new CheckboxMenuItem("Fast mode", gameBoy.fastMode);
-        fastMode.addItemListener((ItemEvent e) -> {
-            gameBoy.fastMode = fastMode.getState();
+        Menu turboMenu = new Menu("Turbo");
+        CheckboxMenuItem[] turboToggles = new CheckboxMenuItem[Turbo.MULTIPLIERS.length];
+        for(int i = 0; i < Turbo.MULTIPLIERS.length; i++){
+            int multiplier = Turbo.MULTIPLIERS[i];
+            turboToggles[i] = new CheckboxMenuItem(Turbo.describe(multiplier), gameBoy.turbo.getMultiplier() == multiplier);
+            
+            int finalI = i;
+            turboToggles[i].addItemListener((ItemEvent e) -> {
+                for(CheckboxMenuItem turboToggle : turboToggles){
+                    turboToggle.setState(false);
+                }
+                turboToggles[finalI].setState(true);
+                gameBoy.turbo.setMultiplier(multiplier);
+            });
+            
+            turboMenu.add(turboToggles[i]);
+        }
+        CheckboxMenuItem turboMute = new CheckboxMenuItem("Mute in turbo", gameBoy.turbo.isMuted());
+        turboMute.addItemListener((ItemEvent e) -> {
+            gameBoy.turbo.setMuted(turboMute.getState());
         });
-        CheckboxMenuItem audioToggle = new CheckboxMenuItem("Mute", !gameBoy.audioOn);
+        turboMenu.addSeparator();
+        turboMenu.add(turboMute);
+        Menu pacingMenu = new Menu("Pacing");
+        FramePacer.Mode[] pacingModes = FramePacer.Mode.values();
+        CheckboxMenuItem[] pacingToggles = new CheckboxMenuItem[pacingModes.length];
+        for(int i = 0; i < pacingModes.length; i++){
+            pacingToggles[i] = new CheckboxMenuItem(pacingModes[i].name, gameBoy.pacer.getMode() == pacingModes[i]);
+            
+            FramePacer.Mode mode = pacingModes[i];
+            pacingToggles[i].addItemListener((ItemEvent e) -> {
+                for(CheckboxMenuItem pacingToggle : pacingToggles){
+                    pacingToggle.setState(false);
+                }
+                pacingToggles[mode.ordinal()].setState(true);
+                gameBoy.pacer.setMode(mode);
+            });
+            
+            pacingMenu.add(pacingToggles[i]);
+        }
+        MenuItem pacingStats = new MenuItem("Print pacing stats");
+        pacingStats.addActionListener((ActionEvent e) -> {
+            System.out.println(gameBoy.pacer.describe());
+        });
+        pacingMenu.addSeparator();
+        pacingMenu.add(pacingStats);
+        CheckboxMenuItem audioToggle = new CheckboxMenuItem("Mute", !gameBoy.audioRequested);
         audioToggle.addItemListener((ItemEvent e) -> {
-            gameBoy.audioOn = !audioToggle.getState();
+            gameBoy.audioRequested = !audioToggle.getState();
+        });
+        CheckboxMenuItem traceToggle = new CheckboxMenuItem("Record trace", false);
+        traceToggle.addItemListener((ItemEvent e) -> {
+            gameBoy.traceRequested = traceToggle.getState();
+        });
+        CheckboxMenuItem recordFramesToggle = new CheckboxMenuItem("Record frames", false);
+        recordFramesToggle.addItemListener((ItemEvent e) -> {
+            gameBoy.recordFramesRequested = recordFramesToggle.getState();
+        });
+        CheckboxMenuItem metricsToggle = new CheckboxMenuItem("Collect metrics", false);
+        metricsToggle.addItemListener((ItemEvent e) -> {
+            gameBoy.metricsRequested = metricsToggle.getState();
+        });
+        MenuItem metricsStats = new MenuItem("Print metrics");
+        metricsStats.addActionListener((ActionEvent e) -> {
+            gameBoy.printMetricsRequested = true;
+        });
+        CheckboxMenuItem profileToggle = new CheckboxMenuItem("Profile guest code", false);
+        profileToggle.addItemListener((ItemEvent e) -> {
+            gameBoy.profileRequested = profileToggle.getState();
+        });
+        CheckboxMenuItem recordMovieToggle = new CheckboxMenuItem("Record movie", false);
+        recordMovieToggle.addItemListener((ItemEvent e) -> {
+            gameBoy.recordMovieRequested = recordMovieToggle.getState();
         });
         CheckboxMenuItem haltToggle = new CheckboxMenuItem("Service Halts", gameBoy.haltEnabled);
         haltToggle.addItemListener((ItemEvent e) -> {
             gameBoy.haltEnabled = haltToggle.getState();
         });
+        CheckboxMenuItem idleToggle = new CheckboxMenuItem("Skip idle loops", gameBoy.idleSkipRequested);
+        idleToggle.addItemListener((ItemEvent e) -> {
+            gameBoy.idleSkipRequested = idleToggle.getState();
+        });
         
         String[] graphicsModeNames = Pallette.modeNames;
         CheckboxMenuItem[] modeToggles = new CheckboxMenuItem[graphicsModeNames.length];
@@ -163,6 +262,9 @@ class MainMenuBar extends MenuBar {
         fileMenu.add(exit);
         controlMenu.add(pause);
         controlMenu.add(reset);
+        controlMenu.add(hostLink);
+        controlMenu.add(joinLink);
+        controlMenu.add(unplugLink);
         saveMenu.add(quickSave);
         loadMenu.add(quickLoad);
         saveMenu.add(snapshot);
@@ -170,9 +272,17 @@ class MainMenuBar extends MenuBar {
         saveMenu.add(autoSaveToggle);
         loadMenu.add(loadAutosave);
         debugMenu.add(breakPoint);
-        debugMenu.add(fastMode);
+        debugMenu.add(turboMenu);
+        debugMenu.add(pacingMenu);
         debugMenu.add(audioToggle);
         debugMenu.add(haltToggle);
+        debugMenu.add(idleToggle);
+        debugMenu.add(traceToggle);
+        debugMenu.add(recordFramesToggle);
+        debugMenu.add(recordMovieToggle);
+        debugMenu.add(metricsToggle);
+        debugMenu.add(metricsStats);
+        debugMenu.add(profileToggle);
         
         this.add(fileMenu);
         this.add(controlMenu);
@@ -189,10 +299,17 @@ public class GameBoy extends JFrame{
     public static final int NUM_FRAMES_PER_AUTOSAVE = 120;
     public static final int MAX_AUTOSAVES = 30;
     public static final int MAX_HISTORY = 100;
-    public static final int NUM_FRAMES_PER_SPEEDCHECK = 30;
+    public static final int MAX_CANDIDATES_SHOWN = 100;
 
-    HashSet<Integer> breakPoints = new HashSet<>();
-    LinkedList<Integer> history = new LinkedList<>();
+    long[] breakPoints = new long[0x10000 / 64]; //one bit per address
+    HashMap<Integer, Lambda> breakConditions = new HashMap<>(); //only looked up when the breakpoint bit is set
+    List<Lambda> globalConditions = new ArrayList<>(); //checked before every instruction
+    Watchpoints watchpoints = new Watchpoints();
+    int[] history = new int[MAX_HISTORY]; //ring buffer of the last executed PCs
+    long historyCount = 0;
+    //nothing debugger related runs until a breakpoint is set or execution is suspended
+    volatile boolean debuggerEnabled = false;
+    Emulator emulator;
     MMU mmu;
     CPU cpu;
     IPPU ppu;
@@ -201,33 +318,47 @@ public class GameBoy extends JFrame{
     boolean paused;
     boolean autoSaveEnabled = true;
     boolean haltEnabled = true;
+    volatile boolean idleSkipRequested = true;
+    boolean idleSkipping = true; //off also overrides ROMs that didn't opt out
     private boolean quickSave;
     private boolean quickLoad;
-    private boolean isCGB;
-    private ColorPaletteManager backgroundPaletteManager;
-    private ColorPaletteManager spritePaletteManager;
     Joypad joypad;
     
+    volatile boolean audioRequested = true;
     boolean audioOn = true;
-    boolean fastMode = false;
-    long timeSinceSpeedCheck = -1;
-    int framesSinceSpeedCheck = 0;
+    Turbo turbo = new Turbo();
+    FramePacer pacer = new FramePacer();
     
     Scanner fin = new Scanner(System.in);
     int numInstructonsUntilBreak = -1;
     long framesDrawn = 0;
     boolean breaked = false;
     LinkCable cable;
-    
-    private int numClocks = 0;
+    volatile boolean traceRequested = false;
+    TraceRecorder tracer = null;
+    volatile boolean recordFramesRequested = false;
+    AsyncFrameSink frameRecorder = null;
+    volatile boolean recordMovieRequested = false;
+    private boolean toggleMovie = false; //set at the end of a frame, acted on after the instruction
+    MovieRecorder movieRecorder = null;
+    volatile boolean metricsRequested = false;
+    private boolean toggleMetrics = false; //set at the end of a frame, acted on after the instruction
+    volatile EmulatorMetrics metrics = null;
+    volatile boolean printMetricsRequested = false;
+    volatile boolean profileRequested = false;
+    private boolean toggleProfile = false; //set at the end of a frame, acted on after the instruction
+    GuestProfiler profiler = null;
+    volatile SerialTransport requestedTransport = null;
+    SerialTransport linkTransport = null;
+    private final Object linkLock = new Object(); //held while either transport changes
     
     OutputStream saveFile = null;
     InputStream loadFile = null;
     LinkedList<ByteArrayOutputStream> autoSaves = new LinkedList<>();
     
-    List<Integer> hexEditorCandidates = null;
+    CheatSearch cheatSearch = new CheatSearch();
     
-    SourceDataLine sourceDL;
+    AudioSink audioOutput;
     
     private static GameBoy gb;
     
@@ -260,26 +391,72 @@ public class GameBoy extends JFrame{
         public void windowOpened(WindowEvent e) { }
     };
     
+    private void setEmulator(Emulator emulator) {
+        if (movieRecorder != null) {
+            //the movie can't follow a load or a new ROM
+            toggleMovieRecording();
+            recordMovieRequested = false;
+        }
+        this.emulator = emulator;
+        this.mmu = emulator.getMMU();
+        this.cpu = emulator.getCPU();
+        this.ppu = emulator.getPPU();
+        this.cable = emulator.cable;
+        this.joypad = emulator.getJoypad();
+        emulator.setFrameListener(this::frameDrawn);
+        mmu.setWatchpoints(watchpoints);
+        if (!idleSkipping || debuggerEnabled) {
+            emulator.setIdleLoopSkipping(false);
+        }
+        emulator.setTraceRecorder(tracer);
+        emulator.setSerialTransport(linkTransport);
+        emulator.setFrameSink(frameRecorder);
+        if (metrics != null) {
+            //counts start over with the new emulator
+            metrics = new EmulatorMetrics(emulator);
+            emulator.setMetrics(metrics);
+            metrics.register();
+        }
+        if (profiler != null) {
+            //the profile carries on through loads
+            profiler.setMMU(mmu);
+            emulator.setProfiler(profiler);
+        }
+        applyTurbo();
+    }
+    
+    //muting skips sound synthesis entirely
+    AudioSink currentSink() {
+        return audioOn && !turbo.mutesAudio() ? audioOutput : NullAudioSink.INSTANCE;
+    }
+    
+    private void applyTurbo() {
+        emulator.setAudioSink(currentSink());
+        mmu.soundChip.setSpeed(turbo.getAudioSpeed());
+        ppu.setSkipRendering(false);
+        turbo.resetSpeed();
+        updateTitle();
+    }
+    
+    private void updateTitle() {
+        String title = turbo.isActive() ? String.format("OOPBoy - turbo %.1fx", turbo.getEffectiveSpeed()) : "OOPBoy";
+        SwingUtilities.invokeLater(() -> setTitle(title));
+    }
+    
+    private static AudioSink openAudio() {
+        try {
+            return new AudioOutput(SoundChip.AUDIO_FORMAT);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("No audio output available, running without sound: " + e.getMessage());
+            return NullAudioSink.INSTANCE;
+        }
+    }
+    
     public void switchRom(String newRom) {
-        this.sourceDL = mmu.soundChip.getSourceDL();
         this.romFileName = newRom;
         if(mmu != null) mmu.cleanUp();
-        mmu = new MMU(newRom, sourceDL);
-        this.isCGB = mmu.isCGB();
-        cpu = new CPU(mmu);
-        if (isCGB) {
-            ppu = new ColorPPU(mmu, gbs);
-            backgroundPaletteManager = new ColorPaletteManager();
-            spritePaletteManager = new ColorPaletteManager();
-            mmu.setColorPaletteManagers(backgroundPaletteManager, spritePaletteManager);
-            ppu.setPaletteManagers(backgroundPaletteManager, spritePaletteManager);
-        }
-        else {
-            ppu = new PPU(mmu, gbs);
-        }
-        mmu.setPPU(ppu);
-        cable = new LinkCable(mmu, cpu.interruptHandler);
-        joypad = new Joypad(mmu, cpu.interruptHandler);
+        gbs.removeKeyListener(joypad);
+        setEmulator(new Emulator(newRom, gbs, currentSink()));
         gbs.addKeyListener(joypad);
     }
     
@@ -298,35 +475,29 @@ public class GameBoy extends JFrame{
         this.setVisible(true);    
         this.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
         this.addWindowListener(listener);
-        mmu = new MMU(fileName);
-        cpu = new CPU(mmu);
-        this.isCGB = mmu.isCGB();
-        if (isCGB) {
-            ppu = new ColorPPU(mmu, gbs);
-            backgroundPaletteManager = new ColorPaletteManager();
-            spritePaletteManager = new ColorPaletteManager();
-            mmu.setColorPaletteManagers(backgroundPaletteManager, spritePaletteManager);
-            ppu.setPaletteManagers(backgroundPaletteManager, spritePaletteManager);
-            
-        }
-        else {
-            ppu = new PPU(mmu, gbs);
-        }
-        mmu.setPPU(ppu);
-        this.joypad = new Joypad(mmu, cpu.interruptHandler);
+        this.audioOutput = openAudio();
+        setEmulator(new Emulator(fileName, gbs, currentSink()));
         gbs.addKeyListener(joypad);
-        ppu.loadMap(true, true);
         quickSave = false;
         quickLoad = false;
-        cable = new LinkCable(mmu, cpu.interruptHandler);
     }
     
     public void saveState() {
-        this.sourceDL = this.mmu.soundChip.getSourceDL();
         try {
-            ObjectOutputStream saveState = new ObjectOutputStream(this.saveFile);
+            FlightEvents.SaveState event = new FlightEvents.SaveState();
+            event.begin();
+            EmulatorMetrics.CountingOutputStream counter = new EmulatorMetrics.CountingOutputStream(this.saveFile);
+            ObjectOutputStream saveState = new ObjectOutputStream(counter);
             saveState.writeObject(mmu);
             saveState.close();
+            if (metrics != null) {
+                metrics.stateSaved(counter.getCount());
+            }
+            if (event.shouldCommit()) {
+                event.bytes = counter.getCount();
+                event.autoSave = this.saveFile instanceof ByteArrayOutputStream;
+                event.commit();
+            }
         } catch (FileNotFoundException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -340,10 +511,9 @@ public class GameBoy extends JFrame{
         gbs.removeKeyListener(this.mmu.getJoypad());
         try {
             ObjectInputStream saveState = new ObjectInputStream(this.loadFile);
-            this.mmu = (MMU) saveState.readObject();
-            this.cpu = mmu.getCPU();
-            this.ppu = mmu.getPPU();
-            this.mmu.setJoypad(new Joypad(this.mmu, this.cpu.interruptHandler));
+            MMU loaded = (MMU) saveState.readObject();
+            new Joypad(loaded, loaded.getCPU().interruptHandler);
+            setEmulator(loaded.getEmulator());
             saveState.close();
         } catch (FileNotFoundException e) {
             // TODO Auto-generated catch block
@@ -357,7 +527,6 @@ public class GameBoy extends JFrame{
         }
         gbs.addKeyListener(this.mmu.getJoypad());
         ppu.setGBS(gbs);
-        this.mmu.soundChip.setSourceDL(this.sourceDL);
     }
     
     public byte[] hexStringToBytes(String sequenceStr) {
@@ -370,140 +539,411 @@ public class GameBoy extends JFrame{
     
     public void tick() {
         gbs.setFocusable(true);
+        if(debuggerEnabled) {
+            if(!debugTick()) {
+                return;
+            }
+        }
+        cpu.executeOneInstruction(breaked, haltEnabled);
+        if (quickSave) {
+            saveState();
+            quickSave = false;
+        }
+        if (quickLoad) {
+            loadState();
+            quickLoad = false;
+        }
+        if (toggleMovie) {
+            toggleMovieRecording();
+            toggleMovie = false;
+        }
+        if (toggleMetrics) {
+            toggleMetrics();
+            toggleMetrics = false;
+        }
+        if (toggleProfile) {
+            toggleProfile();
+            toggleProfile = false;
+        }
+
+        if(debuggerEnabled && numInstructonsUntilBreak >= 0){
+            if(numInstructonsUntilBreak == 0){
+                breaked = true;
+            }
+            numInstructonsUntilBreak --;
+            System.out.println(numInstructonsUntilBreak);
+        }
+    }
+    
+    //handles breakpoints and debugger commands, returns whether the next instruction should be executed
+    private boolean debugTick() {
+        int pc = cpu.regs.PC.read();
         //ignore breakpoints while nm is used
-        if(numInstructonsUntilBreak < 0 && breakPoints.contains(cpu.regs.PC.read())){
+        if(numInstructonsUntilBreak < 0 && (isBreakPoint(pc) && conditionHolds(breakConditions.get(pc)) || anyGlobalCondition())){
+            breaked = true;
+        }
+        String watchpointHit = watchpoints.consumeHit();
+        if(watchpointHit != null) {
+            System.out.println(watchpointHit);
             breaked = true;
         }
 
         if(breaked) {
-            System.out.print("Suspended at " + Integer.toString(cpu.regs.PC.read(), 16) + ": ");
+            System.out.print("Suspended at " + Integer.toString(pc, 16) + ": ");
             String cmd = fin.next();
             if (cmd.equals("b")) {
-                breakPoints.add(fin.nextInt(16));
-                return;
+                addBreakPoint(fin.nextInt(16));
+                return false;
             } else if (cmd.equals("d")) {
-                breakPoints.remove(fin.nextInt(16));
-                return;
+                removeBreakPoint(fin.nextInt(16));
+                return false;
+            } else if (cmd.equals("bc")) {
+                String location = fin.next();
+                String condition = fin.nextLine().trim();
+                try {
+                    if (location.equals("*")) {
+                        addGlobalCondition(condition);
+                    } else {
+                        addBreakPoint(Integer.parseInt(location, 16), condition);
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                }
+                return false;
+            } else if (cmd.equals("dc")) {
+                globalConditions.clear();
+                return false;
+            } else if (cmd.equals("wr") || cmd.equals("ww") || cmd.equals("wa")) {
+                int mode = cmd.equals("wr") ? Watchpoints.READ : cmd.equals("ww") ? Watchpoints.WRITE : Watchpoints.ACCESS;
+                addWatchpoint(fin.nextInt(16), fin.nextInt(16), mode);
+                return false;
+            } else if (cmd.equals("wd")) {
+                watchpoints.remove(fin.nextInt(16));
+                return false;
+            } else if (cmd.equals("wl")) {
+                watchpoints.print();
+                return false;
             } else if (cmd.equals("c")) {
                 breaked = false;
             } else if (cmd.equals("xc")) {
                 cpu.coreDump();
-                return;
+                return false;
             } else if (cmd.equals("xm")) {
                 mmu.memdump(fin.nextInt(16), fin.nextInt());
-                return;
+                return false;
             } else if (cmd.equals("sm")) {
                 mmu.writeBytes(fin.nextInt(16), hexStringToBytes(fin.next()));
-                return;
+                return false;
             } else if (cmd.equals("nm")) {
                 breaked = false;
                 numInstructonsUntilBreak = fin.nextInt();
+            } else if (cmd.equals("fp")) {
+                System.out.println(pacer.describe());
+                return false;
             } else if (cmd.equals("xh")) {
-                for (int i : history) {
-                    System.out.printf("%x ", i);
+                int numEntries = (int) Math.min(historyCount, MAX_HISTORY);
+                for (long i = historyCount - numEntries; i < historyCount; i++) {
+                    System.out.printf("%x ", history[(int) (i % MAX_HISTORY)]);
                 }
                 System.out.println();
-                return;
+                return false;
             } else if (cmd.equals("hes")) {
                 String sequenceStr = fin.next();
                 if (sequenceStr.length() % 2 != 0) {
                     System.out.println("Must give an integral number of bytes");
-                    return;
+                    return false;
                 }
                 byte[] sequence = hexStringToBytes(sequenceStr);
                 
                 System.out.println(Arrays.toString(sequence));
 
-                if (hexEditorCandidates != null) {
-                    hexEditorCandidates = mmu.filter(hexEditorCandidates, sequence);
-                } else {
-                    hexEditorCandidates = mmu.search(sequence);
-                }
-
-                System.out.println(hexEditorCandidates.size() + " candidates remaining. Type her to reset or hec to view candidates");
-                return;
+                int remaining = cheatSearch.search(mmu, sequence);
+                System.out.println(remaining + " candidates remaining. Type her to reset or hec to view candidates");
+                return false;
+            } else if (cmd.equals("hei") || cmd.equals("hed") || cmd.equals("heu") || cmd.equals("hen")) {
+                CheatSearch.Comparison comparison = cmd.equals("hei") ? CheatSearch.Comparison.INCREASED
+                        : cmd.equals("hed") ? CheatSearch.Comparison.DECREASED
+                        : cmd.equals("heu") ? CheatSearch.Comparison.UNCHANGED : CheatSearch.Comparison.CHANGED;
+                int remaining = cheatSearch.search(mmu, comparison, 0, fin.nextInt() == 2);
+                System.out.println(remaining + " candidates remaining. Type her to reset or hec to view candidates");
+                return false;
             } else if (cmd.equals("her")){
-                hexEditorCandidates = null;
-                return;
+                cheatSearch.reset(mmu);
+                return false;
             } else if(cmd.equals("hec")) {
-                if(hexEditorCandidates == null){
-                    System.out.println("A search has not yet been performed. Use hes to perform a search.");
-                }
-                for(int candidate: hexEditorCandidates){
-                    System.out.printf("%04x ", candidate);
-                }
-                System.out.println();
-                return;
+                cheatSearch.print(MAX_CANDIDATES_SHOWN);
+                return false;
             } else if(!cmd.equals("n")){
                 System.out.println("Command not recognized");
-                return;
+                return false;
             }
         }
 
-        if(history.size() >= MAX_HISTORY) {
-            history.removeFirst();
+        history[(int) (historyCount % MAX_HISTORY)] = pc;
+        historyCount++;
+        return true;
+    }
+    
+    public void addBreakPoint(int location) {
+        location &= 0xffff;
+        breakPoints[location >> 6] |= 1L << location;
+        breakConditions.remove(location);
+        enableDebugger();
+    }
+    
+    //breaks at location only when the condition holds, see BreakCondition for the syntax
+    public void addBreakPoint(int location, String condition) {
+        Lambda compiled = BreakCondition.compile(condition);
+        addBreakPoint(location);
+        breakConditions.put(location & 0xffff, compiled);
+    }
+    
+    public void removeBreakPoint(int location) {
+        location &= 0xffff;
+        breakPoints[location >> 6] &= ~(1L << location);
+        breakConditions.remove(location);
+    }
+    
+    //breaks at whatever instruction is about to run when the condition holds
+    public void addGlobalCondition(String condition) {
+        globalConditions.add(BreakCondition.compile(condition));
+        enableDebugger();
+    }
+    
+    private boolean conditionHolds(Lambda condition) {
+        return condition == null || condition.exec(cpu) != 0;
+    }
+    
+    private boolean anyGlobalCondition() {
+        for (int i = 0; i < globalConditions.size(); i++) {
+            if (globalConditions.get(i).exec(cpu) != 0) return true;
         }
-        history.addLast(cpu.regs.PC.read());
-        cpu.executeOneInstruction(breaked, haltEnabled);
-        if (quickSave) {
-            saveState();
-            quickSave = false;
+        return false;
+    }
+    
+    public void addWatchpoint(int start, int end, int mode) {
+        watchpoints.add(start, end, mode);
+        enableDebugger();
+    }
+    
+    //skipped loop iterations would hide breakpoints and watchpoints in them
+    private void enableDebugger() {
+        debuggerEnabled = true;
+        if (emulator != null) {
+            emulator.setIdleLoopSkipping(false);
         }
-        if (quickLoad) {
-            loadState();
-            quickLoad = false;
+    }
+    
+    public boolean isBreakPoint(int location) {
+        return (breakPoints[location >> 6] & (1L << location)) != 0;
+    }
+    
+    //suspends execution at the next instruction
+    public void breakHere() {
+        breaked = true;
+        enableDebugger();
+    }
+    
+    //called by the emulator every time the PPU finishes a frame
+    private void frameDrawn() {
+        if (movieRecorder != null) {
+            movieRecorder.frameEnded();
         }
-
-        if(numInstructonsUntilBreak >= 0){
-            if(numInstructonsUntilBreak == 0){
-                breaked = true;
+        framesDrawn++;
+        if (audioRequested != audioOn) {
+            audioOn = audioRequested;
+            emulator.setAudioSink(currentSink());
+        }
+        if (turbo.consumeChanged()) {
+            applyTurbo();
+        }
+        if (turbo.isActive()) {
+            ppu.setSkipRendering(!turbo.shouldRender(framesDrawn));
+            if (turbo.frameDone(emulator.getTotalClocks())) {
+                updateTitle();
             }
-            numInstructonsUntilBreak --;
-            System.out.println(numInstructonsUntilBreak);
+        }
+        if (turbo.shouldPace(framesDrawn)) {
+            pacer.frameDone(currentSink());
+        }
+        if (framesDrawn % NUM_FRAMES_PER_AUTOSAVE == 0) {
+            this.queueAutoSaveIfEnabled();
+        }
+        if (traceRequested != (tracer != null)) {
+            toggleTrace();
+        }
+        if (recordFramesRequested != (frameRecorder != null)) {
+            toggleFrameRecording();
+        }
+        if (recordMovieRequested != (movieRecorder != null)) {
+            toggleMovie = true;
+        }
+        if (metricsRequested != (metrics != null)) {
+            toggleMetrics = true;
+        }
+        if (printMetricsRequested) {
+            printMetricsRequested = false;
+            System.out.println(metrics == null ? "Metrics aren't being collected" : metrics.snapshot().describe());
+        }
+        if (profileRequested != (profiler != null)) {
+            toggleProfile = true;
+        }
+        if (linkTransport != null && cable.getTransport() != linkTransport) {
+            linkFailed();
+        }
+        if (requestedTransport != linkTransport) {
+            changeLink();
+        }
+        if (idleSkipRequested != idleSkipping) {
+            idleSkipping = idleSkipRequested;
+            emulator.setIdleLoopSkipping(idleSkipping && !debuggerEnabled);
+        }
+    }
+    
+    //plugs the link cable into the requested transport, only call on the emulation thread
+    private void changeLink() {
+        synchronized (linkLock) {
+            closeTransport(linkTransport);
+            linkTransport = requestedTransport;
+            emulator.setSerialTransport(linkTransport);
         }
     }
     
-    public void resetClocks() {
-        numClocks = 0;
+    //plugs transport in at the end of the frame, closing the one requested before if it never got plugged in
+    void requestTransport(SerialTransport transport) {
+        synchronized (linkLock) {
+            if (requestedTransport != linkTransport && requestedTransport != transport) {
+                closeTransport(requestedTransport);
+            }
+            requestedTransport = transport;
+        }
     }
     
-    public int getClocks() {
-        return numClocks;
+    //closes the requested transport if it hasn't been plugged in yet and keeps the current one
+    void cancelLinkRequest() {
+        synchronized (linkLock) {
+            requestTransport(linkTransport);
+        }
     }
     
-    //ticks everything except for the CPU
-    public void clockTick(int ticks) {
-        numClocks += ticks;
-        for(int i = 0; i < ticks; i++) {
-            ppu.tick();
-            if (ppu.isHBlank()) {
-                //mmu.hBlankDMA();
-                //ppu.toggleHBlankIndicator();
+    private static void closeTransport(SerialTransport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            if (ppu.drewFrame()) {
-                framesSinceSpeedCheck++;
-                framesDrawn++;
-                if (framesSinceSpeedCheck >= NUM_FRAMES_PER_SPEEDCHECK) {
-                    this.framesSinceSpeedCheck = 1;
-                    this.timeSinceSpeedCheck = System.currentTimeMillis();
-                }
-                long currentTime = System.currentTimeMillis();
-                long deltaTime = currentTime - timeSinceSpeedCheck;
-                if (!fastMode && deltaTime < 16 * framesSinceSpeedCheck) {
-                    //System.out.println("sleep");
-                    try {
-                        Thread.sleep(16 * framesSinceSpeedCheck - deltaTime);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-                if (framesDrawn % NUM_FRAMES_PER_AUTOSAVE == 0) {
-                    this.queueAutoSaveIfEnabled();
-                }
-                if (audioOn) mmu.soundChip.tick();
+        }
+    }
+    
+    //the cable dropped its transport after an error, so unplugs it, only call on the emulation thread
+    private void linkFailed() {
+        IOException failure = cable.getFailure();
+        String message = "The link cable was unplugged: " + (failure == null ? "the connection failed" : failure.getMessage());
+        System.err.println(message);
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message, "Link cable", JOptionPane.WARNING_MESSAGE));
+        synchronized (linkLock) {
+            if (requestedTransport == linkTransport) {
+                requestedTransport = null;
+            }
+            changeLink();
+        }
+    }
+    
+    //starts or stops recording a trace, only call on the emulation thread
+    private void toggleTrace() {
+        try {
+            if (tracer == null) {
+                String fileName = "trace-" + MainMenuBar.DATE_FORMAT.format(new Date()) + ".gbtrace";
+                tracer = new TraceRecorder(new File(fileName).toPath());
+                emulator.setTraceRecorder(tracer);
+                System.out.println("Recording trace to " + fileName);
+            } else {
+                emulator.setTraceRecorder(null);
+                tracer.close();
+                System.out.println("Recorded " + tracer.getNumRecords() + " instructions");
+                tracer = null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            traceRequested = false;
+        }
+    }
+    
+    //starts or stops saving every frame as a PNG, only call on the emulation thread
+    private void toggleFrameRecording() {
+        try {
+            if (frameRecorder == null) {
+                String directory = "frames-" + MainMenuBar.DATE_FORMAT.format(new Date());
+                //dropping frames rather than slowing down keeps the game playable while recording
+                frameRecorder = new AsyncFrameSink(new PngSequenceSink(new File(directory).toPath()), AsyncFrameSink.DEFAULT_CAPACITY, true);
+                emulator.setFrameSink(FrameSink.both(frameRecorder, movieRecorder));
+                System.out.println("Recording frames to " + directory);
+            } else {
+                emulator.setFrameSink(movieRecorder);
+                frameRecorder.close();
+                System.out.println("Stopped recording frames, " + frameRecorder.getDropped() + " dropped");
+                frameRecorder = null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            recordFramesRequested = false;
+        }
+    }
+    
+    //starts or stops recording an input movie, only call between instructions since that's where it starts
+    private void toggleMovieRecording() {
+        try {
+            if (movieRecorder == null) {
+                movieRecorder = new MovieRecorder(emulator, romFileName);
+                emulator.setFrameSink(FrameSink.both(frameRecorder, movieRecorder));
+                System.out.println("Recording movie");
+            } else {
+                emulator.setFrameSink(frameRecorder);
+                InputMovie movie = movieRecorder.finish();
+                movieRecorder = null;
+                String fileName = "movie-" + MainMenuBar.DATE_FORMAT.format(new Date()) + ".gbmovie";
+                movie.save(new File(fileName).toPath());
+                System.out.println("Recorded " + movie.size() + " frames to " + fileName);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            recordMovieRequested = false;
+        }
+    }
+    
+    //starts or stops collecting metrics and publishing them over JMX, only call between instructions
+    private void toggleMetrics() {
+        if (metrics == null) {
+            metrics = new EmulatorMetrics(emulator);
+            emulator.setMetrics(metrics);
+            metrics.register();
+            System.out.println("Collecting metrics");
+        } else {
+            emulator.setMetrics(null);
+            metrics.unregister();
+            System.out.println(metrics.snapshot().describe());
+            metrics = null;
+        }
+    }
+    
+    //starts profiling the guest code or stops and writes the report and the collapsed stacks, only call between instructions
+    private void toggleProfile() {
+        if (profiler == null) {
+            profiler = new GuestProfiler(mmu, 1);
+            emulator.setProfiler(profiler);
+            System.out.println("Profiling guest code");
+        } else {
+            emulator.setProfiler(null);
+            String name = "profile-" + MainMenuBar.DATE_FORMAT.format(new Date());
+            try {
+                profiler.writeReport(new File(name + ".txt").toPath(), GuestProfiler.REPORT_LINES);
+                profiler.writeCollapsedStacks(new File(name + ".collapsed").toPath());
+                System.out.println("Wrote " + name + ".txt and " + name + ".collapsed");
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            cpu.timer.tick();
-            cable.tick();
+            profiler = null;
         }
     }
     
@@ -519,7 +959,8 @@ public class GameBoy extends JFrame{
         
         new Thread(() -> {
             paused = false;
-            framesSinceSpeedCheck = NUM_FRAMES_PER_SPEEDCHECK;
+            pacer.resetStats();
+            turbo.resetSpeed();
 
             while (!paused) {
                 this.tick();
@@ -545,7 +986,7 @@ public class GameBoy extends JFrame{
             if(args[args.length-1].equals("-d")) {
                 Scanner fin = new Scanner(System.in);
                 System.out.print("First breakpoint (hex): ");
-                gb.breakPoints.add(fin.nextInt(16));
+                gb.addBreakPoint(fin.nextInt(16));
             }
         }else{
             gb = new GameBoy(DEFAULT_ROM);
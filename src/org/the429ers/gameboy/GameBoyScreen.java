@@ -2,7 +2,11 @@ package org.the429ers.gameboy;
 
 import javax.swing.*;
 import java.awt.Graphics;
-import java.awt.Image;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.io.Serializable;
 
 public class GameBoyScreen extends JPanel implements Serializable {
@@ -10,24 +14,60 @@ public class GameBoyScreen extends JPanel implements Serializable {
      * 
      */
     private static final long serialVersionUID = 6526233725485187632L;
-    public transient Image img;
+    private transient FrameExchange exchange;
+    //the frame is uploaded to video memory once and scaled from there, which is much faster than scaling a BufferedImage
+    private transient VolatileImage volatileFrame;
     
     public GameBoyScreen() {
-        img = null;
+        exchange = new FrameExchange();
     }
-    public GameBoyScreen(Image img) {
-        this.img = img;
+    
+    public GameBoyScreen(BufferedImage img) {
+        this();
+        if (img != null) {
+            exchange.publish(img);
+        }
     }
     
-    public void drawFrame(Image img) {
-        this.img = img;
+    private synchronized FrameExchange getExchange() {
+        if (exchange == null) {
+            exchange = new FrameExchange();
+        }
+        return exchange;
+    }
+    
+    //called by the PPU with a finished frame, returns the image to draw the next frame into
+    public BufferedImage drawFrame(BufferedImage img) {
+        if (img == null) {
+            return null;
+        }
+        BufferedImage next = getExchange().publish(img);
         this.repaint();
+        return next;
     }
     
     @Override
     public void paint(Graphics g) {
-        if (img != null) {
-            g.drawImage(img, 0, 0, this.getWidth(), this.getHeight(), this);
+        BufferedImage img = getExchange().latest();
+        if (img == null) {
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config == null) {
+            g2.drawImage(img, 0, 0, this.getWidth(), this.getHeight(), this);
+            return;
         }
+        do {
+            if (volatileFrame == null || volatileFrame.getWidth() != img.getWidth() || volatileFrame.getHeight() != img.getHeight()
+                    || volatileFrame.validate(config) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                volatileFrame = config.createCompatibleVolatileImage(img.getWidth(), img.getHeight());
+            }
+            Graphics2D vg = volatileFrame.createGraphics();
+            vg.drawImage(img, 0, 0, null);
+            vg.dispose();
+            g2.drawImage(volatileFrame, 0, 0, this.getWidth(), this.getHeight(), this);
+        } while (volatileFrame.contentsLost());
     }
 }
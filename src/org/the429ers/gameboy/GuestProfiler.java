@@ -0,0 +1,287 @@
+package org.the429ers.gameboy;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/***
+ *
+ * Finds the hot guest code: counts instructions and clock cycles per
+ * (ROM bank, PC), and per call stack so the profile can be drawn as a flame
+ * graph. The CPU reports every instruction, call, return and interrupt while
+ * a profiler is attached.
+ *
+ * The call stack is a shadow of the guest's, pushed on CALL, RST and
+ * interrupts and popped on RET. Each frame remembers the stack pointer it was
+ * pushed at, so returns pop every frame whose return address is gone from
+ * the stack. That keeps the shadow stack right when games return early with
+ * a changed SP or reset it.
+ *
+ * Addresses are written as bank:address, where the bank is only meaningful
+ * from 0x4000 to 0x7fff and is 0 elsewhere.
+ *
+ */
+public class GuestProfiler {
+    public static final int MAX_DEPTH = 64;
+    public static final int REPORT_LINES = 200; //hottest addresses in a report
+    private static final String[] INTERRUPT_NAMES = {"vblank", "stat", "timer", "serial", "joypad"};
+
+    private MMU mmu;
+    private final int sampleInterval;
+    private int untilSample;
+
+    //per (bank, PC)
+    private final LongIndex locations = new LongIndex();
+    private long[] instructions = new long[1024];
+    private long[] cycles = new long[1024];
+    private int[] opcodes = new int[1024]; //0x100 and up are CB prefixed
+
+    //call stacks form a tree, each node is a frame entered from its parent
+    private final LongIndex stackNodes = new LongIndex();
+    private int[] parents = new int[1024];
+    private int[] entries = new int[1024];
+    private long[] stackCycles = new long[1024];
+    private int numStacks = 1; //0 is the root
+
+    private final int[] stack = new int[MAX_DEPTH]; //stack node ids
+    private final int[] stackPointers = new int[MAX_DEPTH];
+    private int depth = 0;
+    private int current = 0;
+
+    //sampleInterval 1 counts every instruction, larger ones only every nth but still follow every call
+    public GuestProfiler(MMU mmu, int sampleInterval) {
+        this.mmu = mmu;
+        this.sampleInterval = Math.max(1, sampleInterval);
+        this.untilSample = this.sampleInterval;
+    }
+
+    //follows another emulator, e.g. after loading a state, and forgets the call stack
+    public void setMMU(MMU mmu) {
+        this.mmu = mmu;
+        depth = 0;
+        current = 0;
+    }
+
+    private int bank(int pc) {
+        if (pc < 0x4000 || pc >= 0x8000 || mmu.getROM() == null) {
+            return 0;
+        }
+        return mmu.getROM().getRomBank();
+    }
+
+    private int location(int pc) {
+        return bank(pc) << 16 | (pc & 0xffff);
+    }
+
+    //called after the instruction at pc ran for clocks cycles
+    void instruction(int pc, int opcode, int clocks) {
+        if (--untilSample > 0) {
+            return;
+        }
+        untilSample = sampleInterval;
+        int key = location(pc);
+        int index = locations.indexOf(key);
+        if (index == instructions.length) {
+            instructions = Arrays.copyOf(instructions, 2 * index);
+            cycles = Arrays.copyOf(cycles, 2 * index);
+            opcodes = Arrays.copyOf(opcodes, 2 * index);
+        }
+        if (instructions[index] == 0) {
+            opcodes[index] = opcode == 0xcb ? 0x100 | mmu.readByte(pc + 1) : opcode;
+        }
+        instructions[index]++;
+        cycles[index] += clocks;
+        stackCycles[current] += clocks;
+    }
+
+    //called once the CPU has pushed the return address and jumped to target, sp is the new stack pointer
+    void call(int target, int sp) {
+        popReturned(sp);
+        if (depth == MAX_DEPTH) {
+            return;
+        }
+        int entry = location(target);
+        long key = (long) current << 32 | entry;
+        int node = stackNodes.indexOf(key) + 1; //0 is the root, which is never in the index
+        if (node == numStacks) { //ids are handed out in order, so this is a new stack
+            if (numStacks == parents.length) {
+                parents = Arrays.copyOf(parents, 2 * numStacks);
+                entries = Arrays.copyOf(entries, 2 * numStacks);
+                stackCycles = Arrays.copyOf(stackCycles, 2 * numStacks);
+            }
+            parents[node] = current;
+            entries[node] = entry;
+            numStacks++;
+        }
+        stack[depth] = node;
+        stackPointers[depth] = sp & 0xffff;
+        depth++;
+        current = node;
+    }
+
+    //called after a return, sp is the stack pointer after popping the return address
+    void ret(int sp) {
+        popReturned(sp);
+    }
+
+    private void popReturned(int sp) {
+        sp &= 0xffff;
+        while (depth > 0 && stackPointers[depth - 1] < sp) {
+            depth--;
+        }
+        current = depth == 0 ? 0 : stack[depth - 1];
+    }
+
+    public static String describe(int location) {
+        return String.format("%02x:%04x", location >>> 16, location & 0xffff);
+    }
+
+    private static String frameName(int entry) {
+        int address = entry & 0xffff;
+        if (address >= InterruptHandler.VBLANK && address <= InterruptHandler.JOYPAD && (address & 7) == 0 && entry >>> 16 == 0) {
+            return "int_" + INTERRUPT_NAMES[(address - InterruptHandler.VBLANK) / 8];
+        }
+        return describe(entry);
+    }
+
+    private static String disassemble(int opcode) {
+        CPU.Operation op = opcode >= 0x100 ? CPU.cbOperations[opcode & 0xff] : CPU.operations[opcode];
+        return op == null ? String.format("?? %02x", opcode) : op.description;
+    }
+
+    public long getTotalCycles() {
+        long total = 0;
+        for (int i = 0; i < locations.size(); i++) {
+            total += cycles[i];
+        }
+        return total;
+    }
+
+    //the count hottest addresses by cycles, with their disassembly
+    public void writeReport(PrintWriter out, int count) {
+        int size = locations.size();
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(cycles[b], cycles[a]));
+        long total = Math.max(1, getTotalCycles());
+        out.printf("%-9s %7s %12s %12s  %s%n", "address", "cycles%", "cycles", "instructions", "instruction");
+        for (int i = 0; i < Math.min(count, size); i++) {
+            int index = order[i];
+            out.printf("%-9s %6.2f%% %12d %12d  %s%n", describe((int) locations.keyAt(index)), 100.0 * cycles[index] / total,
+                    cycles[index], instructions[index], disassemble(opcodes[index]));
+        }
+        out.flush();
+    }
+
+    //one line per call stack, frames separated by semicolons and followed by its cycles, for flamegraph.pl and similar tools
+    public void writeCollapsedStacks(PrintWriter out) {
+        StringBuilder line = new StringBuilder();
+        int[] path = new int[MAX_DEPTH + 1];
+        for (int node = 0; node < numStacks; node++) {
+            if (stackCycles[node] == 0) {
+                continue;
+            }
+            int length = 0;
+            for (int n = node; n != 0; n = parents[n]) {
+                path[length++] = entries[n];
+            }
+            line.setLength(0);
+            line.append("main");
+            for (int i = length - 1; i >= 0; i--) {
+                line.append(';').append(frameName(path[i]));
+            }
+            line.append(' ').append(stackCycles[node]);
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    public void writeReport(Path file, int count) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            writeReport(out, count);
+        }
+    }
+
+    public void writeCollapsedStacks(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            writeCollapsedStacks(out);
+        }
+    }
+
+    /***
+     *
+     * Maps long keys to dense ints, 0 for the first key added, 1 for the next
+     * and so on, without boxing. Keys must not be negative.
+     *
+     */
+    static class LongIndex {
+        private static final long EMPTY = -1;
+        private long[] keys = new long[2048];
+        private int[] indexes = new int[2048];
+        private long[] keysInOrder = new long[1024];
+        private int size = 0;
+        {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        //the index of key, adding it if it's new
+        int indexOf(long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return indexes[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            indexes[slot] = size;
+            if (size == keysInOrder.length) {
+                keysInOrder = Arrays.copyOf(keysInOrder, 2 * size);
+            }
+            keysInOrder[size] = key;
+            size++;
+            if (2 * size > keys.length) {
+                grow();
+            }
+            return size - 1;
+        }
+
+        long keyAt(int index) {
+            return keysInOrder[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldIndexes = indexes;
+            keys = new long[2 * oldKeys.length];
+            indexes = new int[keys.length];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) {
+                    continue;
+                }
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                indexes[slot] = oldIndexes[i];
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.the429ers.gameboy;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
 public interface IPPU {
     public static final int OAM_SEARCH_LENGTH = 80;
     public static final int OAM_SEARCH_START = 0;
@@ -41,8 +44,44 @@ public interface IPPU {
     
     public void setGBS(GameBoyScreen gbs);
     
+    //copies this PPU onto a forked MMU, without a screen attached
+    public IPPU fork(MMU mem);
+    
     public void tick();
     
+    //how many of the next ticks can't raise an interrupt, change a mode or finish a frame
+    public default int quietCycles() {
+        return 0;
+    }
+    
+    //the same as ticking cycles times, for at most quietCycles() cycles
+    public default void skipQuietCycles(int cycles) {
+        for (int i = 0; i < cycles; i++) {
+            tick();
+        }
+    }
+    
+    //frames started while this is set keep their timing, STAT, LY and interrupts but are never drawn
+    public void setSkipRendering(boolean skip);
+    
+    //receives every frame that is drawn, null to stop
+    public void setFrameSink(FrameSink sink);
+    
+    //counts lines rendered and skipped, null to stop
+    public void setMetrics(EmulatorMetrics metrics);
+    
+    //copies the backing array directly, which is much faster than going through the raster
+    public static BufferedImage copyFrame(BufferedImage frame) {
+        if (frame == null) {
+            return null;
+        }
+        BufferedImage copy = new BufferedImage(frame.getWidth(), frame.getHeight(), frame.getType());
+        byte[] source = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+        byte[] dest = ((DataBufferByte) copy.getRaster().getDataBuffer()).getData();
+        System.arraycopy(source, 0, dest, 0, source.length);
+        return copy;
+    }
+    
         
     
     public void loadSprites();
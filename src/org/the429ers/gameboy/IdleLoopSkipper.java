@@ -0,0 +1,265 @@
+package org.the429ers.gameboy;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+/***
+ *
+ * Skips the iterations of busy-wait loops that can't see anything change.
+ * Games often wait for a line or for their VBlank handler with loops like
+ *
+ *     wait: LDH A,(0x44) / CP 0x90 / JR NZ,wait
+ *     wait: LD A,(HL) / AND A / JR Z,wait
+ *     wait: JR wait
+ *
+ * which only read one address, write nothing but A and the flags, and jump
+ * back to their start. The CPU reports every jump back to here. When the
+ * loop is one of these and the value it polls is the one it already saw, so
+ * the next iteration would leave every register as it is, then nothing
+ * changes until a device does something. As many whole iterations as fit in
+ * Emulator.quietCycles() are skipped in one step, which is exactly the same
+ * as running them.
+ *
+ * Only addresses that nothing but the guest and device events can change are
+ * polled this way: VRAM, WRAM, HRAM, IF and the LCD registers. Loops reading
+ * DIV, TIMA, the joypad or sound registers always run normally.
+ *
+ * ROMs whose header title is listed in no-idle-skip.txt in the working
+ * directory, one per line, start with skipping off.
+ *
+ */
+public class IdleLoopSkipper implements Serializable, Cloneable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = -5519604829162387117L;
+    public static final String OPT_OUT_FILE = "no-idle-skip.txt";
+    public static final int MAX_LOOP_BYTES = 8;
+    public static final int MAX_SKIP = CPU.MAX_HALT_SKIP;
+
+    private static Set<String> optOut;
+
+    private boolean enabled;
+    private boolean optedOut; //the ROM is in the opt out list, which keeps skipping off
+    private long skippedCycles;
+    private long loopsSkipped;
+
+    public IdleLoopSkipper(boolean optedOut) {
+        this.optedOut = optedOut;
+        enabled = !optedOut;
+    }
+
+    IdleLoopSkipper fork() {
+        try {
+            return (IdleLoopSkipper) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //turning skipping on does nothing for a ROM that opted out
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled && !optedOut;
+    }
+
+    //clock cycles that weren't run since power on
+    public long getSkippedCycles() {
+        return skippedCycles;
+    }
+
+    //how many times iterations were skipped
+    public long getLoopsSkipped() {
+        return loopsSkipped;
+    }
+
+    public static synchronized boolean isOptedOut(String title) {
+        if (optOut == null) {
+            optOut = new HashSet<>();
+            Path file = Paths.get(OPT_OUT_FILE);
+            if (Files.exists(file)) {
+                try {
+                    for (String line : Files.readAllLines(file)) {
+                        if (!line.trim().isEmpty()) optOut.add(line.trim());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return optOut.contains(title);
+    }
+
+    public static synchronized void optOut(String title) {
+        isOptedOut(title);
+        optOut.add(title);
+    }
+
+    //whether reading location gives the same value until a device changes it
+    private static boolean isPollable(int location) {
+        switch (location) {
+        case MMU.IF_REGISTER:
+        case 0xff40: //LCDC
+        case 0xff41: //STAT
+        case 0xff44: //LY
+        case 0xff45: //LYC
+            return true;
+        default:
+            return location >= 0x8000 && location < 0xa000 //VRAM
+                    || location >= 0xc000 && location < 0xe000 //WRAM
+                    || location >= 0xff80 && location < 0xffff; //HRAM
+        }
+    }
+
+    /***
+     * Called by the CPU after the jump at branchPC went back to the current
+     * PC. Skips iterations of the loop if it's idle and returns the clock
+     * cycles skipped.
+     */
+    int loopedBack(CPU cpu, int branchPC) {
+        if (!enabled) return 0;
+        RegisterFile regs = cpu.regs;
+        MMU mem = cpu.mem;
+        int start = regs.PC.read();
+        if (branchPC - start > MAX_LOOP_BYTES) return 0;
+
+        int pc = start;
+        int cycles = 0;
+        int polled = -1;
+        boolean loadsA = false;
+        int bit = -1; //BIT b,(HL) tests the polled value without loading it
+        int opcode = mem.readByte(pc);
+        switch (opcode) {
+        case 0xf0: //LDH A,(a8)
+            polled = 0xff00 | mem.readByte(pc + 1);
+            pc += 2;
+            cycles += 12;
+            break;
+        case 0xfa: //LD A,(a16)
+            polled = mem.readByte(pc + 1) | mem.readByte(pc + 2) << 8;
+            pc += 3;
+            cycles += 16;
+            break;
+        case 0xf2: //LD A,(C)
+            polled = 0xff00 | regs.C.read();
+            pc += 1;
+            cycles += 8;
+            break;
+        case 0x0a: //LD A,(BC)
+        case 0x1a: //LD A,(DE)
+        case 0x7e: //LD A,(HL)
+            polled = (opcode == 0x0a ? regs.BC : opcode == 0x1a ? regs.DE : regs.HL).read();
+            pc += 1;
+            cycles += 8;
+            break;
+        case 0xcb:
+            int cbOpcode = mem.readByte(pc + 1);
+            if ((cbOpcode & 0xc7) == 0x46) { //BIT b,(HL)
+                polled = regs.HL.read();
+                bit = (cbOpcode >> 3) & 7;
+                pc += 2;
+                cycles += 12;
+            }
+            break;
+        }
+        loadsA = polled != -1 && bit == -1;
+        if (polled != -1 && !isPollable(polled)) return 0;
+
+        //the A and F the next iteration would leave behind
+        int a = regs.A.read();
+        int f = regs.F.read();
+        int value = polled == -1 ? 0 : mem.readByte(polled);
+        if (loadsA) a = value;
+        if (bit != -1) f = bitFlags(f, value, bit);
+
+        opcode = mem.readByte(pc);
+        if (loadsA) {
+            int operand = mem.readByte(pc + 1);
+            switch (opcode) {
+            case 0xfe: //CP d8
+                f = flag(RegisterFile.ZFLAG, a == operand) | flag(RegisterFile.NFLAG, true)
+                        | flag(RegisterFile.HFLAG, (a & 0xf) < (operand & 0xf)) | flag(RegisterFile.CFLAG, a < operand);
+                pc += 2;
+                cycles += 8;
+                break;
+            case 0xe6: //AND d8
+                a &= operand;
+                f = flag(RegisterFile.ZFLAG, a == 0) | flag(RegisterFile.HFLAG, true);
+                pc += 2;
+                cycles += 8;
+                break;
+            case 0xa7: //AND A
+                f = flag(RegisterFile.ZFLAG, a == 0) | flag(RegisterFile.HFLAG, true);
+                pc += 1;
+                cycles += 4;
+                break;
+            case 0xb7: //OR A
+                f = flag(RegisterFile.ZFLAG, a == 0);
+                pc += 1;
+                cycles += 4;
+                break;
+            case 0xcb:
+                if ((operand & 0xc7) == 0x47) { //BIT b,A
+                    f = bitFlags(f, a, (operand >> 3) & 7);
+                    pc += 2;
+                    cycles += 8;
+                }
+                break;
+            }
+            opcode = mem.readByte(pc);
+        }
+
+        //the loop has to end with the jump that brought us here
+        if (pc != branchPC) return 0;
+        int condition;
+        if (opcode == 0x18 || (opcode & 0xe7) == 0x20) { //JR, JR cc
+            if (pc + 2 + (byte) mem.readByte(pc + 1) != start) return 0;
+            condition = opcode == 0x18 ? -1 : (opcode >> 3) & 3;
+            cycles += 12;
+        } else if (opcode == 0xc3 || (opcode & 0xe7) == 0xc2) { //JP, JP cc
+            if ((mem.readByte(pc + 1) | mem.readByte(pc + 2) << 8) != start) return 0;
+            condition = opcode == 0xc3 ? -1 : (opcode >> 3) & 3;
+            cycles += 16;
+        } else {
+            return 0;
+        }
+        //an interrupt was serviced straight after the jump
+        if (cpu.getClockCycleDelta() != (opcode == 0x18 || (opcode & 0xe7) == 0x20 ? 12 : 16)) return 0;
+
+        //another iteration has to change nothing and jump back again
+        if (a != regs.A.read() || f != (regs.F.read() & 0xf0)) return 0;
+        if (condition != -1 && !conditionHolds(condition, f)) return 0;
+
+        int iterations = Math.min(mem.getEmulator().quietCycles(), MAX_SKIP) / cycles;
+        if (iterations == 0) return 0;
+        int skipped = iterations * cycles;
+        mem.getEmulator().skipQuietCycles(skipped);
+        skippedCycles += skipped;
+        loopsSkipped++;
+        return skipped;
+    }
+
+    private static int flag(int flag, boolean set) {
+        return set ? 1 << flag : 0;
+    }
+
+    //BIT leaves the carry alone
+    private static int bitFlags(int f, int value, int bit) {
+        return flag(RegisterFile.ZFLAG, (value & (1 << bit)) == 0) | flag(RegisterFile.HFLAG, true)
+                | (f & (1 << RegisterFile.CFLAG));
+    }
+
+    //NZ, Z, NC, C in the order they're encoded
+    private static boolean conditionHolds(int condition, int f) {
+        boolean set = (f & (1 << (condition < 2 ? RegisterFile.ZFLAG : RegisterFile.CFLAG))) != 0;
+        return (condition & 1) == 0 ? !set : set;
+    }
+}
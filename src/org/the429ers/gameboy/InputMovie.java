@@ -0,0 +1,184 @@
+package org.the429ers.gameboy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/***
+ *
+ * A recording of the buttons held during every frame, starting from a save
+ * state or from power on. Replaying the inputs from the same start gives the
+ * exact same run, so the hashes of each frame's picture and RAM are stored
+ * too, to find where a replay diverges.
+ *
+ * Inputs are applied when a frame ends, so input i is held from the end of
+ * frame i - 1 to the end of frame i; input 0 is held from the start.
+ *
+ * The frame hashes are of the RGB picture, so they depend on the Pallette
+ * color mode, which is stored too and has to be set before replaying.
+ *
+ * File format, big endian: "GBMV", version, ROM file name, Pallette color
+ * mode, length of the start state followed by the serialized MMU (0 for
+ * power on), number of frames, then per frame the button mask, frame hash
+ * and RAM hash. Version 1 files have no color mode and were grayscale.
+ *
+ */
+public class InputMovie {
+    public static final int MAGIC = 0x47424d56; //GBMV
+    public static final int VERSION = 2;
+    public static final long NO_HASH = 0; //the frame wasn't drawn while recording, e.g. in turbo
+
+    private final String romName;
+    private final int colorMode;
+    private final byte[] startState;
+    private byte[] inputs = new byte[1024];
+    private long[] frameHashes = new long[1024];
+    private long[] ramHashes = new long[1024];
+    private int size = 0;
+
+    //startState is null to start from power on, colorMode is the Pallette mode the frame hashes are in
+    public InputMovie(String romName, int colorMode, byte[] startState) {
+        this.romName = romName;
+        this.colorMode = colorMode;
+        this.startState = startState;
+    }
+
+    public void add(int input, long frameHash, long ramHash) {
+        if (size == inputs.length) {
+            inputs = Arrays.copyOf(inputs, 2 * size);
+            frameHashes = Arrays.copyOf(frameHashes, 2 * size);
+            ramHashes = Arrays.copyOf(ramHashes, 2 * size);
+        }
+        inputs[size] = (byte) input;
+        frameHashes[size] = frameHash;
+        ramHashes[size] = ramHash;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getInput(int frame) {
+        return inputs[frame] & 0xff;
+    }
+
+    public long getFrameHash(int frame) {
+        return frameHashes[frame];
+    }
+
+    public long getRamHash(int frame) {
+        return ramHashes[frame];
+    }
+
+    public String getRomName() {
+        return romName;
+    }
+
+    public int getColorMode() {
+        return colorMode;
+    }
+
+    public boolean startsFromPowerOn() {
+        return startState == null;
+    }
+
+    //a new emulator at the start of the movie, rom is only used for movies that start from power on
+    public Emulator createEmulator(String rom) throws IOException {
+        if (startState == null) {
+            return new Emulator(rom, null, null);
+        }
+        return loadState(startState);
+    }
+
+    //the same save state the frontend makes, only call between instructions
+    public static byte[] saveState(Emulator emulator) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(emulator.getMMU());
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Emulator loadState(byte[] state) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state))) {
+            MMU loaded = (MMU) in.readObject();
+            new Joypad(loaded, loaded.getCPU().interruptHandler);
+            return loaded.getEmulator();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    //hash of work RAM and high RAM, which is where nearly all game state lives
+    public static long hashRam(MMU mmu, byte[] buffer) {
+        PagedMemory wram = mmu.getWRAM();
+        wram.copyTo(0, buffer, 0, wram.size());
+        long hash = FrameHashRecorder.hash(FrameHashRecorder.FNV_OFFSET, buffer, 0, wram.size());
+        mmu.getMemory().copyTo(0xff80, buffer, 0, 0x7f);
+        return FrameHashRecorder.hash(hash, buffer, 0, 0x7f);
+    }
+
+    public static byte[] ramBuffer(MMU mmu) {
+        return new byte[Math.max(mmu.getWRAM().size(), 0x80)];
+    }
+
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(romName);
+            out.writeInt(colorMode);
+            if (startState == null) {
+                out.writeInt(0);
+            } else {
+                out.writeInt(startState.length);
+                out.write(startState);
+            }
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeByte(inputs[i]);
+                out.writeLong(frameHashes[i]);
+                out.writeLong(ramHashes[i]);
+            }
+        }
+    }
+
+    public static InputMovie load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a movie");
+            }
+            int version = in.readInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("unsupported movie version " + version);
+            }
+            String romName = in.readUTF();
+            int colorMode = version == 1 ? Pallette.GRAY_MODE : in.readInt();
+            int stateLength = in.readInt();
+            byte[] startState = null;
+            if (stateLength > 0) {
+                startState = new byte[stateLength];
+                in.readFully(startState);
+            }
+            InputMovie movie = new InputMovie(romName, colorMode, startState);
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                int input = in.readUnsignedByte();
+                long frameHash = in.readLong();
+                long ramHash = in.readLong();
+                movie.add(input, frameHash, ramHash);
+            }
+            return movie;
+        }
+    }
+}
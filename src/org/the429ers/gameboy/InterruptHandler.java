@@ -1,103 +1,128 @@
 package org.the429ers.gameboy;
 
 import java.io.Serializable;
-import java.util.HashMap;
 
-public class InterruptHandler implements Serializable {
+/***
+ *
+ * The interrupt controller. IE and IF are kept here as bit masks, one bit
+ * per interrupt in priority order, and devices request interrupts by setting
+ * their bit in IF. The CPU calls dispatch at every instruction boundary,
+ * which wakes it from HALT whenever IE & IF is non-zero and, if IME is set,
+ * jumps to the lowest pending bit's vector.
+ *
+ * EI only sets IME after the instruction following it, so EI, RET
+ * returns before an interrupt can be serviced.
+ *
+ */
+public class InterruptHandler implements Serializable, Cloneable {
     /**
-     * 
+     *
      */
     private static final long serialVersionUID = -2641142498470471980L;
 
     private CPU cpu;
-    
+
+    //vectors, the bit in IE and IF is (vector - VBLANK) / 8
     public static final int VBLANK = 0x0040;
     public static final int LCDC = 0x0048;
     public static final int TIMER_OVERFLOW = 0x0050;
     public static final int SERIAL_COMPLETION = 0x0058;
     public static final int JOYPAD = 0x0060;
-    
-    public HashMap<Integer, Boolean> specificEnabled = new HashMap<>();
-    {
-        specificEnabled.put(VBLANK, false);
-        specificEnabled.put(LCDC, false);
-        specificEnabled.put(TIMER_OVERFLOW, false);
-        specificEnabled.put(SERIAL_COMPLETION, false);
-        specificEnabled.put(JOYPAD, false);
-    }
-    
+
+    public static final int INTERRUPT_BITS = 0x1f;
+
+    private int enabled; //IE
+    private int requested; //IF
+
     private boolean interruptsEnabled = false; // this is the IME flag
-    
+    private boolean enableAfterNext = false; //set by EI
+
     public void setInterruptsEnabled(boolean interruptsEnabled){
         this.interruptsEnabled = interruptsEnabled;
+        enableAfterNext = false;
+    }
+
+    public boolean isInterruptsEnabled(){
+        return interruptsEnabled;
     }
-    
-    public void setSpecificEnabled(int handle, boolean enabled){
-        specificEnabled.put(handle, enabled);
+
+    //EI, which sets IME once the next instruction is done
+    public void enableAfterNextInstruction() {
+        enableAfterNext = true;
     }
-    
+
     public InterruptHandler(CPU cpu){
         this.cpu = cpu;
     }
-    
-    public boolean issueInterruptIfEnabled(int handle){
-        if(!interruptsEnabled) {
-            cpu.interrupt(-1);
-            return false;
-        }
-        if(!specificEnabled.getOrDefault(handle, false)) {
-            return false;
+
+    InterruptHandler fork(CPU cpu) {
+        InterruptHandler copy;
+        try {
+            copy = (InterruptHandler) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
         }
-        
-        cpu.interrupt(handle);
-        
-        return true;
+        copy.cpu = cpu;
+        return copy;
     }
-    
-    public boolean handleIF(int IFflag){
-        //read IFflag bit by bit based on priority and issue an interrupt if needed
-        //lower priority simultaneous interrupts are ignored
-        if((IFflag & 1) == 1){ //VBLANK requested
-            return this.issueInterruptIfEnabled(InterruptHandler.VBLANK);
-        }
-        IFflag >>= 1;
-        if((IFflag & 1) == 1){ 
-            return this.issueInterruptIfEnabled(InterruptHandler.LCDC);
-        }
-        IFflag >>= 1;
-        if((IFflag & 1) == 1){ 
-            return this.issueInterruptIfEnabled(InterruptHandler.TIMER_OVERFLOW);
-        }
-        IFflag >>= 1;
-        if((IFflag & 1) == 1){
-            return this.issueInterruptIfEnabled(InterruptHandler.SERIAL_COMPLETION);
+
+    public static int bitOf(int handle) {
+        return 1 << ((handle - VBLANK) >> 3);
+    }
+
+    //sets the interrupt's bit in IF, it's serviced at the next instruction boundary if enabled
+    public void request(int handle) {
+        requested |= bitOf(handle);
+    }
+
+    public int readIF() {
+        return requested | ~INTERRUPT_BITS & 0xff; //the unused bits read as 1
+    }
+
+    public void writeIF(int value) {
+        requested = value & INTERRUPT_BITS;
+    }
+
+    public int readIE() {
+        return enabled;
+    }
+
+    public void writeIE(int value) {
+        enabled = value & 0xff;
+    }
+
+    //the interrupts that are both enabled and requested, which is what wakes the CPU from HALT
+    public int pending() {
+        return enabled & requested & INTERRUPT_BITS;
+    }
+
+    //whether the next dispatch will jump to an interrupt
+    public boolean isDue() {
+        return interruptsEnabled && pending() != 0;
+    }
+
+    /***
+     * Called at the end of every instruction. Acknowledges the highest
+     * priority pending interrupt and returns its vector if IME is set,
+     * otherwise returns -1.
+     */
+    int dispatch() {
+        int pending = pending();
+        int vector = -1;
+        if (pending != 0 && interruptsEnabled) {
+            int bit = Integer.numberOfTrailingZeros(pending);
+            requested &= ~(1 << bit);
+            interruptsEnabled = false;
+            vector = VBLANK + (bit << 3);
         }
-        IFflag >>= 1;
-        if((IFflag & 1) == 1){
-            this.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+        if (enableAfterNext) {
+            interruptsEnabled = true;
+            enableAfterNext = false;
         }
-        
-        return false;
-    }
-    
-    public void handleIE(int IEflag) {
-        //read IEflag bit by bit and set each interrupt enable depending on IEflag value
-        this.setSpecificEnabled(InterruptHandler.VBLANK, (IEflag & 1) == 1); //enable vblank if bit 0 is 1
-        IEflag >>= 1;
-        this.setSpecificEnabled(InterruptHandler.LCDC, (IEflag & 1) == 1); //ditto
-        IEflag >>= 1;
-        this.setSpecificEnabled(InterruptHandler.TIMER_OVERFLOW, (IEflag & 1) == 1);
-        IEflag >>= 1;
-        this.setSpecificEnabled(InterruptHandler.SERIAL_COMPLETION, (IEflag & 1) == 1);
-        IEflag >>= 1;
-        this.setSpecificEnabled(InterruptHandler.JOYPAD, (IEflag & 1) == 1);
+        return vector;
     }
-    
+
     public String toString() {
-        if(!interruptsEnabled){
-            return "IME OFF";
-        }else{
-            return specificEnabled.toString();
-        }
+        return String.format("IME %s, IE %02x, IF %02x", interruptsEnabled ? "ON" : "OFF", enabled, requested);
     }
 }
@@ -4,7 +4,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.Serializable;
 
-public class Joypad implements KeyListener, Serializable {
+public class Joypad implements KeyListener, Serializable, Cloneable {
     
     /**
      * 
@@ -20,6 +20,21 @@ public class Joypad implements KeyListener, Serializable {
     private int down;
     private int left;
     private int right;
+    
+    //bits of a button mask, set when the button is pressed
+    public static final int RIGHT = 0x01;
+    public static final int LEFT = 0x02;
+    public static final int UP = 0x04;
+    public static final int DOWN = 0x08;
+    public static final int A = 0x10;
+    public static final int B = 0x20;
+    public static final int SELECT = 0x40;
+    public static final int START = 0x80;
+    
+    //while latched, keys only update heldKeys and the buttons change when setButtons is called,
+    //so input only changes between frames, which movies rely on
+    private transient volatile boolean latched;
+    private transient volatile int heldKeys;
 
     public Joypad(MMU mmu, InterruptHandler interruptHandler) {
         this.mmu = mmu;
@@ -34,57 +49,122 @@ public class Joypad implements KeyListener, Serializable {
         left = 1;
         right = 1;
     }
+    
+    //copies the button state into a joypad attached to another MMU
+    Joypad fork(MMU mmu, InterruptHandler interruptHandler) {
+        Joypad copy;
+        try {
+            copy = (Joypad) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.mmu = mmu;
+        copy.interruptHandler = interruptHandler;
+        mmu.setJoypad(copy);
+        return copy;
+    }
+    
+    public void setLatched(boolean latched) {
+        this.latched = latched;
+        heldKeys = getButtons();
+    }
+    
+    //the keys held down right now, as a button mask
+    public int getHeldKeys() {
+        return heldKeys;
+    }
+    
+    //the pressed buttons as a mask of the constants above
+    public int getButtons() {
+        return ((right ^ 1) * RIGHT) | ((left ^ 1) * LEFT) | ((up ^ 1) * UP) | ((down ^ 1) * DOWN)
+                | ((a ^ 1) * A) | ((b ^ 1) * B) | ((select ^ 1) * SELECT) | ((start ^ 1) * START);
+    }
+    
+    //presses exactly the buttons in the mask, raising the joypad interrupt if any weren't pressed before
+    public void setButtons(int buttons) {
+        if ((buttons & ~getButtons()) != 0) {
+            interruptHandler.request(InterruptHandler.JOYPAD);
+        }
+        right = (buttons & RIGHT) == 0 ? 1 : 0;
+        left = (buttons & LEFT) == 0 ? 1 : 0;
+        up = (buttons & UP) == 0 ? 1 : 0;
+        down = (buttons & DOWN) == 0 ? 1 : 0;
+        a = (buttons & A) == 0 ? 1 : 0;
+        b = (buttons & B) == 0 ? 1 : 0;
+        select = (buttons & SELECT) == 0 ? 1 : 0;
+        start = (buttons & START) == 0 ? 1 : 0;
+    }
+    
+    private static int buttonForKey(int code) {
+        switch (code) {
+        case KeyEvent.VK_LEFT: return LEFT;
+        case KeyEvent.VK_RIGHT: return RIGHT;
+        case KeyEvent.VK_UP: return UP;
+        case KeyEvent.VK_DOWN: return DOWN;
+        case KeyEvent.VK_Z: return A;
+        case KeyEvent.VK_X: return B;
+        case KeyEvent.VK_ENTER: return START;
+        case KeyEvent.VK_SHIFT:
+        case KeyEvent.VK_BACK_SPACE: return SELECT;
+        default: return 0;
+        }
+    }
+    
     @Override
     public void keyPressed(KeyEvent e) {
         // TODO Auto-generated method stub
         int code = e.getKeyCode();
+        if (latched) {
+            heldKeys |= buttonForKey(code);
+            return;
+        }
         switch (code) {
         case KeyEvent.VK_LEFT:
             if (left == 1) {
-                interruptHandler.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+                interruptHandler.request(InterruptHandler.JOYPAD);
             }
             left = 0;
             break;
         case KeyEvent.VK_RIGHT:
             if (right == 1) {
-                interruptHandler.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+                interruptHandler.request(InterruptHandler.JOYPAD);
             }
             right = 0;
             break;
         case KeyEvent.VK_UP:
             if (up == 1) {
-                interruptHandler.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+                interruptHandler.request(InterruptHandler.JOYPAD);
             }
             up = 0;
             break;
         case KeyEvent.VK_DOWN:
             if (down == 1) {
-                interruptHandler.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+                interruptHandler.request(InterruptHandler.JOYPAD);
             }
             down = 0;
             break;
         case KeyEvent.VK_Z:
             if (a == 1) {
-                interruptHandler.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+                interruptHandler.request(InterruptHandler.JOYPAD);
             }
             a = 0;
             break;
         case KeyEvent.VK_X:
             if (b == 1) {
-                interruptHandler.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+                interruptHandler.request(InterruptHandler.JOYPAD);
             }
             b = 0;
             break;
         case KeyEvent.VK_ENTER:
             if (start == 1) {
-                interruptHandler.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+                interruptHandler.request(InterruptHandler.JOYPAD);
             }
             start = 0;
             break;
         case KeyEvent.VK_SHIFT:
         case KeyEvent.VK_BACK_SPACE:
             if (select == 1) {
-                interruptHandler.issueInterruptIfEnabled(InterruptHandler.JOYPAD);
+                interruptHandler.request(InterruptHandler.JOYPAD);
             }
             select = 0;
             break;
@@ -96,6 +176,10 @@ public class Joypad implements KeyListener, Serializable {
     public void keyReleased(KeyEvent e) {
         // TODO Auto-generated method stub
         int code = e.getKeyCode();
+        if (latched) {
+            heldKeys &= ~buttonForKey(code);
+            return;
+        }
         switch (code) {
         case KeyEvent.VK_LEFT:
             left = 1;
@@ -2,7 +2,7 @@ package org.the429ers.gameboy;
 
 import java.io.Serializable;
 
-public class LCDControl implements Serializable {
+public class LCDControl implements Serializable, Cloneable {
     
     private static final int LCDControlAddress = 0xFF40;
     
@@ -21,6 +21,17 @@ public class LCDControl implements Serializable {
         this.isDisplayEnabled = true;
     }
     
+    public LCDControl fork(MMU mem) {
+        LCDControl copy;
+        try {
+            copy = (LCDControl) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.mem = mem;
+        return copy;
+    }
+    
     public void update() {
         int lcdcontrol = mem.readByte(LCDControlAddress) & 0xFF;
         isDisplayEnabled = BitOps.extract(lcdcontrol, 7, 7) == 1;
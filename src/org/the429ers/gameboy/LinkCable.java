@@ -1,43 +1,238 @@
 package org.the429ers.gameboy;
 
+import java.io.IOException;
 import java.io.Serializable;
 
-public class LinkCable implements Serializable{
+/***
+ *
+ * The serial port, SB (0xFF01) and SC (0xFF02). Writing SC with the start
+ * and internal clock bits sends SB to the other end and finishes the
+ * transfer once a byte's worth of clocks has passed, with SB replaced by
+ * the other end's byte and a serial interrupt. Writing SC with only the
+ * start bit waits for the other end to start a transfer instead.
+ *
+ * Without a transport the cable is unplugged and transfers receive 0xFF.
+ * With one, a transfer whose time is up waits for the other end's reply,
+ * up to REPLY_TIMEOUT_NANOS, so both emulators can run at full speed
+ * without drifting apart. Transfers are numbered and replies carry the
+ * number of the transfer they answer, so a reply that arrives after its
+ * transfer timed out isn't taken for the next one's.
+ *
+ * A transport that throws is dropped: getTransport() returns null from then
+ * on and getFailure() says why. Closing it is up to whoever plugged it in.
+ *
+ */
+public class LinkCable implements Serializable, Cloneable {
     /**
-     * 
+     *
      */
     private static final long serialVersionUID = 6027951294304800594L;
-    private boolean isTransferring;
-    private char currentData;
+
+    //message types, the low 2 bits of the high byte of every message on a transport
+    public static final int DATA = 0x100; //a byte clocked out by the side using its internal clock
+    public static final int REPLY = 0x200; //the byte the other side shifted out in exchange
+    public static final int TYPE_MASK = 0x300;
+    //the upper 6 bits of the high byte number the transfer, which a reply repeats
+    public static final int SEQUENCE_SHIFT = 10;
+    public static final int SEQUENCE_MASK = 0x3f;
+
+    public static final int CYCLES_PER_BYTE = 4096; //8 bits at 8192 Hz
+    public static final int FAST_CYCLES_PER_BYTE = 128; //the CGB's fast clock
+    public static final int POLL_INTERVAL = 456; //how often a transport is checked for bytes, once a line
+    public static final long REPLY_TIMEOUT_NANOS = 1000000000L;
+
     private MMU mem;
     private InterruptHandler interruptHandler;
-    private int counter;
-    
+    private int data; //SB
+    private int control; //SC
+    private int cyclesLeft; //until a transfer with the internal clock is done, 0 if there isn't one
+    private boolean waiting; //a transfer's time is up but the reply hasn't arrived
+    private int reply = -1; //the other end's byte for the current transfer
+    private int untilPoll = POLL_INTERVAL;
+    private int sequence; //the number of the current or last transfer started here
+    private transient long waitStart;
+    private transient SerialListener listener; //null prints to stdout when there's no transport
+    private transient SerialTransport transport;
+    private transient IOException failure; //why the last transport was dropped
+
     public LinkCable(MMU mem, InterruptHandler interruptHandler) {
         this.mem = mem;
         this.interruptHandler = interruptHandler;
+        mem.setLinkCable(this);
+    }
+
+    LinkCable fork(MMU mem, InterruptHandler interruptHandler) {
+        LinkCable copy;
+        try {
+            copy = (LinkCable) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.mem = mem;
+        copy.interruptHandler = interruptHandler;
+        copy.listener = null;
+        copy.transport = null;
+        copy.failure = null;
+        mem.setLinkCable(copy);
+        return copy;
+    }
+
+    public void setListener(SerialListener listener) {
+        this.listener = listener;
+    }
+
+    //where transfers go, null unplugs the cable; only call between instructions
+    public void setTransport(SerialTransport transport) {
+        this.transport = transport;
+        failure = null;
+        untilPoll = POLL_INTERVAL;
+    }
+
+    //null once a transport has thrown, even if one was set
+    public SerialTransport getTransport() {
+        return transport;
     }
-    
-    public void tick() {
-        int serialTransferData = mem.readByte(0xFF01) & 0xFF;
-        int serialTransferControl = mem.readByte(0xFF02) & 0xFF;
-
-        
-        if (serialTransferControl == 0x81 && !isTransferring) {
-            currentData = (char) serialTransferData;
-            //System.out.println("here");
-            System.out.print(currentData);
-            System.out.flush();
-            isTransferring = true;
-        }
-        if (isTransferring){
-            counter++;
-            if (counter == 8) {
-                counter = 0;
-                isTransferring = false;
-                mem.writeByte(0xFF02, 0x1);
-                //interruptHandler.issueInterruptIfEnabled(InterruptHandler.SERIAL_COMPLETION);
+
+    //what the transport that was dropped threw, or null if it wasn't
+    public IOException getFailure() {
+        return failure;
+    }
+
+    public int readSB() {
+        return data;
+    }
+
+    public void writeSB(int value) {
+        data = value & 0xff;
+    }
+
+    public int readSC() {
+        return control | (mem.isCGB() ? 0x7c : 0x7e); //unused bits read as 1
+    }
+
+    public void writeSC(int value) {
+        control = value & 0x83;
+        if ((control & 0x80) == 0) {
+            //clearing the start bit abandons a transfer, without an interrupt, and its reply is ignored
+            cyclesLeft = 0;
+            waiting = false;
+            reply = -1;
+        } else if ((control & 0x01) != 0 && !isTransferring()) {
+            if (listener != null) {
+                listener.byteSent(data);
+            } else if (transport == null) {
+                System.out.print((char) data);
+                System.out.flush();
             }
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            send(DATA | sequence << SEQUENCE_SHIFT | data);
+            cyclesLeft = mem.isCGB() && (control & 0x02) != 0 ? FAST_CYCLES_PER_BYTE : CYCLES_PER_BYTE;
+            reply = -1;
+        }
+    }
+
+    private boolean isTransferring() {
+        return cyclesLeft > 0 || waiting;
+    }
+
+    private void send(int message) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.send(message);
+        } catch (IOException e) {
+            drop(e);
+        }
+    }
+
+    private void drop(IOException e) {
+        e.printStackTrace();
+        transport = null;
+        failure = e;
+    }
+
+    //handles everything the other end has sent
+    private void poll() {
+        try {
+            int message;
+            while (transport != null && (message = transport.receive()) != -1) {
+                int value = message & 0xff;
+                int number = message >> SEQUENCE_SHIFT & SEQUENCE_MASK;
+                if ((message & TYPE_MASK) == DATA) {
+                    send(REPLY | number << SEQUENCE_SHIFT | data);
+                    if (isTransferring()) {
+                        //both sides started a transfer, so each gets the other's byte
+                        if (reply == -1) reply = value;
+                    } else {
+                        //the other end's clock shifts SB even if no transfer was started
+                        data = value;
+                        if ((control & 0x80) != 0) {
+                            control &= 0x7f;
+                            interruptHandler.request(InterruptHandler.SERIAL_COMPLETION);
+                        }
+                    }
+                } else if ((message & TYPE_MASK) == REPLY && isTransferring() && reply == -1 && number == sequence) {
+                    reply = value;
+                }
+            }
+        } catch (IOException e) {
+            drop(e);
+        }
+    }
+
+    private void finishTransfer(int received) {
+        data = received;
+        control &= 0x7f;
+        waiting = false;
+        reply = -1;
+        interruptHandler.request(InterruptHandler.SERIAL_COMPLETION);
+    }
+
+    //called once per clockTick rather than every cycle
+    public void tick(int cycles) {
+        if (transport != null) {
+            untilPoll -= cycles;
+            if (untilPoll <= 0) {
+                untilPoll = POLL_INTERVAL;
+                poll();
+            }
+        }
+        if (cyclesLeft > 0) {
+            cyclesLeft -= cycles;
+            if (cyclesLeft > 0) {
+                return;
+            }
+            cyclesLeft = 0;
+            waiting = true;
+            waitStart = System.nanoTime();
+        }
+        if (waiting) {
+            if (reply == -1 && transport != null && transport.isConnected()) {
+                poll();
+                if (reply == -1 && System.nanoTime() - waitStart < REPLY_TIMEOUT_NANOS) {
+                    return;
+                }
+            }
+            finishTransfer(reply == -1 ? 0xff : reply);
+        }
+    }
+
+    //how many of the next ticks can't finish a transfer or need to check the transport
+    public int quietCycles() {
+        if (waiting) {
+            return 0;
+        }
+        int quiet = cyclesLeft > 0 ? cyclesLeft - 1 : Integer.MAX_VALUE;
+        return transport == null ? quiet : Math.min(quiet, untilPoll - 1);
+    }
+
+    public void skipQuietCycles(int cycles) {
+        if (cyclesLeft > 0) {
+            cyclesLeft -= cycles;
+        }
+        if (transport != null) {
+            untilPoll -= cycles;
         }
     }
 }
@@ -1,25 +1,23 @@
 package org.the429ers.gameboy;
 
-import javax.sound.sampled.SourceDataLine;
 import java.io.Serializable;
 import java.util.Base64;
-import java.util.LinkedList;
-import java.util.List;
 
-public class MMU implements Serializable {
-    private byte[] mem = new byte[0xFFFF+1];
+public class MMU implements Serializable, Cloneable {
+    private PagedMemory mem = new PagedMemory(0xFFFF+1);
     private Cartridge rom;
     //open-source boot roms from https://github.com/LIJI32/SameBoy
     private byte[] bootRom = Base64.getDecoder().decode("Mf7/IQCAIstsKPs+gOAm4BE+8+AS4CU+d+AkPvzgRxEEASEQgBpHzYIAzYIAE3vuNCDyEbEADggaEyIjDSD5PhnqEJkhL5kODD0oCDINIPkuDxj1PpHgQAYtzaMAPoPNqgAGBc2jAD7BzaoABkbNowAhsAHl8SFNAQETABHYAMP+AD4EDgDLIPXLEfHLET0g9XkiIyIjyeUhD//LhstGKPzhyc2XAAUg+sngEz6H4BTJPEK5pbmlQjwAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAADgUA==");
     private byte[] cgbBootRom = Base64.getDecoder().decode("Mf7/r+DB4IAhAIDNYAYm0M1gBiEA/g6gryINIPw+gOAm4BE+8+AS4CU+d+Akze4IPvzgRxEEASEQgBpHzS4GzS4GE3vuNCDyzaEGPgHgT68hAIDNYAYRlgQhgIAOwBoiIxMaIiMTDSD1EQQBDgbFzZIGwQ0g+CPNoQYhwpgGAz4IDhB39T4B4E8+CHev4E/xIjwNIO4REAAZBSDl/jggCSGnmQYBDgcY2hEWBg4IIYH/ry8iIhoTIhoTIq8iIiIiDSDvIYH/FkAeAM2yBj6R4EDN3QYGLc1PBj6DzVkGBgXNTwY+wc1ZBj4e4MLNPgjNQwYhwv81IPTN7wYAAADgUAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAiBY20dvyPIySPVxYyT5wHVlpGTWoFKp1lZk0bxX/l0uQFxA59/aiSU7DaOCL8M4MKei3hppSAZ1xnL1dbWc/a7NGKKXG0ydhGGZqvw30s0YopcbTJ2EYZmq/DfSzAAQFIyIDHw8KBRMkhyUeLBUgHxQFIQ0OBR0FEgkDAhoZGSkqGi0qLSQmGioeKSIiBSoGBSEZKiooAhAZKioFACckFhkGIAwkCycSJxgfMhEuBhsALykpAAATIhcSHUJFRkFBUkJFS0VLIFItVVJBUiBJTkFJTElDRSBSICDokJCQoKCgwMDASEhIAAAA2NjYKCgoYGBg0NDQgEBAIODgIBAQGCAgIOjo4CDgEIgQgIBAICA4ICCQICCgmJhIHh5YiIgQICAQICAY4OAAGBgAAAAIkLCQoLCgwLDAgLBAiCBo3gBw3iB4mLBIgOBQILjgiLAQIAAQIOAY4BgAGOAgqOAgGOAAyBjgAOBAIBjg4BgwIODo8PDw+Pj44CAIAAAQ/3+/MtAAAACfY3lCsBXLBP9/MW5KRQAA/3/vGwACAAD/fx9C8hwAAP9/lFJKKQAA/3//Ay8BAAD/f+8D1gEAAP9/tULIPQAAdH7/A4ABAAD/Z6x3ExprLdZ+/0t1IQAA/1NfSlJ+AAD/T9J+TDrgHO0D/39fJQAAagMfAv8D/3//f98BEgEAAB8jXwPyAAkA/3/qAx8BAACfKRoADAAAAP9/fwIfAAAA/3/gAwYCIAH/f+t+HwAAfP9//z8Afh8A/3//Ax8AAAD/Ax8ADAAAAP9/PwOTAQAAAAAAQn8D/3//f4x+AHwAAP9/7xuAYQAA/3/qf199AAB4R5Ayhx1hCAEwBQgAKCsDBgccMTM0NTY8QrmluaVCPAABBw8fHz48APj+//4cAAAAAAEBAwMHBwDw8PDw8Pj4AAcHBwcHBw8A4ODg8PDw8AAPDx8fPz9/AM/Pz8/P3p4A/////wAAAACPjw8PHx4eAPz///8PBwcAAACBg4ePjwAf////4MCAAIfj8/n9fT4A4ODg8PDx+QA/Pnx4+PDgPj8fDwcBAAAAAMDw+Px8PA8PHx4+PHx/+Hh8PDw8Pv4PDw8PDx8fHnBweHh5eTs/d/f35+fHz8+enp+fn5+evAAA/v7+/gAAHh4fPz8/PDwHD/74/v8PB58fHj48PDy8AAAAAAAAAAA+Hh4eHj48fPt/fz8/Ph4e4MCAgAAAAAAAAAAwf/9/Hzw8fPn58+OHf///8ODgwMD+/v8fDw8PDx4eHh4ePLy8Pz8/Pz8eHhyPjw8PDx4eHjw8PDw/f39/AAAAAP7+/v48PDx8f39/fwcHDx///vzwvr6fHw8HAwAAAAGD/////Hz4+PDgwIAAHj48PDw8PDwAAAAAAAAAAP9/T3fHIp8DfQEdJDhtAnH/f78y0AAAAD4EDgDLIPXLEfHLET0g9XkiIyIjyeUhD//LhstGKPzhyc0+CM1DBgUg98ngEz6H4BTJIstsKPvJGqFHHBwaHR2hyzewy0EoAss3IyLJDvDNZgYOD81mBhwO8M1mBg4PzWYGHMnNewZ7xhZfzXsGe9YWX8kRjgQOCBoTIiMNIPnJDmoYAg5oPoCz4gwq4hUg+8khwJgOA37+DygIPHfmB/4BKAMjGPB99h9vIw3IGOc+AeBPFhoGAs1PBs2/BhUg9cnNCQjNLAiv4E8v4ADNLAgRVv8uDfpDAct/zCMH4EzwgEfwwacgBq9PPhFhyc0jB+BMPgHJPgHgbM1RB8t/xNMI5n9H8MGnKAohfQRPBgAJfhgBeM1DBs2hBz4EFgAeCC58ySFLAX7+MygG/gEgQhgMLkQq/jAgOX7+MSA0LjQOEAYAKoBHDSD6IQACff5eKCAquCD3fdZBOA7lfcZ6b37hT/o3Abkg5H3GXW944IB+ya/JR4CAIdkCBgBPCR4AKuUhfgMGAE8JFgjNrgbhy1sgBB4IGOkqIX4DBgBPCRYIHgDNsgbJKl86VwEhBHvmH/4fIALLgXvm4P7gIAl65gP+AyACy6l65nz+fCACy5DlYmsJVF3heyJ6IskGIA4gIYH/xc3UB8ENIPjNQwbNQwYhgf8WQB4AzbIGBcgY3yFR/z7QIq8iPpgiPqAiPhIiyT4g4ADwAC/mD8jFDgAMHzD8PhDgAPAALxcX5gyBR/DBT3jgwbnByPXlxdUhfQRPBgAJfkeAgCHbAgYATwl+IX8DBgBPCTr+fyACIyP1KuUhgf/NyAjh4IMq5SGC/83ICOHghPEoAiMjKuC7KuC8KuCFfuCGzUMGIYH/FkAeAM2yBj4e4MLRweHxyREIAA4IdxkNIPvJ9c1DBj4Z6hCZIS+ZDgw9KAgyDSD5Lg8Y9fHJITD/rw4QIi8NIPvJAAAAAAAA");
-    private byte[][] wram = new byte[8][0x1000]; 
+    private PagedMemory wram = new PagedMemory(8 * WRAM_BANK_SIZE);
     private int wramBank = 1;
-    private int[] vramBank0 = new int[0x2000];
-    private int[] vramBank1 = new int[0x2000];
+    private PagedMemory vram = new PagedMemory(2 * VRAM_BANK_SIZE);
     private boolean isCGB;
     
     public static final int IF_REGISTER = 0xFF0F;
     public static final int IE_REGISTER = 0xFFFF;
+    public static final int SB_REGISTER = 0xFF01;
+    public static final int SC_REGISTER = 0xFF02;
     public static final int DIV_REGISTER = 0xFF04;
     public static final int TIMA_REGISTER = 0xFF05;
     public static final int TMA_REGISTER = 0xFF06;
@@ -33,6 +31,8 @@ public class MMU implements Serializable {
     public static final int CGB_DMA_DESTINATION_HIGH = 0xFF53;
     public static final int CGB_DMA_DESTINATION_LOW = 0xFF54;
     public static final int CGB_DMA_START = 0xFF55;
+    public static final int WRAM_BANK_SIZE = 0x1000;
+    public static final int VRAM_BANK_SIZE = 0x2000;
     
     private int dmaSourceHigh;
     private int dmaSourceLow;
@@ -46,9 +46,15 @@ public class MMU implements Serializable {
     
     boolean DEBUG = false;
     private boolean bootRomEnabled = true;
+    private Emulator emulator;
     private CPU cpu;
     private IPPU ppu;
     private transient Joypad joypad;
+    private LinkCable cable;
+    private transient Watchpoints watchpoints;
+    private transient TraceRecorder tracer;
+    private transient EmulatorMetrics metrics;
+    private boolean[] watchedPages = new boolean[0x10000 >> PagedMemory.PAGE_BITS];
     private int currentVRAMBank = 0;
     private ColorPaletteManager backgroundManager;
     private ColorPaletteManager spritePaletteManager;
@@ -68,6 +74,14 @@ public class MMU implements Serializable {
         this.spritePaletteManager = sprite;
     }
     
+    public void setEmulator(Emulator emulator) {
+        this.emulator = emulator;
+    }
+    
+    public Emulator getEmulator() {
+        return this.emulator;
+    }
+    
     public void setCPU(CPU cpu){
         this.cpu = cpu;
     }
@@ -75,11 +89,30 @@ public class MMU implements Serializable {
     public CPU getCPU() {
         return this.cpu;
     }
+    
+    //sets the interrupt's bit in IF, for devices that only know the MMU
+    public void requestInterrupt(int handle) {
+        cpu.interruptHandler.request(handle);
+    }
 
     public Joypad getJoypad() {
         return joypad;
     }
 
+    public void setTraceRecorder(TraceRecorder tracer) {
+        this.tracer = tracer;
+    }
+
+    public void setMetrics(EmulatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    //CPU reads and writes to watched pages are reported to the watchpoints
+    public void setWatchpoints(Watchpoints watchpoints) {
+        this.watchpoints = watchpoints;
+        this.watchedPages = watchpoints == null ? new boolean[0x10000 >> PagedMemory.PAGE_BITS] : watchpoints.getWatchedPages();
+    }
+
     public void setPPU(IPPU ppu) {
         this.ppu = ppu;
     }
@@ -92,6 +125,16 @@ public class MMU implements Serializable {
         return this.rom;
     }
     
+    //all 8 WRAM banks, including the ones a DMG can't switch to
+    PagedMemory getWRAM() {
+        return this.wram;
+    }
+    
+    //the flat address space, which is where HRAM and IO registers are kept
+    PagedMemory getMemory() {
+        return this.mem;
+    }
+    
     // Load rom from disk
     public MMU(String fileName) {
         this.rom = Cartridge.fromFile(fileName);
@@ -99,10 +142,30 @@ public class MMU implements Serializable {
         this.soundChip = new SoundChip();
     }
     
-    public MMU(String fileName, SourceDataLine sourceDL){
+    public MMU(String fileName, AudioSink audioSink){
         this.rom = Cartridge.fromFile(fileName);
         this.isCGB = rom != null && rom.isGBC();
-        this.soundChip = new SoundChip(sourceDL);
+        this.soundChip = new SoundChip(audioSink);
+    }
+    
+    //copies the memory owned by the MMU; the emulator reattaches the CPU, PPU and joypad
+    MMU fork() {
+        MMU copy;
+        try {
+            copy = (MMU) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.mem = mem.fork();
+        copy.wram = wram.fork();
+        copy.vram = vram.fork();
+        copy.rom = rom == null? null : rom.fork();
+        copy.soundChip = soundChip.fork();
+        copy.joypad = null;
+        copy.setWatchpoints(null);
+        copy.tracer = null;
+        copy.metrics = null;
+        return copy;
     }
     
     public void cleanUp() {
@@ -111,6 +174,10 @@ public class MMU implements Serializable {
         }
     }
     
+    public void setLinkCable(LinkCable cable) {
+        this.cable = cable;
+    }
+    
     public void setJoypad(Joypad joypad) {
         this.joypad = joypad;
     }
@@ -121,12 +188,7 @@ public class MMU implements Serializable {
         }
         
         int index = location % 0x8000;
-        if (bank == 0) {
-            return vramBank0[index];
-        }
-        else {
-            return vramBank1[index];
-        }
+        return vram.read(bank * VRAM_BANK_SIZE + index);
     }
     
     public void writeByteToVRAM(int location, int data, int bank) {
@@ -137,13 +199,7 @@ public class MMU implements Serializable {
             tileSetManager.updateTileSets(location, data, 0);
         }
         int index = location % 0x8000;
-        if (bank == 0) {
-            // Write to bank one
-            vramBank0[index] = data;
-        }
-        else {
-            vramBank1[index] = data;
-        }
+        vram.write(bank * VRAM_BANK_SIZE + index, data);
     }
     
     private boolean withinCgbBootRom(int location){
@@ -152,8 +208,19 @@ public class MMU implements Serializable {
     }
     
     public int slowReadByte(int location) {
-        GameBoy.getInstance().clockTick(4);
-        return readByte(location);
+        emulator.clockTick(4);
+        int value = readByte(location);
+        if (metrics != null) metrics.read(location);
+        if (watchedPages[(location & 0xffff) >> PagedMemory.PAGE_BITS]) {
+            checkWatchpoints(location, Watchpoints.READ, value);
+        }
+        return value;
+    }
+
+    private void checkWatchpoints(int location, int mode, int value) {
+        if (watchpoints != null) {
+            watchpoints.check(location & 0xffff, mode, value, cpu.regs.PC.read());
+        }
     }
     
     public int readByte(int location) {
@@ -184,16 +251,16 @@ public class MMU implements Serializable {
         
         if (location >= 0xC000 && location <= 0xCFFF) {
             int wramLocation = location % 0xC000;
-            return wram[0][wramLocation] & 0xFF;
+            return wram.read(wramLocation);
         }
         
         if (location >= 0xD000 && location <= 0xDFFF) {
             int wramLocation = location % 0xD000;
             if (isCGB) {
-                return wram[wramBank][wramLocation] & 0xFF;
+                return wram.read(wramBank * WRAM_BANK_SIZE + wramLocation);
             }
             else {
-                return wram[1][wramLocation] & 0xFF;
+                return wram.read(WRAM_BANK_SIZE + wramLocation);
             }
         }
         
@@ -217,13 +284,29 @@ public class MMU implements Serializable {
             return cpu.timer.getTIMA();
         }
         
+        if(location == IF_REGISTER){
+            return cpu.interruptHandler.readIF();
+        }
+        
+        if(location == SB_REGISTER && cable != null){
+            return cable.readSB();
+        }
+        
+        if(location == SC_REGISTER && cable != null){
+            return cable.readSC();
+        }
+        
+        if(location == IE_REGISTER){
+            return cpu.interruptHandler.readIE();
+        }
+        
         if(location == 0xFF00){ //joypad input
             
-            if (BitOps.extract(mem[0xFF00] & 0xff, 5, 5) == 0) {
+            if (BitOps.extract(mem.read(0xFF00), 5, 5) == 0) {
                 return joypad.readButtons();
             }
             
-            if(BitOps.extract(mem[0xFF00] & 0xff, 4, 4) == 0) {
+            if(BitOps.extract(mem.read(0xFF00), 4, 4) == 0) {
                 return joypad.readDirections();
             }
             else {
@@ -231,7 +314,7 @@ public class MMU implements Serializable {
             }
         }
         
-        return mem[location] & 0xff;
+        return mem.read(location);
     }
     
     public void memdump(int startLocation, int numBytes){
@@ -271,7 +354,14 @@ public class MMU implements Serializable {
     }
 
     public void slowWriteByte(int location, int toWrite) {
-        GameBoy.getInstance().clockTick(4);
+        emulator.clockTick(4);
+        if (watchedPages[(location & 0xffff) >> PagedMemory.PAGE_BITS]) {
+            checkWatchpoints(location, Watchpoints.WRITE, toWrite);
+        }
+        if (tracer != null) {
+            tracer.recordWrite(location, toWrite);
+        }
+        if (metrics != null) metrics.write(location);
         writeByte(location, toWrite);
     }
     
@@ -281,7 +371,7 @@ public class MMU implements Serializable {
         }
         
         if(location < 0x7fff){
-            if(rom != null) rom.writeByte(location, toWrite);
+            if(rom != null) writeBankRegister(location, toWrite);
             return;
         }
         
@@ -330,10 +420,19 @@ public class MMU implements Serializable {
                 bytesToTransfer *= 0x10;
                 // Do general purpose DMA
                 if (!hBlankDMA) {
+                    FlightEvents.Dma event = new FlightEvents.Dma();
+                    event.begin();
                     for (int i = 0; i < bytesToTransfer; i++) {
                         this.writeByte(dmaDest, this.readByte(dmaSource + i));
                         dmaDest++;
                     }
+                    if (event.shouldCommit()) {
+                        event.kind = "General purpose";
+                        event.source = dmaSource;
+                        event.destination = dmaDest - bytesToTransfer;
+                        event.length = bytesToTransfer;
+                        event.commit();
+                    }
                     bytesToTransfer = 0;
                 }
             }
@@ -357,7 +456,7 @@ public class MMU implements Serializable {
         }
 
         if (location == 0xFF70) {
-            wramBank = toWrite;
+            wramBank = toWrite & 0x7;
             if (wramBank == 0) {
                 wramBank = 1;
             }
@@ -366,36 +465,56 @@ public class MMU implements Serializable {
 
         if (location >= 0xC000 && location <= 0xCFFF) {
             int wramLocation = location % 0xC000;
-            wram[0][wramLocation] = (byte) (toWrite & 0xFF);
+            wram.write(wramLocation, toWrite);
             return;
         }
 
         if (location >= 0xD000 && location <= 0xDFFF) {
             int wramLocation = location % 0xD000;
             if (isCGB) {
-                wram[wramBank][wramLocation] = (byte) (toWrite & 0xFF);
+                wram.write(wramBank * WRAM_BANK_SIZE + wramLocation, toWrite);
             } else {
-                wram[1][wramLocation] = (byte) (toWrite & 0xFF);
+                wram.write(WRAM_BANK_SIZE + wramLocation, toWrite);
             }
             return;
         }
         
         if(location == IF_REGISTER) { // IF register
-            boolean interrupted = cpu.interruptHandler.handleIF(toWrite);
-            if (interrupted) return;
+            cpu.interruptHandler.writeIF(toWrite);
+            return;
         }
         
         if(location == IE_REGISTER) { //IE register
-            cpu.interruptHandler.handleIE(toWrite);
+            cpu.interruptHandler.writeIE(toWrite);
+            return;
+        }
+        
+        if(location == SB_REGISTER && cable != null) {
+            cable.writeSB(toWrite);
+            return;
+        }
+        
+        if(location == SC_REGISTER && cable != null) { //starts transfers
+            cable.writeSC(toWrite);
+            return;
         }
         
         if(location == DMA_REGISTER) { //DMA transfer register
             int sourceBegin = toWrite << 8;
             int destBegin = 0xfe00;
+            FlightEvents.Dma event = new FlightEvents.Dma();
+            event.begin();
             for(int i = 0; i < 256; i++){
                 //mem[destBegin + i] = mem[sourceBegin+i];
                 this.writeByte(destBegin + i, this.readByte(sourceBegin + i));
             }
+            if (event.shouldCommit()) {
+                event.kind = "OAM";
+                event.source = sourceBegin;
+                event.destination = destBegin;
+                event.length = 256;
+                event.commit();
+            }
             
             //System.out.printf("DMA transfer requested from %x complete from %x\n", cpu.regs.PC.read(), toWrite);
         }
@@ -420,31 +539,17 @@ public class MMU implements Serializable {
             ppu.setLYCompare(toWrite);
         }
         
-        if(location >= 0xff10 && location <= 0xff14){
-            soundChip.square1.handleByte(location - 0xff10, toWrite);
-        }else if(location >= 0xff15 && location <= 0xff19){
-            soundChip.square2.handleByte(location - 0xff15, toWrite);
-        }else if(location >= 0xff1a && location <= 0xff1e){
-            soundChip.waveChannel.handleByte(location - 0xff1a, toWrite);
-        }else if(location >= 0xff1f && location <= 0xff23){
-            soundChip.noiseChannel.handleByte(location - 0xff1f, toWrite);
+        if(location >= 0xff10 && location <= 0xff3f){
+            soundChip.writeRegister(location, toWrite, emulator == null ? 0 : emulator.getTotalClocks());
         }
         
-        if(location == STEREO_SOUND_REGISTER) {
-            soundChip.handleStereo(toWrite);
-        }
-        
-        if(location >= 0xff30 && location <= 0xff3f){
-            soundChip.waveChannel.handleWaveByte(location- 0xff30, toWrite);
-        }
-        
-        mem[location] = (byte)(toWrite & 0xFF);
+        mem.write(location, toWrite);
         
         if(DEBUG && location == 0xff44){
-            System.out.printf("Wrote to LY: %x\n", mem[location] & 0xff);
+            System.out.printf("Wrote to LY: %x\n", mem.read(location));
         }
         if(DEBUG && location == 0xFF42) {
-            System.out.printf("Wrote to Scroll Y: %x\n", mem[location] & 0xff);
+            System.out.printf("Wrote to Scroll Y: %x\n", mem.read(location));
         }
     }
     
@@ -454,12 +559,44 @@ public class MMU implements Serializable {
         writeByte(location + 1, toWrite >> 8);
     }
     
+    //writes to the cartridge's bank registers, recording a flight event when the banks change
+    private void writeBankRegister(int location, int toWrite) {
+        FlightEvents.BankSwitch event = new FlightEvents.BankSwitch();
+        if (!event.isEnabled()) {
+            rom.writeByte(location, toWrite);
+            return;
+        }
+        int romBank = rom.getRomBank();
+        int ramBank = rom.getRamBank();
+        rom.writeByte(location, toWrite);
+        if (rom.getRomBank() != romBank) {
+            event.memory = "ROM";
+            event.from = romBank;
+            event.to = rom.getRomBank();
+            event.commit();
+        } else if (rom.getRamBank() != ramBank) {
+            event.memory = "RAM";
+            event.from = ramBank;
+            event.to = rom.getRamBank();
+            event.commit();
+        }
+    }
+    
     public void hBlankDMA() {
         if (hBlankDMA) {
+            FlightEvents.Dma event = new FlightEvents.Dma();
+            event.begin();
+            if (event.shouldCommit()) {
+                event.kind = "HBlank";
+                event.source = dmaSource;
+                event.destination = dmaDest;
+                event.length = 16;
+            }
             for (int i = 0; i < 16; i++) {
                 this.writeByte(dmaDest, this.readByte(dmaSource + i));
                 dmaDest++;
             }
+            event.commit();
             dmaSource += 16;
             bytesToTransfer -= 16;
             if (bytesToTransfer == 0) {
@@ -522,36 +659,4 @@ public class MMU implements Serializable {
             writeByte(location + i, sequence[i]);
         }
     }
-    
-    public boolean match(int location, byte[] sequence) {
-        for(int i = 0; i < sequence.length; i++){
-            if(location + i > 0xffff) {
-                return false;
-            }
-            if(readByte(location + i) != sequence[i]) {
-                return false;
-            }
-        }
-        return true;
-    }
-    
-    public List<Integer> search(byte[] sequence) {
-        LinkedList<Integer> candidates = new LinkedList<>();
-        for(int i = 0; i <= 0xffff; i++) {
-            if (match(i, sequence)) {
-                candidates.addLast(i);
-            }
-        }
-        return candidates;
-    }
-    
-    public List<Integer> filter(List<Integer> candidates, byte[] sequence) {
-        LinkedList<Integer> result = new LinkedList<>();
-        for(int location : candidates) {
-            if(match(location, sequence)) {
-                result.add(location);
-            }
-        }
-        return result;
-    }
 }
@@ -7,7 +7,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.InvalidParameterException;
 
-class Mbc1 implements Cartridge {
+class Mbc1 implements Cartridge, Cloneable {
     /**
      * 
      */
@@ -24,7 +24,7 @@ class Mbc1 implements Cartridge {
     private String fileName;
     private boolean isGBC;
     private byte[][] banks;
-    private byte[] ram;
+    private PagedMemory ram;
     int currentBank = 1;
     
     public Mbc1(byte[] rom, String fileName){
@@ -37,7 +37,7 @@ class Mbc1 implements Cartridge {
         for(int i = 0; i < rom.length; i++){
             banks[i / BANK_SIZE][i % BANK_SIZE] = rom[i];
         }
-        ram = new byte[0xFFFF];
+        ram = new PagedMemory(0xFFFF);
         hasBattery = rom[0x0147] == 0x03;
         if (hasBattery) {
             File ramData = new File(this.fileName);
@@ -45,7 +45,9 @@ class Mbc1 implements Cartridge {
                 try {
                     System.out.println("found data");
                     FileInputStream ramInput = new FileInputStream(ramData);
-                    ramInput.read(ram);
+                    byte[] ramBytes = new byte[ram.size()];
+                    int bytesRead = Math.max(0, ramInput.read(ramBytes));
+                    ram.copyFrom(ramBytes, 0, 0, bytesRead);
                     ramInput.close();
                 } catch (IOException e) {
                     // TODO Auto-generated catch block
@@ -56,7 +58,7 @@ class Mbc1 implements Cartridge {
                 try {
                     ramData.createNewFile();
                     FileOutputStream out = new FileOutputStream(ramData);
-                    for (int i = 0; i < ram.length; i++) {
+                    for (int i = 0; i < ram.size(); i++) {
                         out.write(0);
                     }
                 } catch (IOException e) {
@@ -73,7 +75,7 @@ class Mbc1 implements Cartridge {
         
         if (location >= 0xA000 && location <= 0xBFFF) {
             int ramLocation = (ramBank * RAM_BANK_SIZE) + location % 0xA000;
-            return ram[ramLocation] & 0xFF;
+            return ram.read(ramLocation);
         }
         
         if(location < BANK_SIZE){
@@ -102,7 +104,7 @@ class Mbc1 implements Cartridge {
         
         if (location >= 0xA000 && location <= 0xBFFF && ramEnabled) {
             int ramLocation = (ramBank * RAM_BANK_SIZE) + location % 0xA000;
-            ram[ramLocation] = (byte) toWrite;
+            ram.write(ramLocation, toWrite);
         }
         
         // Either ram bank number or upper 2 bits of rom bank number
@@ -117,13 +119,45 @@ class Mbc1 implements Cartridge {
         }
     }
 
+    @Override
+    public PagedMemory getRam() {
+        return ram;
+    }
+
+    @Override
+    public int getRomBank() {
+        return currentBank % banks.length;
+    }
+
+    @Override
+    public int getRamBank() {
+        return ramBank;
+    }
+    
+    @Override
+    public int getRamBankSize() {
+        return RAM_BANK_SIZE;
+    }
+    
+    @Override
+    public Cartridge fork() {
+        Mbc1 copy;
+        try {
+            copy = (Mbc1) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.ram = ram.fork();
+        return copy;
+    }
+
     @Override
     public void cleanUp() {
         // Write to save file
         if (hasBattery) {
             try {
                 FileOutputStream cartridgeRam = new FileOutputStream(this.fileName);
-                cartridgeRam.write(ram);
+                cartridgeRam.write(ram.toByteArray());
                 cartridgeRam.close();
                 //System.out.println("wrote to save file");
                 
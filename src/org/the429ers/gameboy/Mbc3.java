@@ -7,7 +7,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.InvalidParameterException;
 
-public class Mbc3 implements Cartridge{
+public class Mbc3 implements Cartridge, Cloneable {
 
     /**
      * 
@@ -26,7 +26,7 @@ public class Mbc3 implements Cartridge{
     private String fileName;
     
     private byte[][] banks;
-    private byte[] ram;
+    private PagedMemory ram;
     int currentBank = 1;
     
     public Mbc3(byte[] rom, String fileName) {
@@ -39,7 +39,7 @@ public class Mbc3 implements Cartridge{
         for(int i = 0; i < rom.length; i++){
             banks[i / BANK_SIZE][i % BANK_SIZE] = rom[i];
         }
-        ram = new byte[0xFFFF];
+        ram = new PagedMemory(0xFFFF);
         hasBattery = (rom[0x0147] == 0x0F) || (rom[0x0147] == 0x10) || (rom[0x147] == 0x13);
         hasRam = (rom[0x0147] == 0x10) || (rom[0x0147] == 0x12) || (rom[0x147] == 0x13);
         if (hasBattery) {
@@ -48,7 +48,9 @@ public class Mbc3 implements Cartridge{
                 try {
                     //System.out.println("found data");
                     FileInputStream ramInput = new FileInputStream(ramData);
-                    ramInput.read(ram);
+                    byte[] ramBytes = new byte[ram.size()];
+                    int bytesRead = Math.max(0, ramInput.read(ramBytes));
+                    ram.copyFrom(ramBytes, 0, 0, bytesRead);
                     ramInput.close();
                 } catch (IOException e) {
                     // TODO Auto-generated catch block
@@ -59,7 +61,7 @@ public class Mbc3 implements Cartridge{
                 try {
                     ramData.createNewFile();
                     FileOutputStream out = new FileOutputStream(ramData);
-                    for (int i = 0; i < ram.length; i++) {
+                    for (int i = 0; i < ram.size(); i++) {
                         out.write(0);
                     }
                 } catch (IOException e) {
@@ -83,7 +85,7 @@ public class Mbc3 implements Cartridge{
                 }
                 //System.out.println("read ram");
                 int ramLocation = (ramBank * RAM_BANK_SIZE) + location % 0xA000;
-                return ram[ramLocation] & 0xFF;
+                return ram.read(ramLocation);
             }
             else {
                 return 0xFF;
@@ -117,7 +119,7 @@ public class Mbc3 implements Cartridge{
             if (ramBank < 0x8) {
                 //System.out.println("wrote to ram");
                 int ramLocation = (ramBank * RAM_BANK_SIZE) + (location % 0xA000);
-                ram[ramLocation] = (byte) toWrite;
+                ram.write(ramLocation, toWrite);
             }
             else {
                 //System.out.println("wrote rtc");
@@ -152,6 +154,38 @@ public class Mbc3 implements Cartridge{
         
     }
 
+    @Override
+    public PagedMemory getRam() {
+        return ram;
+    }
+
+    @Override
+    public int getRomBank() {
+        return currentBank;
+    }
+
+    @Override
+    public int getRamBank() {
+        return ramBank;
+    }
+    
+    @Override
+    public int getRamBankSize() {
+        return RAM_BANK_SIZE;
+    }
+    
+    @Override
+    public Cartridge fork() {
+        Mbc3 copy;
+        try {
+            copy = (Mbc3) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.ram = ram.fork();
+        return copy;
+    }
+
     @Override
     public void cleanUp() {
         // TODO Auto-generated method stub
@@ -159,7 +193,7 @@ public class Mbc3 implements Cartridge{
         if (hasBattery) {
             try {
                 FileOutputStream cartridgeRam = new FileOutputStream(this.fileName);
-                cartridgeRam.write(ram);
+                cartridgeRam.write(ram.toByteArray());
                 cartridgeRam.close();
                 //System.out.println("wrote to save file");
                 
@@ -9,12 +9,14 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.security.InvalidParameterException;
 
-public class Mbc5 implements Cartridge {
+public class Mbc5 implements Cartridge, Cloneable {
     /**
      * 
      */
     private static final long serialVersionUID = -206354286731307487L;
     public static final int BANK_SIZE = 0x4000;
+    private static final int RAM_BANK_SIZE = 0x2000;
+    private static final int NUM_RAM_BANKS = 16;
     
     private boolean ramEnabled;
     private boolean hasBattery;
@@ -22,7 +24,7 @@ public class Mbc5 implements Cartridge {
     private String fileName;
     private boolean isGBC;
     private byte[][] banks;
-    private byte[][] ram;
+    private PagedMemory ram;
     int currentBank = 1;
     
     public Mbc5(byte[] rom, String fileName){
@@ -35,7 +37,7 @@ public class Mbc5 implements Cartridge {
         for(int i = 0; i < rom.length; i++){
             banks[i / BANK_SIZE][i % BANK_SIZE] = rom[i];
         }
-        ram = new byte [16][2 << 20];
+        ram = new PagedMemory(NUM_RAM_BANKS * RAM_BANK_SIZE);
         hasBattery = rom[0x0147] == 0x1B || rom[0x147] == 0x1E || true;
         if (hasBattery) {
             File ramData = new File(this.fileName);
@@ -44,7 +46,10 @@ public class Mbc5 implements Cartridge {
                     System.out.println("found data");
                     FileInputStream ramInput = new FileInputStream(ramData);
                     ObjectInputStream objectIn = new ObjectInputStream(ramInput);
-                    ram = (byte[][]) objectIn.readObject();
+                    byte[][] savedBanks = (byte[][]) objectIn.readObject();
+                    for (int i = 0; i < Math.min(savedBanks.length, NUM_RAM_BANKS); i++) {
+                        ram.copyFrom(savedBanks[i], 0, i * RAM_BANK_SIZE, Math.min(savedBanks[i].length, RAM_BANK_SIZE));
+                    }
                     ramInput.close();
                 } catch (IOException e) {
                     // TODO Auto-generated catch block
@@ -58,7 +63,7 @@ public class Mbc5 implements Cartridge {
                 try {
                     ramData.createNewFile();
                     FileOutputStream out = new FileOutputStream(ramData);
-                    for (int i = 0; i < ram.length; i++) {
+                    for (int i = 0; i < NUM_RAM_BANKS; i++) {
                         out.write(0);
                     }
                     out.close();
@@ -76,7 +81,7 @@ public class Mbc5 implements Cartridge {
         
         if (location >= 0xA000 && location <= 0xBFFF) {
             int ramLocation = location % 0xA000;
-            return ram[ramBank][ramLocation] & 0xFF;
+            return ram.read(ramBank * RAM_BANK_SIZE + ramLocation);
         }
         
         if(location < BANK_SIZE){
@@ -109,7 +114,7 @@ public class Mbc5 implements Cartridge {
         
         if (location >= 0xA000 && location <= 0xBFFF && ramEnabled) {
             int ramLocation = location % 0xA000;
-            ram[ramBank][ramLocation] = (byte) toWrite;
+            ram.write(ramBank * RAM_BANK_SIZE + ramLocation, toWrite);
             
         }
         
@@ -120,6 +125,38 @@ public class Mbc5 implements Cartridge {
         
     }
 
+    @Override
+    public PagedMemory getRam() {
+        return ram;
+    }
+
+    @Override
+    public int getRomBank() {
+        return currentBank;
+    }
+
+    @Override
+    public int getRamBank() {
+        return ramBank;
+    }
+    
+    @Override
+    public int getRamBankSize() {
+        return RAM_BANK_SIZE;
+    }
+    
+    @Override
+    public Cartridge fork() {
+        Mbc5 copy;
+        try {
+            copy = (Mbc5) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.ram = ram.fork();
+        return copy;
+    }
+
     @Override
     public void cleanUp() {
         // Write to save file
@@ -127,7 +164,11 @@ public class Mbc5 implements Cartridge {
             try {
                 FileOutputStream cartridgeRam = new FileOutputStream(this.fileName);
                 ObjectOutputStream objectOut = new ObjectOutputStream(cartridgeRam);
-                objectOut.writeObject(ram);
+                byte[][] savedBanks = new byte[NUM_RAM_BANKS][RAM_BANK_SIZE];
+                for (int i = 0; i < NUM_RAM_BANKS; i++) {
+                    ram.copyTo(i * RAM_BANK_SIZE, savedBanks[i], 0, RAM_BANK_SIZE);
+                }
+                objectOut.writeObject(savedBanks);
                 cartridgeRam.close();
                 System.out.println("wrote to save file");
                 
@@ -0,0 +1,149 @@
+package org.the429ers.gameboy;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/***
+ *
+ * Replays an InputMovie, checking every frame's picture and RAM against the
+ * recording. Attach it as the emulator's frame sink and call frameEnded at the
+ * end of every frame, or use play() to run a whole movie headless as fast as
+ * possible, which makes a reproducible benchmark:
+ *
+ * MoviePlayer [-profile name] [-wav file] movie.gbmovie [rom]
+ *
+ * -profile also profiles the guest code, writing name.txt and name.collapsed.
+ * -wav also writes the sound to a WAV file, or to raw PCM if the name ends
+ * in .pcm.
+ *
+ */
+public class MoviePlayer implements FrameSink {
+    private final InputMovie movie;
+    private final Emulator emulator;
+    private final byte[] ramBuffer;
+    private int frame = 0;
+    private long frameHash = InputMovie.NO_HASH;
+    private int firstDivergence = -1;
+    private String divergence;
+
+    public MoviePlayer(InputMovie movie, Emulator emulator) {
+        this.movie = movie;
+        this.emulator = emulator;
+        this.ramBuffer = InputMovie.ramBuffer(emulator.getMMU());
+        if (movie.size() > 0) {
+            emulator.getJoypad().setButtons(movie.getInput(0));
+        }
+    }
+
+    @Override
+    public void frameDone(BufferedImage frame) {
+        frameHash = FrameHashRecorder.hash(frame);
+    }
+
+    public void frameEnded() {
+        if (isFinished()) {
+            return;
+        }
+        if (firstDivergence < 0) {
+            long expectedFrame = movie.getFrameHash(frame);
+            if (expectedFrame != InputMovie.NO_HASH && frameHash != InputMovie.NO_HASH && frameHash != expectedFrame) {
+                firstDivergence = frame;
+                divergence = "picture";
+            } else if (InputMovie.hashRam(emulator.getMMU(), ramBuffer) != movie.getRamHash(frame)) {
+                firstDivergence = frame;
+                divergence = "RAM";
+            }
+        }
+        frameHash = InputMovie.NO_HASH;
+        frame++;
+        if (frame < movie.size()) {
+            emulator.getJoypad().setButtons(movie.getInput(frame));
+        }
+    }
+
+    public boolean isFinished() {
+        return frame >= movie.size();
+    }
+
+    public int getFrame() {
+        return frame;
+    }
+
+    //the first frame that didn't match the recording, or -1 if they all did
+    public int getFirstDivergence() {
+        return firstDivergence;
+    }
+
+    //what differed in the first diverging frame
+    public String getDivergence() {
+        return divergence;
+    }
+
+    //runs the whole movie headless in the color mode it was recorded in, returns the time taken in nanoseconds
+    public long play() {
+        Pallette.colorMode = movie.getColorMode();
+        emulator.setFrameSink(this);
+        emulator.setFrameListener(this::frameEnded);
+        long start = System.nanoTime();
+        while (!isFinished()) {
+            emulator.runFrames(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        emulator.setFrameListener(null);
+        emulator.setFrameSink(null);
+        return elapsed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String profile = null;
+        String wav = null;
+        int first = 0;
+        while (args.length > first + 1 && args[first].startsWith("-")) {
+            if (args[first].equals("-profile")) {
+                profile = args[first + 1];
+            } else if (args[first].equals("-wav")) {
+                wav = args[first + 1];
+            } else {
+                break;
+            }
+            first += 2;
+        }
+        if (args.length <= first || args[first].startsWith("-")) {
+            System.out.println("usage: MoviePlayer [-profile name] [-wav file] movie.gbmovie [rom]");
+            return;
+        }
+        InputMovie movie = InputMovie.load(Paths.get(args[first]));
+        String rom = args.length > first + 1 ? args[first + 1] : movie.getRomName();
+        Emulator emulator = movie.createEmulator(rom);
+        MoviePlayer player = new MoviePlayer(movie, emulator);
+        GuestProfiler profiler = null;
+        if (profile != null) {
+            profiler = new GuestProfiler(emulator.getMMU(), 1);
+            emulator.setProfiler(profiler);
+        }
+        PcmFileSink audio = null;
+        if (wav != null) {
+            audio = new PcmFileSink(Paths.get(wav), SoundChip.AUDIO_FORMAT, !wav.endsWith(".pcm"));
+            emulator.setAudioSink(audio);
+        }
+        long nanos = player.play();
+        if (audio != null) {
+            emulator.setAudioSink(null);
+            audio.close();
+        }
+        if (profiler != null) {
+            emulator.setProfiler(null);
+            profiler.writeReport(Paths.get(profile + ".txt"), GuestProfiler.REPORT_LINES);
+            profiler.writeCollapsedStacks(Paths.get(profile + ".collapsed"));
+        }
+        double seconds = nanos / 1e9;
+        System.out.printf("%d frames in %.3f s, %.1f fps, %.2fx speed%n", movie.size(), seconds,
+                movie.size() / seconds, movie.size() / Emulator.FRAME_RATE / seconds);
+        if (player.getFirstDivergence() >= 0) {
+            System.out.println("Diverged at frame " + player.getFirstDivergence() + " (" + player.getDivergence() + ")");
+            System.exit(1);
+        }
+        System.out.println("Matched the recording");
+    }
+}
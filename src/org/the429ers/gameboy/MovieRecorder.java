@@ -0,0 +1,57 @@
+package org.the429ers.gameboy;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/***
+ *
+ * Records an InputMovie from live keyboard input. The joypad is latched while
+ * recording so buttons only change when a frame ends, at the same points
+ * they will change during playback. Attach it as the emulator's frame sink
+ * and call frameEnded at the end of every frame.
+ *
+ * Frames drawn in the psychedelic color mode, or in another mode than the
+ * one recording started in, can't be drawn the same again, so their
+ * pictures aren't checked.
+ *
+ */
+public class MovieRecorder implements FrameSink {
+    private final Emulator emulator;
+    private final Joypad joypad;
+    private final InputMovie movie;
+    private final byte[] ramBuffer;
+    private int input;
+    private long frameHash = InputMovie.NO_HASH;
+
+    //only start between instructions, since that is where the start state is saved
+    public MovieRecorder(Emulator emulator, String romName) throws IOException {
+        this.emulator = emulator;
+        this.joypad = emulator.getJoypad();
+        this.movie = new InputMovie(romName, Pallette.colorMode, InputMovie.saveState(emulator));
+        this.ramBuffer = InputMovie.ramBuffer(emulator.getMMU());
+        joypad.setLatched(true);
+        input = joypad.getHeldKeys();
+        joypad.setButtons(input);
+    }
+
+    @Override
+    public void frameDone(BufferedImage frame) {
+        int colorMode = Pallette.colorMode;
+        if (colorMode == movie.getColorMode() && colorMode != Pallette.RAINBOW_MODE) {
+            frameHash = FrameHashRecorder.hash(frame);
+        }
+    }
+
+    public void frameEnded() {
+        movie.add(input, frameHash, InputMovie.hashRam(emulator.getMMU(), ramBuffer));
+        frameHash = InputMovie.NO_HASH;
+        input = joypad.getHeldKeys();
+        joypad.setButtons(input);
+    }
+
+    //stops recording and gives live input back to the keyboard
+    public InputMovie finish() {
+        joypad.setLatched(false);
+        return movie;
+    }
+}
@@ -6,7 +6,7 @@ import java.util.Map;
 import java.util.HashMap;
 
 
-public class PPU implements Serializable, IPPU {
+public class PPU implements Serializable, Cloneable, IPPU {
     /**
      * 
      */
@@ -39,6 +39,10 @@ public class PPU implements Serializable, IPPU {
     private boolean vBlank;
     private boolean hBlank;
     private int currentMode = 0;
+    private boolean skipRendering;
+    private transient FrameSink frameSink;
+    private transient EmulatorMetrics metrics;
+    private boolean skippingFrame; //latched at the start of each frame so a frame is never half drawn
     
     /*
     public static final int OAM_SEARCH_LENGTH = 20;
@@ -138,10 +142,45 @@ public class PPU implements Serializable, IPPU {
         this.gbs = gbs;
     }
     
+    public PPU fork(MMU mem) {
+        PPU copy;
+        try {
+            copy = (PPU) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.mem = mem;
+        mem.setPPU(copy);
+        copy.gbs = null;
+        copy.frameSink = null;
+        copy.metrics = null;
+        copy.tileSetManager = tileSetManager.fork();
+        mem.setTileSetManager(copy.tileSetManager);
+        copy.loadTileSets();
+        copy.map = map == null ? null : map.fork(copy.tileSetManager);
+        copy.window = window == null ? null : window.fork(copy.tileSetManager);
+        //sprites only hold tiles that neither side will update in place anymore
+        copy.sprites = new HashMap<>(sprites);
+        copy.frame = IPPU.copyFrame(frame);
+        return copy;
+    }
+    
     public void toggleHBlankIndicator() {
         hBlank = false;
     }
     
+    public void setSkipRendering(boolean skip) {
+        this.skipRendering = skip;
+    }
+    
+    public void setFrameSink(FrameSink sink) {
+        this.frameSink = sink;
+    }
+    
+    public void setMetrics(EmulatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
     public void tick() {
         // Lie to the CPU and pretend we're transfering pixels to the LCD
         if (cycleCount >= PIXEL_TRANSFER_START && cycleCount <= PIXEL_TRANSFER_END) {
@@ -164,6 +203,9 @@ public class PPU implements Serializable, IPPU {
         if (cycleCount == OAM_SEARCH_START) {
             currentMode = OAM_SEARCH_MODE;
             hBlank = false;
+            if (currentY == 0) {
+                skippingFrame = skipRendering;
+            }
             scrollY = mem.readByte(0xFF42);
             if (currentY < ACTUAL_LINES) {
                 int status = mem.readByte(0xFF41) & 0x3F;
@@ -181,18 +223,23 @@ public class PPU implements Serializable, IPPU {
                 largeSpriteMode = false;
             }
             boolean useBackgroundMap0 = BitOps.extract(lcdc, 3, 3) == 0;
-            this.loadMap(useTileSet0, useBackgroundMap0);
-            this.loadTileSets();
             if (currentY == 0) {
                 vBlank = false;
-                this.loadPallettes();
             }
-            //spritesEnabled = BitOps.extract(lcdc, 1, 1) == 1;
-            //if (spritesEnabled) {
-                loadSprites();
-            //}
+            //everything loaded here is only used to compose pixels
+            if (!skippingFrame) {
+                this.loadMap(useTileSet0, useBackgroundMap0);
+                this.loadTileSets();
+                if (currentY == 0) {
+                    this.loadPallettes();
+                }
+                //spritesEnabled = BitOps.extract(lcdc, 1, 1) == 1;
+                //if (spritesEnabled) {
+                    loadSprites();
+                //}
+                loadWindow(useTileSet0, useWindowTileMap0);
+            }
             windowEnabled = BitOps.extract(lcdc, 5, 5) == 1;
-            loadWindow(useTileSet0, useWindowTileMap0);
             windowX = mem.readByte(0xff4b) - 7;
             windowY = mem.readByte(0xff4a);
             currentX = 0;
@@ -207,7 +254,7 @@ public class PPU implements Serializable, IPPU {
         
         
         // Actually transfer pixels
-        if (cycleCount >= PIXEL_TRANSFER_START && cycleCount < PIXEL_TRANSFER_START + 160 && currentY < ACTUAL_LINES) {
+        if (cycleCount >= PIXEL_TRANSFER_START && cycleCount < PIXEL_TRANSFER_START + 160 && currentY < ACTUAL_LINES && !skippingFrame) {
             int yPos = currentY + scrollY;
             int xPos = scrollX + currentX;
             Tile currentTile;
@@ -267,6 +314,7 @@ public class PPU implements Serializable, IPPU {
         }
         // H-Blank Interrupt
         if (cycleCount == H_BLANK_START && currentY < ACTUAL_LINES) {
+            if (metrics != null) metrics.line(skippingFrame);
             if (!vBlank) {
                 hBlank = true;
             }
@@ -294,8 +342,7 @@ public class PPU implements Serializable, IPPU {
         
         //send LCDC interrupt
         if (currentY == LYCompare){
-            int interruptRegister = mem.readByte(0xFF0F) & 0xFE;
-            if(enabled) mem.writeByte(0xFF0F, interruptRegister | 0x02);
+            if(enabled) mem.requestInterrupt(InterruptHandler.LCDC);
         }
 
         mem.writeByte(0xFF41, mem.readByte(0xFF41) & (~3) | currentMode);
@@ -306,13 +353,44 @@ public class PPU implements Serializable, IPPU {
     }
     
     
+    public int quietCycles() {
+        if (currentY == LYCompare || cycleCount == OAM_SEARCH_START) {
+            return 0;
+        }
+        int next;
+        if (cycleCount <= PIXEL_TRANSFER_START) {
+            next = PIXEL_TRANSFER_START;
+        } else if (currentY < ACTUAL_LINES && cycleCount < PIXEL_TRANSFER_START + 160 && !skippingFrame) {
+            return 0; //composing pixels
+        } else if (currentY < ACTUAL_LINES && cycleCount <= H_BLANK_START) {
+            next = H_BLANK_START;
+        } else {
+            next = H_BLANK_END;
+        }
+        return next - cycleCount;
+    }
+    
+    //a quiet tick only rereads the registers it caches and sets the mode in STAT again
+    public void skipQuietCycles(int cycles) {
+        if (cycles <= 0) {
+            return;
+        }
+        scrollX = mem.readByte(0xFF43);
+        int lcdc = mem.readByte(0xff40);
+        spritesEnabled = BitOps.extract(lcdc, 1, 1) == 1;
+        enabled = BitOps.extract(lcdc, 7, 7) == 1;
+        drewFrame = false;
+        mem.writeByte(0xFF41, mem.readByte(0xFF41) & (~3) | currentMode);
+        cycleCount += cycles;
+    }
+    
     private void drawFrame() {
         int status = mem.readByte(0xFF41) & 0x3F;
         mem.writeByte(0xFF41, status | 0x40);
-        gbs.drawFrame(frame);
+        if (frameSink != null && !skippingFrame && frame != null) frameSink.frameDone(frame);
+        if (gbs != null && !skippingFrame) frame = gbs.drawFrame(frame);
         drewFrame = true;
-        int interruptRegister = mem.readByte(0xFF0F) & 0xFE;
-        if(enabled) mem.writeByte(0xFF0F, interruptRegister | 0x01);
+        if(enabled) mem.requestInterrupt(InterruptHandler.VBLANK);
         //mem.writeByte(0xFF85, 0xFF);
         //mem.writeByte(0xFF44, 0x90);
     }
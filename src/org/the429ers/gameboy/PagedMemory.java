@@ -0,0 +1,85 @@
+package org.the429ers.gameboy;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/***
+ *
+ * A block of byte memory split into fixed-size pages. Pages can be shared
+ * between forked emulators and are only copied the first time either side
+ * writes to them.
+ *
+ */
+public class PagedMemory implements Serializable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = -1316415632154498815L;
+    public static final int PAGE_BITS = 8;
+    public static final int PAGE_SIZE = 1 << PAGE_BITS;
+    public static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private byte[][] pages;
+    private boolean[] owned; //whether this instance is the only one that can see a page
+    private int size;
+
+    public PagedMemory(int size) {
+        this.size = size;
+        int numPages = (size + PAGE_MASK) >> PAGE_BITS;
+        pages = new byte[numPages][PAGE_SIZE];
+        owned = new boolean[numPages];
+        Arrays.fill(owned, true);
+    }
+
+    private PagedMemory(byte[][] pages, int size) {
+        this.pages = pages;
+        this.owned = new boolean[pages.length];
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int read(int location) {
+        return pages[location >> PAGE_BITS][location & PAGE_MASK] & 0xff;
+    }
+
+    public void write(int location, int toWrite) {
+        int page = location >> PAGE_BITS;
+        if (!owned[page]) {
+            pages[page] = pages[page].clone();
+            owned[page] = true;
+        }
+        pages[page][location & PAGE_MASK] = (byte) toWrite;
+    }
+
+    //both this and the returned memory copy a page the next time they write to it
+    public PagedMemory fork() {
+        Arrays.fill(owned, false);
+        return new PagedMemory(pages.clone(), size);
+    }
+
+    public void copyTo(int location, byte[] dest, int destPos, int length) {
+        while (length > 0) {
+            int offset = location & PAGE_MASK;
+            int chunk = Math.min(length, PAGE_SIZE - offset);
+            System.arraycopy(pages[location >> PAGE_BITS], offset, dest, destPos, chunk);
+            location += chunk;
+            destPos += chunk;
+            length -= chunk;
+        }
+    }
+
+    public void copyFrom(byte[] src, int srcPos, int location, int length) {
+        for (int i = 0; i < length; i++) {
+            write(location + i, src[srcPos + i]);
+        }
+    }
+
+    public byte[] toByteArray() {
+        byte[] result = new byte[size];
+        copyTo(0, result, 0, size);
+        return result;
+    }
+}
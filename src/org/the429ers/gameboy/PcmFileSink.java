@@ -0,0 +1,98 @@
+package org.the429ers.gameboy;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/***
+ *
+ * Streams audio to a WAV file, or to a headerless raw PCM file. Samples are
+ * collected in a direct buffer and written out in large blocks. The WAV
+ * header is filled in with the final sizes when the sink is closed.
+ *
+ */
+public class PcmFileSink implements AudioSink {
+    public static final int WAV_HEADER_SIZE = 44;
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final AudioFormat format;
+    private final boolean wavHeader;
+    private long dataBytes = 0;
+
+    public PcmFileSink(Path file, AudioFormat format, boolean wavHeader) throws IOException {
+        this.format = format;
+        this.wavHeader = wavHeader;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (wavHeader) {
+            channel.write(header(0), 0);
+            channel.position(WAV_HEADER_SIZE);
+        }
+    }
+
+    private ByteBuffer header(long dataBytes) {
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int channels = format.getChannels();
+        int sampleRate = (int) format.getSampleRate();
+        int bits = format.getSampleSizeInBits();
+        header.put(new byte[] {'R', 'I', 'F', 'F'});
+        header.putInt((int) (36 + dataBytes));
+        header.put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+        header.putInt(16);
+        header.putShort((short) 1); //integer PCM
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * format.getFrameSize());
+        header.putShort((short) format.getFrameSize());
+        header.putShort((short) bits);
+        header.put(new byte[] {'d', 'a', 't', 'a'});
+        header.putInt((int) dataBytes);
+        header.flip();
+        return header;
+    }
+
+    @Override
+    public int write(byte[] samples, int off, int len) {
+        try {
+            int remaining = len;
+            while (remaining > 0) {
+                int chunk = Math.min(remaining, buffer.remaining());
+                buffer.put(samples, off + len - remaining, chunk);
+                remaining -= chunk;
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+            }
+            dataBytes += len;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return len;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+            if (wavHeader) {
+                channel.write(header(dataBytes), 0);
+            }
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
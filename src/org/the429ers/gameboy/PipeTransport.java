@@ -0,0 +1,56 @@
+package org.the429ers.gameboy;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/***
+ *
+ * Connects two emulators in the same JVM, which can run on separate threads.
+ * Create both ends with pair().
+ *
+ */
+public class PipeTransport implements SerialTransport {
+    private final Queue<Integer> incoming;
+    private final Queue<Integer> outgoing;
+    private volatile boolean closed;
+    private PipeTransport other;
+
+    private PipeTransport(Queue<Integer> incoming, Queue<Integer> outgoing) {
+        this.incoming = incoming;
+        this.outgoing = outgoing;
+    }
+
+    //two connected ends, one for each emulator
+    public static PipeTransport[] pair() {
+        Queue<Integer> aToB = new ConcurrentLinkedQueue<>();
+        Queue<Integer> bToA = new ConcurrentLinkedQueue<>();
+        PipeTransport a = new PipeTransport(bToA, aToB);
+        PipeTransport b = new PipeTransport(aToB, bToA);
+        a.other = b;
+        b.other = a;
+        return new PipeTransport[] {a, b};
+    }
+
+    @Override
+    public void send(int message) {
+        if (isConnected()) {
+            outgoing.add(message);
+        }
+    }
+
+    @Override
+    public int receive() {
+        Integer message = incoming.poll();
+        return message == null ? -1 : message;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed && !other.closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,33 @@
+package org.the429ers.gameboy;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/***
+ *
+ * Writes each frame to its own numbered PNG file, frame-000000.png and so on.
+ * PNG encoding is slow, so this is normally wrapped in an AsyncFrameSink.
+ *
+ */
+public class PngSequenceSink implements FrameSink {
+    private final Path directory;
+    private long frameNumber = 0;
+
+    public PngSequenceSink(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void frameDone(BufferedImage frame) {
+        Path file = directory.resolve(String.format("frame-%06d.png", frameNumber++));
+        try {
+            ImageIO.write(frame, "png", file.toFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.the429ers.gameboy;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/***
+ *
+ * Streams frames as packed 24 bit RGB with no header, 160x144 at 59.73 frames
+ * per second, for external encoders. For example, piping stdout into
+ * ffmpeg -f rawvideo -pix_fmt rgb24 -s 160x144 -r 59.7275 -i - out.mp4
+ *
+ */
+public class RawRgbSink implements FrameSink {
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private byte[] rgb;
+
+    public RawRgbSink(OutputStream out) {
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    public RawRgbSink(Path file) throws IOException {
+        this(Files.newOutputStream(file));
+    }
+
+    @Override
+    public void frameDone(BufferedImage frame) {
+        //frames are stored as BGR
+        byte[] bgr = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+        if (rgb == null || rgb.length != bgr.length) {
+            rgb = new byte[bgr.length];
+        }
+        for (int i = 0; i < bgr.length; i += 3) {
+            rgb[i] = bgr[i + 2];
+            rgb[i + 1] = bgr[i + 1];
+            rgb[i + 2] = bgr[i];
+        }
+        try {
+            out.write(rgb);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -180,6 +180,18 @@ public class RegisterFile implements Serializable {
         System.out.println("L = " + L);
     }
 
+    public RegisterFile fork() {
+        RegisterFile copy = new RegisterFile();
+        copy.AF.write(AF.read());
+        copy.BC.write(BC.read());
+        copy.DE.write(DE.read());
+        copy.HL.write(HL.read());
+        copy.SP.write(SP.read());
+        copy.PC.write(PC.read());
+        copy.flags.flagWritable = flags.flagWritable.clone();
+        return copy;
+    }
+
     public RegisterFile(){
         AF = new LongRegister();
         A = AF.upperByte;
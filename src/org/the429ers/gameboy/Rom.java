@@ -22,6 +22,12 @@ class Rom implements Cartridge {
         //do nothing
     }
 
+    @Override
+    public Cartridge fork() {
+        //nothing in a plain rom can change
+        return this;
+    }
+
     @Override
     public void cleanUp() {
         // TODO Auto-generated method stub
@@ -0,0 +1,11 @@
+package org.the429ers.gameboy;
+
+/***
+ *
+ * Receives every byte the game sends over the link cable. Test ROMs use this
+ * to report their results.
+ *
+ */
+public interface SerialListener {
+    void byteSent(int value);
+}
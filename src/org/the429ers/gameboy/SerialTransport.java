@@ -0,0 +1,28 @@
+package org.the429ers.gameboy;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/***
+ *
+ * Carries link cable traffic to another emulator. Messages are 16 bit
+ * values, a type and transfer number from LinkCable in the high byte and the
+ * data in the low byte, and neither method may block: the emulation thread polls receive
+ * while it runs. PipeTransport connects two emulators in one JVM and
+ * SocketTransport connects them over TCP or a Unix domain socket.
+ *
+ */
+public interface SerialTransport extends Closeable {
+    //queues the message for the other end, dropping it if nothing is connected
+    void send(int message) throws IOException;
+
+    //the next message from the other end, or -1 if none has arrived
+    int receive() throws IOException;
+
+    //whether there's another end to answer, otherwise transfers complete as if the cable was unplugged
+    boolean isConnected();
+
+    @Override
+    default void close() throws IOException {
+    }
+}
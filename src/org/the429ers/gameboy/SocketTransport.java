@@ -0,0 +1,196 @@
+package org.the429ers.gameboy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/***
+ *
+ * Connects two emulators over a local socket using non-blocking NIO
+ * channels, so the emulation thread never waits on the network. One side
+ * listens and the other connects; addresses are a port, host:port, or
+ * unix:path for a Unix domain socket.
+ *
+ * A listening transport accepts a new connection whenever the previous one
+ * closes, so the other emulator can be restarted. A connecting transport
+ * never reconnects, so failing to connect or losing the connection throws,
+ * which unplugs the cable. Messages are written as two big endian bytes.
+ *
+ */
+public class SocketTransport implements SerialTransport {
+    public static final int BUFFER_SIZE = 4096;
+
+    private final ServerSocketChannel server; //null for the connecting side
+    private final Path socketFile; //a listening Unix domain socket's file, removed on close
+    private SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private SocketTransport(ServerSocketChannel server, Path socketFile, SocketChannel channel) {
+        this.server = server;
+        this.socketFile = socketFile;
+        this.channel = channel;
+    }
+
+    //a port, host:port or unix:path
+    public static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        }
+        int colon = address.lastIndexOf(':');
+        if (colon == -1) {
+            return new InetSocketAddress("localhost", Integer.parseInt(address));
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    public static SocketTransport listen(String address) throws IOException {
+        SocketAddress socketAddress = parseAddress(address);
+        ServerSocketChannel server;
+        Path socketFile = null;
+        if (socketAddress instanceof UnixDomainSocketAddress) {
+            socketFile = ((UnixDomainSocketAddress) socketAddress).getPath();
+            Files.deleteIfExists(socketFile);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(socketAddress);
+        server.configureBlocking(false);
+        return new SocketTransport(server, socketFile, null);
+    }
+
+    //starts connecting, the transport is connected once the other side accepts
+    public static SocketTransport connect(String address) throws IOException {
+        SocketAddress socketAddress = parseAddress(address);
+        SocketChannel channel = socketAddress instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        configure(channel);
+        channel.connect(socketAddress);
+        return new SocketTransport(null, null, channel);
+    }
+
+    private static void configure(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        if (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+    }
+
+    //accepts or finishes connecting if that's still pending
+    private void update() throws IOException {
+        if (channel == null && server != null) {
+            channel = server.accept();
+            if (channel != null) {
+                configure(channel);
+            }
+        }
+        if (channel != null && channel.isConnectionPending()) {
+            try {
+                channel.finishConnect();
+            } catch (IOException e) {
+                lost(e);
+            }
+        }
+    }
+
+    //the other side went away, a listening transport waits for it to come back
+    private void lost(IOException e) throws IOException {
+        disconnect();
+        if (server == null) {
+            throw e;
+        }
+    }
+
+    private void disconnect() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        in.clear();
+        out.clear();
+    }
+
+    @Override
+    public void send(int message) throws IOException {
+        update();
+        if (!isConnected()) {
+            return;
+        }
+        if (out.remaining() < 2) {
+            ByteBuffer bigger = ByteBuffer.allocate(out.capacity() * 2);
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+        out.putShort((short) message);
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (out.position() == 0) {
+            return;
+        }
+        out.flip();
+        try {
+            channel.write(out);
+            out.compact();
+        } catch (IOException e) {
+            lost(e);
+        }
+    }
+
+    @Override
+    public int receive() throws IOException {
+        update();
+        if (!isConnected()) {
+            return -1;
+        }
+        flush();
+        if (!isConnected()) {
+            return -1;
+        }
+        if (in.position() < 2) {
+            try {
+                if (channel.read(in) == -1) {
+                    lost(new IOException("The other side closed the connection"));
+                    return -1;
+                }
+            } catch (IOException e) {
+                lost(e);
+                return -1;
+            }
+        }
+        if (in.position() < 2) {
+            return -1;
+        }
+        in.flip();
+        int message = in.getShort() & 0xffff;
+        in.compact();
+        return message;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return channel != null && channel.isConnected();
+    }
+
+    @Override
+    public void close() throws IOException {
+        disconnect();
+        if (server != null) {
+            server.close();
+        }
+        if (socketFile != null) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+}
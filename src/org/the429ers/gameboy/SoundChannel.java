@@ -5,65 +5,139 @@ import javax.sound.sampled.*;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.security.InvalidParameterException;
 import java.util.Arrays;
-import java.util.Random;
 
-class SoundChip implements Serializable {
+/***
+ *
+ * The APU. Nothing runs per clock: whenever a sound register is written, or a
+ * frame of samples is needed, every channel is caught up to the emulator's
+ * clock. Channels put their level changes into band-limited BlipBuffers and
+ * the 512 Hz frame sequencer clocks length counters, sweep and envelopes.
+ *
+ */
+class SoundChip implements Serializable, Cloneable {
     /**
-     * 
+     *
      */
     private static final long serialVersionUID = -3888000280667367472L;
     public SquareWave square1 = new SquareWave();
     public SquareWave square2 = new SquareWave();
     public WaveChannel waveChannel = new WaveChannel();
     public Noise noiseChannel = new Noise();
-    
-    public static final int SAMPLE_RATE = 131072;
+
+    public static final int SAMPLE_RATE = 48000;
     public static final int SAMPLES_PER_FRAME = SAMPLE_RATE/60;
-    public static final AudioFormat AUDIO_FORMAT = new AudioFormat(SAMPLE_RATE,  8, 2, false, false);
-    
+    public static final AudioFormat AUDIO_FORMAT = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+
     public static final int SQUARE1 = 0;
     public static final int SQUARE2 = 1;
     public static final int WAVE = 2;
     public static final int NOISE = 3;
-    
-    private transient SourceDataLine sourceDL;
-    
-    byte[] masterBuffer = new byte[6 * SAMPLES_PER_FRAME];
-    byte[] tempBuffer = new byte[3 * SAMPLES_PER_FRAME];
-    
-    long totalSamplesWritten = 0;
-    
+
+    public static final double MAX_RATE_DELTA = 0.005; //how far the output rate may stray to keep latency on target
+    public static final int FRAME_SEQUENCER_PERIOD = Emulator.CLOCK_SPEED / 512;
+    public static final int MAX_FRAME_CLOCKS = 4 * Emulator.CLOCKS_PER_FRAME; //samples older than this are dropped if nobody reads them
+
+    private transient AudioSink sink;
+    private transient EmulatorMetrics metrics;
+    private transient BlipBuffer[] buffers;
+    private transient int[][] channelSamples;
+    private transient int[] leftGains;
+    private transient int[] rightGains;
+
+    byte[] masterBuffer = new byte[3 * SAMPLES_PER_FRAME * StereoMixer.BYTES_PER_FRAME];
+
+    double sampleRatio = 1;
+    transient volatile int speed = 1; //emulated frames per real frame, samples are decimated to match
+    long frameStart = 0; //emulator clock at the start of the current frame of samples
+    int time = 0; //clocks since frameStart that the channels have been run to
+    int sequencerTimer = FRAME_SEQUENCER_PERIOD; //clocks until the next frame sequencer step
+    int sequencerStep = 0;
+
+    int leftVolume = 7; //NR50
+    int rightVolume = 7;
     boolean[] leftEnabled = new boolean[4];
     boolean[] rightEnabled = new boolean[4];
     {
         Arrays.fill(leftEnabled, true);
         Arrays.fill(rightEnabled, true);
     }
-    
-    public void setSourceDL(SourceDataLine sourceDL){
-        this.sourceDL = sourceDL;
+
+    //a null sink is the same as NullAudioSink
+    public void setSink(AudioSink sink){
+        this.sink = sink;
     }
-    
-    public SourceDataLine getSourceDL(){
-        return this.sourceDL;
+
+    public AudioSink getSink(){
+        return this.sink;
+    }
+
+    public void setMetrics(EmulatorMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    //in turbo, fewer samples are made per emulated frame so sound keeps pace with the sped up game
+    public void setSpeed(int speed) {
+        this.speed = Math.max(1, speed);
+    }
+
+    //the frontend sets the speed again after loading a state
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        speed = 1;
+    }
+
+    private boolean synthesizing() {
+        return sink != null && sink.wantsSamples();
     }
 
     public SoundChip() {
+        this(null);
+    }
+
+    public SoundChip(AudioSink sink) {
+        this.sink = sink;
+    }
+
+    //the copy has no output line and its own mixing buffers
+    public SoundChip fork() {
+        SoundChip copy;
         try {
-            sourceDL = AudioSystem.getSourceDataLine(AUDIO_FORMAT);
-            sourceDL.open(AUDIO_FORMAT);
-            sourceDL.start();
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
-        }
+            copy = (SoundChip) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.sink = null;
+        copy.metrics = null;
+        copy.buffers = null;
+        copy.channelSamples = null;
+        copy.leftGains = null;
+        copy.rightGains = null;
+        copy.square1 = square1.fork();
+        copy.square2 = square2.fork();
+        copy.waveChannel = waveChannel.fork();
+        copy.noiseChannel = noiseChannel.fork();
+        copy.masterBuffer = new byte[masterBuffer.length];
+        copy.leftEnabled = leftEnabled.clone();
+        copy.rightEnabled = rightEnabled.clone();
+        return copy;
     }
-    
-    public SoundChip(SourceDataLine sourceDL) {
-        this.sourceDL = sourceDL;
+
+    //buffers aren't saved or forked, samples in flight are simply lost
+    private BlipBuffer[] buffers() {
+        if (buffers == null) {
+            buffers = new BlipBuffer[4];
+            channelSamples = new int[4][];
+            leftGains = new int[4];
+            rightGains = new int[4];
+            for (int i = 0; i < 4; i++) {
+                buffers[i] = new BlipBuffer(Emulator.CLOCK_SPEED, SAMPLE_RATE * sampleRatio, 6 * SAMPLES_PER_FRAME);
+                channelSamples[i] = new int[3 * SAMPLES_PER_FRAME];
+            }
+        }
+        return buffers;
     }
-    
+
     //handle the NR51 register
     public void handleStereo(int val) {
         for(int i = 0; i < 4; i++){
@@ -74,118 +148,218 @@ class SoundChip implements Serializable {
         }
     }
 
-    public void tick() {
-        if (sourceDL == null) {
-            try {
-                sourceDL = AudioSystem.getSourceDataLine(AUDIO_FORMAT);
-                sourceDL.open(AUDIO_FORMAT);
-                sourceDL.start();
-            } catch (LineUnavailableException e) {
-                e.printStackTrace();
-            }
+    //handle the NR50 register, the VIN bits are ignored since no cartridge uses them
+    public void handleMasterVolume(int val) {
+        leftVolume = (val >> 4) & 0x7;
+        rightVolume = val & 0x7;
+    }
+
+    //handles writes to 0xff10-0xff3f, now is the emulator clock at the time of the write
+    public void writeRegister(int location, int toWrite, long now) {
+        if (synthesizing()) {
+            runUntil(now);
+        } else {
+            skipTo(now);
+        }
+        if(location >= 0xff10 && location <= 0xff14){
+            square1.handleByte(location - 0xff10, toWrite);
+        }else if(location >= 0xff15 && location <= 0xff19){
+            square2.handleByte(location - 0xff15, toWrite);
+        }else if(location >= 0xff1a && location <= 0xff1e){
+            waveChannel.handleByte(location - 0xff1a, toWrite);
+        }else if(location >= 0xff1f && location <= 0xff23){
+            noiseChannel.handleByte(location - 0xff1f, toWrite);
+        }else if(location == 0xff24) {
+            handleMasterVolume(toWrite);
+        }else if(location == MMU.STEREO_SOUND_REGISTER) {
+            handleStereo(toWrite);
+        }else if(location >= 0xff30 && location <= 0xff3f){
+            waveChannel.handleWaveByte(location - 0xff30, toWrite);
         }
-        long residualSamples = totalSamplesWritten - sourceDL.getLongFramePosition();
-        int samplesToWrite = Math.max(0, (int)(3 * SAMPLES_PER_FRAME - residualSamples)); //try to keep 3 frames buffered at all times
-        samplesToWrite = Math.min(sourceDL.available() / 2, Math.min(3 * SAMPLES_PER_FRAME, samplesToWrite)); //never want to block here
-        totalSamplesWritten += samplesToWrite;
-        if(totalSamplesWritten < sourceDL.getLongFramePosition()) {
-            sourceDL.drain();
-            totalSamplesWritten = sourceDL.getLongFramePosition();
-        }
-        
-        Arrays.fill(masterBuffer, (byte) 0);
-        
-        boolean channelEnabled = square1.tick(tempBuffer, samplesToWrite);
-        
-        if(channelEnabled) {
-            if(leftEnabled[SQUARE1]) {
-                for (int i = 0; i < samplesToWrite; i++) {
-                    masterBuffer[2*i] += (tempBuffer[i]);
-                }
-            }
-            if(rightEnabled[SQUARE1]){
-                for (int i = 0; i < samplesToWrite; i++) {
-                    masterBuffer[2*i + 1] += (tempBuffer[i]);
-                }
-            }
+    }
+
+    private void runChannels(BlipBuffer[] buffers, int from, int to) {
+        square1.run(buffers[SQUARE1], from, to);
+        square2.run(buffers[SQUARE2], from, to);
+        waveChannel.run(buffers[WAVE], from, to);
+        noiseChannel.run(buffers[NOISE], from, to);
+    }
+
+    //length counters at 256 Hz, sweep at 128 Hz and envelopes at 64 Hz
+    private void clockSequencer() {
+        if (sequencerStep % 2 == 0) {
+            square1.clockLength();
+            square2.clockLength();
+            waveChannel.clockLength();
+            noiseChannel.clockLength();
         }
-        
-        channelEnabled = square2.tick(tempBuffer, samplesToWrite);
-        
-        if(channelEnabled) {
-            if(leftEnabled[SQUARE2]) {
-                for (int i = 0; i < samplesToWrite; i++) {
-                    masterBuffer[2*i] += (tempBuffer[i]);
-                }
-            }
-            if(rightEnabled[SQUARE2]){
-                for (int i = 0; i < samplesToWrite; i++) {
-                    masterBuffer[2*i + 1] += (tempBuffer[i]);
-                }
-            }
+        if (sequencerStep == 2 || sequencerStep == 6) {
+            square1.clockSweep();
         }
+        if (sequencerStep == 7) {
+            square1.clockEnvelope();
+            square2.clockEnvelope();
+            noiseChannel.clockEnvelope();
+        }
+        sequencerStep = (sequencerStep + 1) & 7;
+    }
 
-        channelEnabled = waveChannel.tick(tempBuffer, samplesToWrite);
-
-        if(channelEnabled) {
-            if(leftEnabled[WAVE]) {
-                for (int i = 0; i < samplesToWrite; i++) {
-                    masterBuffer[2*i] += (tempBuffer[i]);
-                }
+    //brings every channel up to date with the emulator clock
+    public void runUntil(long now) {
+        int end = (int) Math.min(now - frameStart, Integer.MAX_VALUE);
+        if (end <= time) {
+            return;
+        }
+        BlipBuffer[] buffers = buffers();
+        while (end - time >= sequencerTimer) {
+            int step = time + sequencerTimer;
+            runChannels(buffers, time, step);
+            time = step;
+            sequencerTimer = FRAME_SEQUENCER_PERIOD;
+            clockSequencer();
+        }
+        runChannels(buffers, time, end);
+        sequencerTimer -= end - time;
+        time = end;
+        if (time > MAX_FRAME_CLOCKS) {
+            //nobody is collecting samples, e.g. when muted or headless
+            endFrame();
+            for (BlipBuffer buffer : buffers) {
+                buffer.clear();
             }
-            if(rightEnabled[WAVE]){
-                for (int i = 0; i < samplesToWrite; i++) {
-                    masterBuffer[2*i + 1] += (tempBuffer[i]);
-                }
+        }
+    }
+
+    //forgets about the time since the last update without generating anything
+    private void skipTo(long now) {
+        frameStart = now;
+        time = 0;
+        if (buffers != null) {
+            for (BlipBuffer buffer : buffers) {
+                buffer.clear();
             }
         }
+    }
 
-        channelEnabled = noiseChannel.tick(tempBuffer, samplesToWrite);
+    private void endFrame() {
+        for (BlipBuffer buffer : buffers()) {
+            buffer.endFrame(time);
+        }
+        frameStart += time;
+        time = 0;
+    }
 
-        if(channelEnabled) {
-            if(leftEnabled[NOISE]) {
-                for (int i = 0; i < samplesToWrite; i++) {
-                    masterBuffer[2*i] += (tempBuffer[i]);
-                }
-            }
-            if(rightEnabled[NOISE]){
-                for (int i = 0; i < samplesToWrite; i++) {
-                    masterBuffer[2*i + 1] += (tempBuffer[i]);
-                }
-            }
+    //produces slightly more samples when the output is running low and fewer when it is backing up
+    private void adjustRate() {
+        int buffered = sink.getBufferedFrames();
+        double fill = buffered < 0 ? 1 : buffered / (double) AudioOutput.TARGET_FRAMES;
+        sampleRatio = 1 + MAX_RATE_DELTA * Math.max(-1, Math.min(1, 1 - fill));
+        for (BlipBuffer buffer : buffers()) {
+            buffer.setSampleRate(SAMPLE_RATE * sampleRatio / speed);
         }
-        
-        sourceDL.write(masterBuffer, 0, samplesToWrite * 2);
+    }
+
+    //called once per video frame, outputs every sample up to now
+    public void tick(long now) {
+        if (!synthesizing()) {
+            skipTo(now);
+            return;
+        }
+        runUntil(now);
+        endFrame();
+        BlipBuffer[] buffers = buffers();
+        int samplesToWrite = Math.min(buffers[0].samplesAvailable(), masterBuffer.length / StereoMixer.BYTES_PER_FRAME);
+        for (int c = 0; c < 4; c++) {
+            buffers[c].readSamples(channelSamples[c], samplesToWrite);
+        }
+        StereoMixer.computeGains(leftEnabled, leftVolume, leftGains);
+        StereoMixer.computeGains(rightEnabled, rightVolume, rightGains);
+        StereoMixer.mix(channelSamples, samplesToWrite, leftGains, rightGains, masterBuffer);
+
+        if (metrics != null) metrics.samples(samplesToWrite);
+        FlightEvents.AudioUnderrun underrun = new FlightEvents.AudioUnderrun();
+        if (underrun.isEnabled() && sink.getBufferedFrames() == 0) {
+            underrun.samples = samplesToWrite;
+            underrun.commit();
+        }
+        sink.write(masterBuffer, 0, samplesToWrite * StereoMixer.BYTES_PER_FRAME); //drops whatever doesn't fit, e.g. in fast mode
+        adjustRate();
     }
 }
 
 public interface SoundChannel {
+    int AMPLITUDE = 256; //blip buffer units per DAC step
+
     void handleByte(int location, int toWrite);
-    boolean tick(byte[] soundBuffer, int samplesToWrite);
+    //puts the level changes between from and to (clocks since the start of the frame) into buffer
+    void run(BlipBuffer buffer, int from, int to);
+    void clockLength();
+}
+
+//length counter and output tracking shared by every channel
+abstract class AbstractSoundChannel implements SoundChannel, Serializable, Cloneable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = -5094263412233735826L;
+    //periods shorter than this are far above hearing, so they are output as their average level
+    public static final int MIN_PERIOD = 32;
+
+    protected boolean playing = false;
+    protected boolean lengthEnabled = false;
+    protected int lengthCounter = 0;
+    protected int timer = 0; //clocks until the next waveform step
+    protected int output = 0; //level last put into the blip buffer
+
+    protected void update(BlipBuffer buffer, int time, int level) {
+        if (level != output) {
+            buffer.addDelta(time, (level - output) * AMPLITUDE);
+            output = level;
+        }
+    }
+
+    @Override
+    public void clockLength() {
+        if (lengthEnabled && lengthCounter > 0) {
+            lengthCounter--;
+            if (lengthCounter == 0) {
+                playing = false;
+            }
+        }
+    }
 }
 
-class SquareWave implements SoundChannel, Serializable {
+class SquareWave extends AbstractSoundChannel {
     /**
-     * 
+     *
      */
     private static final long serialVersionUID = 7107235725378560961L;
     protected int duty = 0;
-    protected int lengthLoad = 0;
     protected int startingVolume = 0;
     protected boolean envelopeAdd = false;
     protected int envelopePeriod = 0;
     protected int frequency = 0;
-    protected boolean playing = false;
-    protected boolean lengthEnabled = false;
-    protected int lengthCounter = 0;
+    protected boolean dacEnabled = false;
 
     protected int currentVolume = 0;
-    protected long ticks = 0;
-    protected int offset = 0;
-
-    private byte[] transition = new byte[SAMPLE_RATE];
-
-    public static final int SAMPLE_RATE = SoundChip.SAMPLE_RATE;
+    protected int envelopeTimer = 0;
+    protected int dutyStep = 0;
+
+    //NR10, only square 1 has a sweep unit but it is harmless on square 2
+    protected int sweepPeriod = 0;
+    protected boolean sweepNegate = false;
+    protected int sweepShift = 0;
+    protected int sweepTimer = 0;
+    protected boolean sweepEnabled = false;
+    protected int shadowFrequency = 0;
+
+    public SquareWave fork() {
+        try {
+            return (SquareWave) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
 
     public static int getWaveform(int duty) {
         switch(duty){
@@ -202,228 +376,259 @@ class SquareWave implements SoundChannel, Serializable {
         }
     }
 
-    //tick is 30 hz
-    public boolean tick(byte[] soundBuffer, int samplesToWrite) {
-        if(!this.playing){
-            return false;
-        }
-        
-        ticks++;
-        
-        if (lengthEnabled) {
-            lengthCounter-= 4;
-            if (lengthCounter <= 0) {
-                this.playing = false;
-            }
-        }
-
-        if(envelopePeriod != 0 && ticks % envelopePeriod == 0) {
-            this.currentVolume += (envelopeAdd? 1: -1);
-            if(this.currentVolume < 0) this.currentVolume = 0;
-            if(this.currentVolume > 15) this.currentVolume = 15;
-        }
+    private int level() {
+        if (!playing) return 0;
+        return ((getWaveform(duty) >> dutyStep) & 1) * currentVolume;
+    }
 
-        int waveForm = getWaveform(this.duty);
-        double chunkSize = (2048.0 - frequency) / 8;
+    @Override
+    public void run(BlipBuffer buffer, int from, int to) {
+        int period = (2048 - frequency) * 4;
+        if (!playing || period < MIN_PERIOD) {
+            int average = playing ? currentVolume * Integer.bitCount(getWaveform(duty)) / 8 : 0;
+            update(buffer, from, average);
+            return;
+        }
+        update(buffer, from, level());
+        int waveForm = getWaveform(duty);
+        int t = from + timer;
+        while (t < to) {
+            dutyStep = (dutyStep + 1) & 7;
+            update(buffer, t, ((waveForm >> dutyStep) & 1) * currentVolume);
+            t += period;
+        }
+        timer = t - to;
+    }
 
-        int waveLength = (int)(8 * chunkSize);
+    public void clockEnvelope() {
+        if (envelopePeriod == 0) return;
+        envelopeTimer--;
+        if (envelopeTimer <= 0) {
+            envelopeTimer = envelopePeriod;
+            if (envelopeAdd && currentVolume < 15) currentVolume++;
+            if (!envelopeAdd && currentVolume > 0) currentVolume--;
+        }
+    }
 
-        if(waveLength == 0) return false;
+    private int calculateSweep() {
+        int delta = shadowFrequency >> sweepShift;
+        int newFrequency = shadowFrequency + (sweepNegate ? -delta : delta);
+        if (newFrequency > 2047) {
+            playing = false;
+        }
+        return newFrequency;
+    }
 
-        for(int i = 0; i < samplesToWrite; i++){
-            int samplesFromStart = (i + offset) % waveLength;
-            int loc = (int)(samplesFromStart / chunkSize);
-            soundBuffer[i] = (((waveForm >> loc) & 1) == 1)? (byte)(currentVolume): (byte)0;
+    public void clockSweep() {
+        sweepTimer--;
+        if (sweepTimer <= 0) {
+            sweepTimer = sweepPeriod == 0 ? 8 : sweepPeriod;
+            if (sweepEnabled && sweepPeriod != 0) {
+                int newFrequency = calculateSweep();
+                if (newFrequency <= 2047 && sweepShift != 0) {
+                    frequency = newFrequency;
+                    shadowFrequency = newFrequency;
+                    calculateSweep();
+                }
+            }
         }
-        
-        offset = (offset + samplesToWrite) % waveLength;
-        
-        return true;
+    }
+
+    private void trigger() {
+        playing = dacEnabled;
+        if (lengthCounter == 0) lengthCounter = 64;
+        timer = (2048 - frequency) * 4;
+        envelopeTimer = envelopePeriod;
+        currentVolume = startingVolume;
+        shadowFrequency = frequency;
+        sweepTimer = sweepPeriod == 0 ? 8 : sweepPeriod;
+        sweepEnabled = sweepPeriod != 0 || sweepShift != 0;
+        if (sweepShift != 0) calculateSweep();
     }
 
     @Override
     //location is 0, 1, 2, 3, 4
     public void handleByte(int location, int toWrite) {
-        int newFrequency = frequency;
-        
         switch(location){
             case 0:
-                //do nothing
+                this.sweepPeriod = (toWrite >> 4) & 0x7;
+                this.sweepNegate = ((toWrite >> 3) & 1) == 1;
+                this.sweepShift = toWrite & 0x7;
                 break;
             case 1:
                 this.duty = (toWrite >> 6) & 0x3;
-                this.lengthLoad = 64 - (toWrite & 0x3f);
+                this.lengthCounter = 64 - (toWrite & 0x3f);
                 break;
             case 2:
                 this.startingVolume = (toWrite >> 4) & 0xf;
-                this.currentVolume = this.startingVolume;
                 this.envelopeAdd = ((toWrite >> 3) & 1) == 1;
                 this.envelopePeriod = toWrite & 0x7;
+                this.dacEnabled = (toWrite & 0xf8) != 0;
+                if (!dacEnabled) playing = false;
                 break;
             case 3:
-                newFrequency = (newFrequency >> 8) << 8;
-                newFrequency |= toWrite & 0xff;
+                frequency = (frequency & 0x700) | (toWrite & 0xff);
                 break;
             case 4:
-                this.playing |= (toWrite >> 7) == 1;
                 this.lengthEnabled = ((toWrite >> 6) & 1) == 1;
-                newFrequency &= 0xff;
-                newFrequency |= ((toWrite & 0x7) << 8);
-        }
-        
-        if(newFrequency != frequency) {
-            //if the frequency has changed, update the offset so it's (approximately) at the same spot in the wave
-            double oldChunkSize = (2048.0 - frequency) / 8;
-            double oldWaveLength = (8 * oldChunkSize);
-            double newChunkSize = (2048.0 - newFrequency) / 8;
-            double newWaveLength = (8 * newChunkSize);
-            
-            offset = (int)(offset * newWaveLength / oldWaveLength);
-            
-            frequency = newFrequency;
-        }
-
-        if(this.lengthEnabled){
-            this.lengthCounter = this.lengthLoad;
-            //System.out.println(this.lengthCounter);
+                frequency = (frequency & 0xff) | ((toWrite & 0x7) << 8);
+                if ((toWrite >> 7) == 1) trigger();
         }
     }
 }
 
-class WaveChannel implements SoundChannel, Serializable {
+class WaveChannel extends AbstractSoundChannel {
     /**
-     * 
+     *
      */
     private static final long serialVersionUID = 7638828751434539339L;
+    private static final int[] VOLUME_SHIFTS = {4, 0, 1, 2};
+
     protected boolean dacPower = false;
-    protected int lengthLoad = 0;
     protected int volumeCode = 0;
     protected int frequency = 0;
-    protected boolean playing = false;
-    protected boolean lengthEnabled = false;
-    protected int lengthCounter = 0;
-    
-    protected int offset;
+
+    protected int position = 0;
     protected byte[] samples = new byte[32];
+    //wave RAM with the volume shift already applied, rebuilt whenever either changes
+    protected int[] levels = new int[32];
+    protected int averageLevel = 0;
+
+    public WaveChannel fork() {
+        WaveChannel copy;
+        try {
+            copy = (WaveChannel) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.samples = samples.clone();
+        copy.levels = levels.clone();
+        return copy;
+    }
 
-    public static final int SAMPLE_RATE = SoundChip.SAMPLE_RATE;
-    
     public void handleWaveByte(int location, int toWrite) {
         if(location > 15 || location < 0){
             throw new IllegalArgumentException("only 16 wave bytes");
         }
-        
+
         samples[2 * location] = (byte)(toWrite >> 4);
         samples[2 * location + 1] = (byte)(toWrite & 0xf);
+        buildLevels();
+    }
+
+    private void buildLevels() {
+        int shift = VOLUME_SHIFTS[volumeCode];
+        int sum = 0;
+        for (int i = 0; i < samples.length; i++) {
+            levels[i] = samples[i] >> shift;
+            sum += levels[i];
+        }
+        averageLevel = sum / samples.length;
+    }
+
+    private void trigger() {
+        playing = dacPower;
+        if (lengthCounter == 0) lengthCounter = 256;
+        timer = (2048 - frequency) * 2;
+        position = 0;
     }
 
     @Override
     public void handleByte(int location, int toWrite) {
-        int newFrequency = this.frequency;
         switch(location){
             case 0:
                 this.dacPower = ((toWrite >> 7) & 1) == 1;
+                if (!dacPower) playing = false;
                 break;
             case 1:
-                this.lengthLoad = 256 - toWrite;
+                this.lengthCounter = 256 - toWrite;
                 break;
             case 2:
                 this.volumeCode = (toWrite >> 5) & 3;
+                buildLevels();
                 break;
             case 3:
-                newFrequency = (newFrequency >> 8) << 8;
-                newFrequency |= toWrite & 0xff;
+                frequency = (frequency & 0x700) | (toWrite & 0xff);
                 break;
             case 4:
-                this.playing |= (toWrite >> 7) == 1;
                 this.lengthEnabled = ((toWrite >> 6) & 1) == 1;
-                newFrequency &= 0xff;
-                newFrequency |= ((toWrite & 0x7) << 8);
-        }
-
-        if(newFrequency != frequency) {
-            //if the frequency has changed, update the offset so it's (approximately) at the same spot in the wave
-            double oldChunkSize = (2048.0 - frequency) / 16;
-            double oldWaveLength = (32 * oldChunkSize);
-            double newChunkSize = (2048.0 - newFrequency) / 16;
-            double newWaveLength = (32 * newChunkSize);
-
-            offset = (int)(offset * newWaveLength / oldWaveLength);
-
-            frequency = newFrequency;
-        }
-        if(this.lengthEnabled){
-            this.lengthCounter = this.lengthLoad;
-            //System.out.println(this.lengthCounter);
-        }
-    }
-    
-    private byte volumeAdjust(byte toAdjust) {
-        switch(volumeCode) {
-            case 0:
-                return 0;
-            case 1:
-                return toAdjust;
-            case 2:
-                return (byte)(toAdjust / 2);
-            case 3:
-                return (byte)(toAdjust / 4);
+                frequency = (frequency & 0xff) | ((toWrite & 0x7) << 8);
+                if ((toWrite >> 7) == 1) trigger();
         }
-        throw new InvalidParameterException("invalid volume code");
     }
 
     @Override
-    public boolean tick(byte[] soundBuffer, int samplesToWrite) {
-        if(!this.playing || !this.dacPower){
-            return false;
-        }
-        
-        if (lengthEnabled) {
-            lengthCounter-= 4;
-            if (lengthCounter <= 0) {
-                this.playing = false;
-            }
-        }
-        
-        double chunkSize = (2048.0 - frequency) / 16;
-
-        int waveLength = (int)(32 * chunkSize);
-
-        if(waveLength == 0) return false;
-
-        //System.out.println(Arrays.toString(samples));
-        for(int i = 0; i < samplesToWrite; i++){
-            int samplesFromStart = (i + offset) % waveLength;
-            int loc = (int)(samplesFromStart / chunkSize);
-            soundBuffer[i] = volumeAdjust(samples[loc]);
-        }
-        
-        offset = (offset + samplesToWrite) % waveLength;
-        
-        return true;
+    public void run(BlipBuffer buffer, int from, int to) {
+        int period = (2048 - frequency) * 2;
+        if (!playing || period < MIN_PERIOD) {
+            update(buffer, from, playing ? averageLevel : 0);
+            return;
+        }
+        int[] levels = this.levels;
+        update(buffer, from, levels[position]);
+        int t = from + timer;
+        while (t < to) {
+            position = (position + 1) & 31;
+            update(buffer, t, levels[position]);
+            t += period;
+        }
+        timer = t - to;
     }
 }
 
-class Noise implements SoundChannel, Serializable {
+class Noise extends AbstractSoundChannel {
     /**
-     * 
+     *
      */
     private static final long serialVersionUID = 4853112434355414007L;
-    protected int lengthLoad = 0;
     protected int startingVolume = 0;
     protected boolean envelopeAdd = false;
     protected int envelopePeriod = 0;
-    protected boolean playing = false;
-    protected boolean lengthEnabled = false;
-    protected int lengthCounter = 0;
     protected int shiftClock = 0;
     protected int widthMode = 0;
     protected int divisorCode = 0;
-    
+    protected boolean dacEnabled = false;
+
     protected int currentVolume = 0;
-    protected long ticks = 0;
-    Random rand = new Random();
-    
+    protected int envelopeTimer = 0;
+    protected int lfsr = 0x7fff;
+
+    //clocks between LFSR shifts, indexed by the low 7 bits of NR43 without the width bit; 0 means it never shifts
+    private static final int[] PERIODS = new int[16 * 8];
+    static {
+        for (int shift = 0; shift < 14; shift++) {
+            for (int divisor = 0; divisor < 8; divisor++) {
+                PERIODS[(shift << 3) | divisor] = (divisor == 0 ? 8 : divisor * 16) << shift;
+            }
+        }
+    }
+
+    public Noise fork() {
+        try {
+            return (Noise) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void trigger() {
+        playing = dacEnabled;
+        if (lengthCounter == 0) lengthCounter = 64;
+        timer = period();
+        envelopeTimer = envelopePeriod;
+        currentVolume = startingVolume;
+        lfsr = 0x7fff;
+    }
+
+    private int period() {
+        return PERIODS[(shiftClock << 3) | divisorCode];
+    }
+
+    //the output is the inverted low bit of the shift register
+    private int level() {
+        return (~lfsr & 1) * currentVolume;
+    }
+
     @Override
     public void handleByte(int location, int toWrite) {
         switch(location){
@@ -431,13 +636,14 @@ class Noise implements SoundChannel, Serializable {
                 //do nothing
                 break;
             case 1:
-                this.lengthLoad = 64 - (toWrite & 0x3f);
+                this.lengthCounter = 64 - (toWrite & 0x3f);
                 break;
             case 2:
                 this.startingVolume = (toWrite >> 4) & 0xf;
-                this.currentVolume = this.startingVolume;
                 this.envelopeAdd = ((toWrite >> 3) & 1) == 1;
                 this.envelopePeriod = toWrite & 0x7;
+                this.dacEnabled = (toWrite & 0xf8) != 0;
+                if (!dacEnabled) playing = false;
                 break;
             case 3:
                 this.shiftClock = (toWrite >> 4) & 0xf;
@@ -445,65 +651,47 @@ class Noise implements SoundChannel, Serializable {
                 this.divisorCode = toWrite & 0x7;
                 break;
             case 4:
-                this.playing |= (toWrite >> 7) == 1;
                 this.lengthEnabled = ((toWrite >> 6) & 1) == 1;
+                if ((toWrite >> 7) == 1) trigger();
         }
+    }
 
-        if(this.lengthEnabled){
-            this.lengthCounter = this.lengthLoad;
+    public void clockEnvelope() {
+        if (envelopePeriod == 0) return;
+        envelopeTimer--;
+        if (envelopeTimer <= 0) {
+            envelopeTimer = envelopePeriod;
+            if (envelopeAdd && currentVolume < 15) currentVolume++;
+            if (!envelopeAdd && currentVolume > 0) currentVolume--;
         }
     }
 
     @Override
-    public boolean tick(byte[] soundBuffer, int samplesToWrite) {
-        if(!this.playing){
-            return false;
-        }
-
-        ticks++;
-
-        if (lengthEnabled) {
-            lengthCounter-= 4;
-            if (lengthCounter <= 0) {
-                this.playing = false;
+    public void run(BlipBuffer buffer, int from, int to) {
+        if (!playing) {
+            update(buffer, from, 0);
+            return;
+        }
+        update(buffer, from, level());
+        int period = period();
+        if (period == 0) {
+            return;
+        }
+        //in 7 bit mode the feedback also goes into bit 6, so the sequence repeats every 127 shifts
+        int widthMask = widthMode == 1 ? 0x4040 : 0x4000;
+        int t = from + timer;
+        int state = lfsr;
+        while (t < to) {
+            int feedback = (state ^ (state >> 1)) & 1;
+            state = (state >> 1) & ~widthMask | (-feedback & widthMask);
+            int level = (~state & 1) * currentVolume;
+            if (level != output) {
+                buffer.addDelta(t, (level - output) * AMPLITUDE);
+                output = level;
             }
+            t += period;
         }
-
-        if(envelopePeriod != 0 && ticks % envelopePeriod == 0) {
-            this.currentVolume += (envelopeAdd? 1: -1);
-            if(this.currentVolume < 0) this.currentVolume = 0;
-            if(this.currentVolume > 15) this.currentVolume = 15;
-        }
-        
-        if(this.currentVolume == 0){
-            return false;
-        }
-
-        long chunkSize;
-        double frequency;
-        if(divisorCode != 0) {
-            frequency = ((524288.0 / divisorCode) / (2 << shiftClock));
-        }else{
-            frequency = ((524288.0 * 2) / (2 << shiftClock));
-        }
-        
-        chunkSize = (long)(SoundChip.SAMPLE_RATE / frequency);
-        if (chunkSize == 0) chunkSize = 1;
-
-        int i, j = 0;
-        for(i = 0; i < samplesToWrite - chunkSize; i+= chunkSize){
-            byte chunkVal = (byte)(rand.nextInt(2) * currentVolume);
-            for(j = 0; j < chunkSize; j++){
-                soundBuffer[i + j] = chunkVal;
-            }
-        }
-        
-        //fill up remainder
-        byte remainderVal = (byte)(rand.nextInt(2) * currentVolume);
-        for(int k = i + j; k < samplesToWrite; k++){
-            soundBuffer[k] = remainderVal;
-        }
-
-        return true;
+        lfsr = state;
+        timer = t - to;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package org.the429ers.gameboy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/***
+ *
+ * Mixes the four channels into interleaved 16 bit little endian stereo in one
+ * pass. NR51 panning and NR50 master volume are folded into one gain per channel
+ * and side beforehand, so the loop has no branches besides clamping.
+ *
+ * There is no jdk.incubator.vector version. The one in VectorMixerBenchmark mixes a
+ * frame in about 0.07 microseconds against 1.8 for this loop, but a whole
+ * frame takes about 2400 in CpuBenchmark.runFrame, so it would save well
+ * under 0.1% of the frame while every launcher had to pass --add-modules.
+ *
+ */
+public class StereoMixer {
+    public static final int BYTES_PER_FRAME = 4;
+    public static final int GAIN_SHIFT = 2; //4 channels at full volume and gain 8 still fit in 16 bits
+
+    private static final VarHandle SHORTS = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+
+    //gain is 0 when a channel is not sent to that side, otherwise the NR50 volume plus one
+    public static void computeGains(boolean[] enabled, int volume, int[] gains) {
+        for (int c = 0; c < gains.length; c++) {
+            gains[c] = enabled[c] ? volume + 1 : 0;
+        }
+    }
+
+    public static void mix(int[][] channels, int count, int[] leftGains, int[] rightGains, byte[] out) {
+        int[] c0 = channels[0], c1 = channels[1], c2 = channels[2], c3 = channels[3];
+        int l0 = leftGains[0], l1 = leftGains[1], l2 = leftGains[2], l3 = leftGains[3];
+        int r0 = rightGains[0], r1 = rightGains[1], r2 = rightGains[2], r3 = rightGains[3];
+        for (int i = 0; i < count; i++) {
+            int s0 = c0[i], s1 = c1[i], s2 = c2[i], s3 = c3[i];
+            int left = (s0 * l0 + s1 * l1 + s2 * l2 + s3 * l3) >> GAIN_SHIFT;
+            int right = (s0 * r0 + s1 * r1 + s2 * r2 + s3 * r3) >> GAIN_SHIFT;
+            SHORTS.set(out, BYTES_PER_FRAME * i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, left)));
+            SHORTS.set(out, BYTES_PER_FRAME * i + 2, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, right)));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.the429ers.gameboy;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/***
+ *
+ * Runs test ROMs headless, one per core, and reports whether each passed
+ * along with how fast it ran. Results are detected the ways the common test
+ * suites report them:
+ *
+ * - Blargg's tests print "Passed" or "Failed" over the link cable, and newer
+ *   ones also write a status to cartridge RAM behind the signature DE B0 61.
+ * - Mooneye's tests finish with B, C, D, E, H, L set to 3, 5, 8, 13, 21, 34
+ *   on success and all 0x42 on failure.
+ *
+ * ROMs that do neither before the frame limit time out. Each result includes
+ * the hash of the last frame, so output that isn't reported over serial can
+ * still be compared between runs.
+ *
+ * Usage: TestRomRunner [-frames n] [-threads n] [-report file.tsv] rom-or-directory...
+ * Exits with 1 if any ROM didn't pass.
+ *
+ */
+public class TestRomRunner {
+    public static final int DEFAULT_MAX_FRAMES = 60 * 120; //two emulated minutes
+    public static final int FRAMES_PER_CHECK = 30;
+    public static final int MAX_SERIAL_OUTPUT = 1 << 16;
+
+    public enum Status { PASSED, FAILED, TIMEOUT, ERROR }
+
+    public static class Result {
+        public final String rom;
+        public Status status = Status.ERROR;
+        public long frames;
+        public long clocks;
+        public long nanos;
+        public long frameHash;
+        public String serialOutput = "";
+        public String message = "";
+
+        Result(String rom) {
+            this.rom = rom;
+        }
+
+        //emulated clock cycles per real second
+        public double getClocksPerSecond() {
+            return nanos == 0 ? 0 : clocks * 1e9 / nanos;
+        }
+
+        //how many times faster than a real Game Boy
+        public double getSpeed() {
+            return getClocksPerSecond() / Emulator.CLOCK_SPEED;
+        }
+
+        public String toTsv() {
+            return String.join("\t", rom, status.name(), Long.toString(frames), Long.toString(clocks),
+                    String.format("%.0f", getClocksPerSecond()), String.format("%.2f", getSpeed()),
+                    String.format("%016x", frameHash), message.replaceAll("\\s+", " ").trim());
+        }
+    }
+
+    //only hashes the latest frame, since that's all the result needs
+    private static class LastFrameHash implements FrameSink {
+        long hash;
+
+        @Override
+        public void frameDone(BufferedImage frame) {
+            hash = FrameHashRecorder.hash(frame);
+        }
+    }
+
+    private final int maxFrames;
+
+    public TestRomRunner(int maxFrames) {
+        this.maxFrames = maxFrames;
+    }
+
+    public Result run(String rom) {
+        Result result = new Result(rom);
+        try {
+            Emulator emulator = new Emulator(rom, null, null);
+            if (emulator.getMMU().getROM() == null) {
+                result.message = "could not load ROM";
+                return result;
+            }
+            StringBuilder serial = new StringBuilder();
+            emulator.setSerialListener((int value) -> {
+                if (serial.length() < MAX_SERIAL_OUTPUT) serial.append((char) value);
+            });
+            LastFrameHash lastFrame = new LastFrameHash();
+            emulator.setFrameSink(lastFrame);
+
+            long start = System.nanoTime();
+            result.status = Status.TIMEOUT;
+            while (result.frames < maxFrames) {
+                emulator.runFrames(FRAMES_PER_CHECK);
+                result.frames += FRAMES_PER_CHECK;
+                Status status = check(emulator, serial, result);
+                if (status != null) {
+                    result.status = status;
+                    break;
+                }
+            }
+            result.nanos = System.nanoTime() - start;
+            result.clocks = emulator.getTotalClocks();
+            result.frameHash = lastFrame.hash;
+            result.serialOutput = serial.toString();
+            if (result.message.isEmpty()) {
+                result.message = result.serialOutput;
+            }
+        } catch (RuntimeException e) {
+            result.status = Status.ERROR;
+            result.message = e.toString();
+        }
+        return result;
+    }
+
+    //the outcome if the ROM has reported one yet, otherwise null
+    private static Status check(Emulator emulator, StringBuilder serial, Result result) {
+        String output = serial.toString();
+        if (output.contains("Passed")) {
+            return Status.PASSED;
+        }
+        if (output.contains("Failed")) {
+            return Status.FAILED;
+        }
+
+        MMU mmu = emulator.getMMU();
+        if (mmu.readByte(0xa001) == 0xde && mmu.readByte(0xa002) == 0xb0 && mmu.readByte(0xa003) == 0x61) {
+            int code = mmu.readByte(0xa000);
+            if (code != 0x80) {
+                StringBuilder text = new StringBuilder();
+                for (int location = 0xa004; location < 0xc000 && mmu.readByte(location) != 0; location++) {
+                    text.append((char) mmu.readByte(location));
+                }
+                result.message = text.toString();
+                return code == 0 ? Status.PASSED : Status.FAILED;
+            }
+        }
+
+        RegisterFile regs = emulator.getCPU().regs;
+        int bc = regs.BC.read(), de = regs.DE.read(), hl = regs.HL.read();
+        if (bc == 0x0305 && de == 0x080d && hl == 0x1522) {
+            return Status.PASSED;
+        }
+        if (bc == 0x4242 && de == 0x4242 && hl == 0x4242) {
+            return Status.FAILED;
+        }
+        return null;
+    }
+
+    //every .gb and .gbc file under each path, in a stable order
+    public static List<String> findRoms(List<String> paths) throws IOException {
+        List<String> roms = new ArrayList<>();
+        for (String path : paths) {
+            try (Stream<Path> files = Files.walk(Paths.get(path))) {
+                roms.addAll(files
+                        .filter(Files::isRegularFile)
+                        .map(Path::toString)
+                        .filter(name -> name.endsWith(".gb") || name.endsWith(".gbc"))
+                        .sorted()
+                        .collect(Collectors.toList()));
+            }
+        }
+        return roms;
+    }
+
+    private static void usage() {
+        System.out.println("usage: TestRomRunner [-frames n] [-threads n] [-report file.tsv] rom-or-directory...");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxFrames = DEFAULT_MAX_FRAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String report = null;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-frames") && i + 1 < args.length) {
+                maxFrames = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-report") && i + 1 < args.length) {
+                report = args[++i];
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty()) {
+            usage();
+            return;
+        }
+
+        List<String> roms = findRoms(paths);
+        TestRomRunner runner = new TestRomRunner(maxFrames);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (String rom : roms) {
+            futures.add(pool.submit(() -> runner.run(rom)));
+        }
+        pool.shutdown();
+
+        int passed = 0;
+        long totalClocks = 0;
+        long totalNanos = 0;
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            Result result = future.get();
+            results.add(result);
+            System.out.printf("%-8s %6.2fx %8d frames  %016x  %s%n", result.status, result.getSpeed(), result.frames,
+                    result.frameHash, new File(result.rom).getName());
+            if (result.status == Status.PASSED) passed++;
+            totalClocks += result.clocks;
+            totalNanos += result.nanos;
+        }
+        System.out.printf("%d of %d passed, %.2fx average speed per ROM%n", passed, roms.size(),
+                totalNanos == 0 ? 0 : totalClocks * 1e9 / totalNanos / Emulator.CLOCK_SPEED);
+
+        if (report != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(report)))) {
+                out.println("rom\tstatus\tframes\tclocks\tclocks_per_second\tspeed\tframe_hash\tmessage");
+                for (Result result : results) {
+                    out.println(result.toTsv());
+                }
+            }
+        }
+        System.exit(passed == roms.size() ? 0 : 1);
+    }
+}
@@ -60,6 +60,14 @@ public class Tile implements Serializable {
         this.tileData = tileData;
     }
     
+    public Tile copy() {
+        int[][] copyData = new int[8][];
+        for (int i = 0; i < 8; i++) {
+            copyData[i] = tileData[i].clone();
+        }
+        return new Tile(copyData);
+    }
+    
     public int getPixelXFlip(int y, int x) {
         return tileData[y][7 - x];
     }
@@ -2,7 +2,7 @@ package org.the429ers.gameboy;
 
 import java.io.Serializable;
 
-public class TileMap implements Serializable {
+public class TileMap implements Serializable, Cloneable {
     /**
      * 
      */
@@ -37,6 +37,18 @@ public class TileMap implements Serializable {
     
 
     
+    //the tile numbers never change after loading, so only the tile sets need to be swapped
+    public TileMap fork(TileSetManager manager) {
+        TileMap copy;
+        try {
+            copy = (TileMap) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.tileSetManager = manager;
+        return copy;
+    }
+    
     public Tile getTile(int x, int y) {
         TileSet t = tileSetManager.getTileSet(0, tileSetNum);
         int tileNum = map[x % 32][y % 32];
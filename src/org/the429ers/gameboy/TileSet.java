@@ -1,22 +1,22 @@
 package org.the429ers.gameboy;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class TileSet implements Serializable {
     /**
      * 
      */
     private static final long serialVersionUID = 4048349332307406439L;
-    private Map<Integer, Tile> tiles;
+    private Tile[] tiles; //indexed by tile number, offset by 128 for set one
     private boolean isSetZero;
     private boolean isBankZero;
+    private boolean[] owned = new boolean[256]; //tiles shared with a fork are copied before being updated
     
     
     public TileSet(MMU memory, int startAddress, int numTiles, boolean isSetOne, boolean isBankZero) {
         this.isSetZero = isSetOne;
-        tiles = new HashMap<Integer, Tile>();
+        tiles = new Tile[256];
         int tileNum = isSetOne ? 0 : -128;
         for (int i = 0; i < numTiles; i++) {
             int[] tileBytes = new int[16];
@@ -25,16 +25,17 @@ public class TileSet implements Serializable {
                 int bank = isBankZero ? 0 : 1;
                 tileBytes[j] = memory.readByteFromVRAM(tileAddress + j, bank);
             }
-            tiles.put(tileNum, new Tile(tileBytes));
+            tiles[indexOf(tileNum)] = new Tile(tileBytes);
             tileNum++;
         }
         this.isBankZero = isBankZero;
+        Arrays.fill(owned, true);
     }
     
     
     public TileSet(MMU memory, int startAddress, int numTiles, boolean isSetOne) {
         this.isSetZero = isSetOne;
-        tiles = new HashMap<Integer, Tile>();
+        tiles = new Tile[256];
         int tileNum = isSetOne ? 0 : -128;
         for (int i = 0; i < numTiles; i++) {
             int[] tileBytes = new int[16];
@@ -42,30 +43,57 @@ public class TileSet implements Serializable {
             for (int j = 0; j < 16; j++) {
                 tileBytes[j] = memory.readByte(tileAddress + j);
             }
-            tiles.put(tileNum, new Tile(tileBytes));
+            tiles[indexOf(tileNum)] = new Tile(tileBytes);
             tileNum++;
         }
         this.isBankZero = true;
+        Arrays.fill(owned, true);
     }
     
     public TileSet(boolean isSetZero) {
         this.isSetZero = isSetZero;
-        tiles = new HashMap<>();
+        tiles = new Tile[256];
         int tileNum = isSetZero ? 0 : -128;
         for (int i = 0; i < 256; i++) {
-            tiles.put(tileNum, new Tile());
+            tiles[indexOf(tileNum)] = new Tile();
             tileNum++;
         }
         this.isBankZero = true;
+        Arrays.fill(owned, true);
+    }
+    
+    private TileSet(TileSet toFork) {
+        this.isSetZero = toFork.isSetZero;
+        this.isBankZero = toFork.isBankZero;
+        this.tiles = toFork.tiles.clone();
+    }
+    
+    public TileSet fork() {
+        Arrays.fill(owned, false);
+        return new TileSet(this);
+    }
+    
+    private int indexOf(int tileNum) {
+        return isSetZero ? tileNum : tileNum + 128;
     }
     
     public void updateTile(int tileNum, int byteNum, int data) {
-        Tile t = tiles.get(tileNum);
+        int index = indexOf(tileNum);
+        Tile t = tiles[index];
+        if (!owned[index]) {
+            t = t.copy();
+            tiles[index] = t;
+            owned[index] = true;
+        }
         t.updateTile(byteNum, data);
     }
     
     public Tile getTile(int tileNumber) {
-        return tiles.get(tileNumber);
+        int index = indexOf(tileNumber);
+        if (index < 0 || index >= tiles.length) {
+            return null;
+        }
+        return tiles[index];
     }
     
     public boolean isTileSetOne() {
@@ -23,6 +23,21 @@ public class TileSetManager implements Serializable{
     
 
     
+    private TileSetManager(TileSet[][] tileSets, boolean isGBCMode) {
+        this.tileSets = tileSets;
+        this.isGBCMode = isGBCMode;
+    }
+    
+    public TileSetManager fork() {
+        TileSet[][] copySets = new TileSet[2][2];
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                copySets[i][j] = tileSets[i][j] == null ? null : tileSets[i][j].fork();
+            }
+        }
+        return new TileSetManager(copySets, isGBCMode);
+    }
+    
     public void updateTileSets(int memAddress, int data, int bank) {
         if (memAddress >= 0x8000 && memAddress <= 0x8FFF) {
             int tileAddress = memAddress % 0x8000;
@@ -2,7 +2,7 @@ package org.the429ers.gameboy;
 
 import java.io.Serializable;
 
-public class Timer implements Serializable {
+public class Timer implements Serializable, Cloneable {
     private MMU mmu;
     public static final int[] PERIODS = new int[] { //number of cpu cycles until update
             1024, //4.096 khz
@@ -25,6 +25,17 @@ public class Timer implements Serializable {
         this.mmu = mmu;
     }
     
+    Timer fork(MMU mmu) {
+        Timer copy;
+        try {
+            copy = (Timer) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.mmu = mmu;
+        return copy;
+    }
+    
     public void tick() {
         divCounter++;
         if(divCounter >= DIV_PERIOD){
@@ -38,13 +49,38 @@ public class Timer implements Serializable {
                 countRegister++;
                 if(countRegister > 0xff){
                     countRegister = modulo;
-                    mmu.writeByte(MMU.IF_REGISTER, 0b100);
+                    mmu.requestInterrupt(InterruptHandler.TIMER_OVERFLOW);
                 }
                 counter = 0;
             }
         }
     }
     
+    //how many of the next ticks can't overflow TIMA
+    public int quietCycles() {
+        if (!timerEnabled) {
+            return Integer.MAX_VALUE;
+        }
+        int period = PERIODS[currentClock];
+        if (counter >= period || countRegister > 0xff) {
+            return 0;
+        }
+        return (period - counter) + (0xff - countRegister) * period - 1;
+    }
+    
+    //the same as ticking cycles times, for at most quietCycles() cycles
+    public void skipQuietCycles(int cycles) {
+        divCounter += cycles;
+        divRegister = (divRegister + divCounter / DIV_PERIOD) & 0xff;
+        divCounter %= DIV_PERIOD;
+        if (timerEnabled) {
+            int period = PERIODS[currentClock];
+            counter += cycles;
+            countRegister += counter / period;
+            counter %= period;
+        }
+    }
+    
     public void handleTAC(int TAC) {
         this.timerEnabled = ((TAC >> 2) & 1) == 1;
         
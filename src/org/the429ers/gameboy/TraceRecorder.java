@@ -0,0 +1,131 @@
+package org.the429ers.gameboy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/***
+ *
+ * Records every executed instruction as a fixed-size binary record in a
+ * memory-mapped file. Each record holds the state before the instruction ran
+ * and the memory writes it made. Steps spent halted are collapsed into a single
+ * record. The file grows a chunk at a time and the header says how many of
+ * the records were actually written. Use TraceTool to read the resulting files.
+ *
+ */
+public class TraceRecorder implements Closeable {
+    public static final int MAGIC = 0x47425452; //"GBTR"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 24;
+    public static final int HEADER_NUM_RECORDS = 16; //offset of the record count, which is 0 until the trace is closed
+    public static final int RECORD_SIZE = 40;
+    public static final int MAX_WRITES = 4;
+
+    //offsets of the fields within a record
+    public static final int PC = 0;
+    public static final int OPCODE = 2;
+    public static final int OPERAND = 3; //the byte after the opcode, which selects the CB instruction
+    public static final int AF = 4;
+    public static final int BC = 6;
+    public static final int DE = 8;
+    public static final int HL = 10;
+    public static final int SP = 12;
+    public static final int FLAGS = 14;
+    public static final int NUM_WRITES = 15; //can be more than MAX_WRITES, only the first ones are stored
+    public static final int CYCLES = 16;
+    public static final int WRITE_ADDRESSES = 24;
+    public static final int WRITE_VALUES = 32;
+
+    public static final int FLAG_HALTED = 1;
+
+    private static final long CHUNK_SIZE = RECORD_SIZE * (1L << 20);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header; //the first chunk, which starts with the header
+    private MappedByteBuffer buffer;
+    private long chunkEnd; //file offset at the end of the mapped chunk
+    private int current = -1; //position of the record being filled in
+    private long numRecords = 0;
+    private boolean wasHalted = false;
+
+    public TraceRecorder(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + CHUNK_SIZE);
+        chunkEnd = HEADER_SIZE + CHUNK_SIZE;
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(RECORD_SIZE);
+        header.putInt(0);
+        header.putLong(0);
+        buffer = header;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    public void beginInstruction(CPU cpu, boolean halted, long cycles) {
+        if (halted && wasHalted) {
+            return;
+        }
+        wasHalted = halted;
+        if (buffer.remaining() < RECORD_SIZE) {
+            nextChunk();
+        }
+        int pos = buffer.position();
+        RegisterFile regs = cpu.regs;
+        int pc = regs.PC.read();
+        buffer.putShort(pos + PC, (short) pc);
+        buffer.put(pos + OPCODE, (byte) cpu.mem.readByte(pc));
+        buffer.put(pos + OPERAND, (byte) cpu.mem.readByte((pc + 1) & 0xffff));
+        buffer.putShort(pos + AF, (short) regs.AF.read());
+        buffer.putShort(pos + BC, (short) regs.BC.read());
+        buffer.putShort(pos + DE, (short) regs.DE.read());
+        buffer.putShort(pos + HL, (short) regs.HL.read());
+        buffer.putShort(pos + SP, (short) regs.SP.read());
+        buffer.put(pos + FLAGS, (byte) (halted ? FLAG_HALTED : 0));
+        buffer.put(pos + NUM_WRITES, (byte) 0);
+        buffer.putLong(pos + CYCLES, cycles);
+        buffer.position(pos + RECORD_SIZE);
+        current = pos;
+        numRecords++;
+    }
+
+    public void recordWrite(int location, int value) {
+        if (current < 0) {
+            return;
+        }
+        int n = buffer.get(current + NUM_WRITES) & 0xff;
+        if (n < MAX_WRITES) {
+            buffer.putShort(current + WRITE_ADDRESSES + 2 * n, (short) location);
+            buffer.put(current + WRITE_VALUES + n, (byte) value);
+        }
+        if (n < 0xff) {
+            buffer.put(current + NUM_WRITES, (byte) (n + 1));
+        }
+    }
+
+    private void nextChunk() {
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, chunkEnd, CHUNK_SIZE);
+            chunkEnd += CHUNK_SIZE;
+            current = -1;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to grow trace file", e);
+        }
+    }
+
+    //the file isn't truncated, it can't be while chunks are still mapped on Windows
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        header.putLong(HEADER_NUM_RECORDS, numRecords);
+        header.force();
+        buffer = null;
+        channel.close();
+    }
+}
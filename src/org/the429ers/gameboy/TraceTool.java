@@ -0,0 +1,230 @@
+package org.the429ers.gameboy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.the429ers.gameboy.TraceRecorder.*;
+
+/***
+ *
+ * Command line viewer for traces written by TraceRecorder.
+ *
+ * print trace [first [count]]      prints records, numbered from 0
+ * find trace key=value ...         prints the records matching every filter
+ * diff trace1 trace2 [context]     prints the first record where the traces differ
+ *
+ * find understands pc, op and write (an address or a range like c000-dfff, all hex)
+ * as well as any register name (a, bc, sp, ...).
+ *
+ */
+public class TraceTool {
+    private static final long RECORDS_PER_CHUNK = (1 << 30) / RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final long numRecords;
+    private ByteBuffer chunk;
+    private long chunkStart = -1; //index of the first record in chunk
+
+    public TraceTool(String fileName) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException(fileName + " is not a trace file");
+        }
+        int version = header.getInt();
+        int recordSize = header.getInt();
+        if (version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException(fileName + " was recorded by an incompatible version");
+        }
+        numRecords = header.getLong(HEADER_NUM_RECORDS);
+        if (HEADER_SIZE + numRecords * RECORD_SIZE > channel.size()) {
+            throw new IOException(fileName + " is truncated");
+        }
+    }
+
+    public long size() {
+        return numRecords;
+    }
+
+    //maps the chunk containing record i and returns the record's offset in it
+    private int seek(long i) throws IOException {
+        if (chunkStart < 0 || i < chunkStart || i >= chunkStart + RECORDS_PER_CHUNK) {
+            chunkStart = i - i % RECORDS_PER_CHUNK;
+            long length = Math.min(RECORDS_PER_CHUNK, numRecords - chunkStart) * RECORD_SIZE;
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + chunkStart * RECORD_SIZE, length);
+        }
+        return (int) ((i - chunkStart) * RECORD_SIZE);
+    }
+
+    public int get16(long i, int field) throws IOException {
+        int pos = seek(i);
+        return chunk.getShort(pos + field) & 0xffff;
+    }
+
+    public int get8(long i, int field) throws IOException {
+        int pos = seek(i);
+        return chunk.get(pos + field) & 0xff;
+    }
+
+    public long getCycles(long i) throws IOException {
+        int pos = seek(i);
+        return chunk.getLong(pos + CYCLES);
+    }
+
+    public int getNumWrites(long i) throws IOException {
+        return Math.min(get8(i, NUM_WRITES), MAX_WRITES);
+    }
+
+    public int getWriteAddress(long i, int n) throws IOException {
+        return get16(i, WRITE_ADDRESSES + 2 * n);
+    }
+
+    public int getWriteValue(long i, int n) throws IOException {
+        return get8(i, WRITE_VALUES + n);
+    }
+
+    public String describe(long i) throws IOException {
+        int opcode = get8(i, OPCODE);
+        String description = opcode == 0xcb ? CPU.cbOperations[get8(i, OPERAND)].description : CPU.operations[opcode].description;
+        StringBuilder sb = new StringBuilder(String.format("%10d %04x %-14s AF=%04x BC=%04x DE=%04x HL=%04x SP=%04x cycles=%d",
+                i, get16(i, PC), description, get16(i, AF), get16(i, BC), get16(i, DE), get16(i, HL), get16(i, SP), getCycles(i)));
+        if ((get8(i, FLAGS) & FLAG_HALTED) != 0) {
+            sb.append(" halted");
+        }
+        for (int n = 0; n < getNumWrites(i); n++) {
+            sb.append(String.format(" [%04x]=%02x", getWriteAddress(i, n), getWriteValue(i, n)));
+        }
+        if (get8(i, NUM_WRITES) > MAX_WRITES) {
+            sb.append(" ...");
+        }
+        return sb.toString();
+    }
+
+    //compares everything except the cycle count
+    public boolean sameRecord(long i, TraceTool other, long j) throws IOException {
+        for (int field = PC; field < CYCLES; field++) {
+            if (get8(i, field) != other.get8(j, field)) return false;
+        }
+        for (int n = 0; n < getNumWrites(i); n++) {
+            if (getWriteAddress(i, n) != other.getWriteAddress(j, n) || getWriteValue(i, n) != other.getWriteValue(j, n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void close() throws IOException {
+        chunk = null;
+        channel.close();
+    }
+
+    interface Filter {
+        boolean matches(TraceTool trace, long i) throws IOException;
+    }
+
+    static Filter parseFilter(String arg) {
+        int eq = arg.indexOf('=');
+        if (eq < 0) {
+            throw new IllegalArgumentException("Filters look like key=value: " + arg);
+        }
+        String key = arg.substring(0, eq).toLowerCase();
+        String value = arg.substring(eq + 1);
+        int dash = value.indexOf('-');
+        int low = Integer.parseInt(dash < 0 ? value : value.substring(0, dash), 16);
+        int high = dash < 0 ? low : Integer.parseInt(value.substring(dash + 1), 16);
+        switch (key) {
+            case "pc": return (t, i) -> inRange(t.get16(i, PC), low, high);
+            case "op": return (t, i) -> inRange(t.get8(i, OPCODE), low, high);
+            case "af": return (t, i) -> inRange(t.get16(i, AF), low, high);
+            case "bc": return (t, i) -> inRange(t.get16(i, BC), low, high);
+            case "de": return (t, i) -> inRange(t.get16(i, DE), low, high);
+            case "hl": return (t, i) -> inRange(t.get16(i, HL), low, high);
+            case "sp": return (t, i) -> inRange(t.get16(i, SP), low, high);
+            //register pairs are stored big endian, so the high register comes first
+            case "a": return (t, i) -> inRange(t.get8(i, AF), low, high);
+            case "f": return (t, i) -> inRange(t.get8(i, AF + 1), low, high);
+            case "b": return (t, i) -> inRange(t.get8(i, BC), low, high);
+            case "c": return (t, i) -> inRange(t.get8(i, BC + 1), low, high);
+            case "d": return (t, i) -> inRange(t.get8(i, DE), low, high);
+            case "e": return (t, i) -> inRange(t.get8(i, DE + 1), low, high);
+            case "h": return (t, i) -> inRange(t.get8(i, HL), low, high);
+            case "l": return (t, i) -> inRange(t.get8(i, HL + 1), low, high);
+            case "write": return (t, i) -> {
+                for (int n = 0; n < t.getNumWrites(i); n++) {
+                    if (inRange(t.getWriteAddress(i, n), low, high)) return true;
+                }
+                return false;
+            };
+        }
+        throw new IllegalArgumentException("Unknown filter " + key);
+    }
+
+    private static boolean inRange(int value, int low, int high) {
+        return value >= low && value <= high;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: TraceTool print trace [first [count]]");
+        System.out.println("       TraceTool find trace key=value ...   (keys: pc, op, write, a, f, b, c, d, e, h, l, af, bc, de, hl, sp)");
+        System.out.println("       TraceTool diff trace1 trace2 [context]");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        TraceTool trace = new TraceTool(args[1]);
+        if (args[0].equals("print")) {
+            long first = args.length > 2 ? Long.parseLong(args[2]) : 0;
+            long count = args.length > 3 ? Long.parseLong(args[3]) : trace.size() - first;
+            for (long i = first; i < Math.min(trace.size(), first + count); i++) {
+                System.out.println(trace.describe(i));
+            }
+        } else if (args[0].equals("find")) {
+            List<Filter> filters = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                filters.add(parseFilter(args[i]));
+            }
+            long matches = 0;
+            search:
+            for (long i = 0; i < trace.size(); i++) {
+                for (Filter filter : filters) {
+                    if (!filter.matches(trace, i)) continue search;
+                }
+                System.out.println(trace.describe(i));
+                matches++;
+            }
+            System.out.println(matches + " of " + trace.size() + " records matched");
+        } else if (args[0].equals("diff") && args.length > 2) {
+            TraceTool other = new TraceTool(args[2]);
+            int context = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+            long length = Math.min(trace.size(), other.size());
+            long i = 0;
+            while (i < length && trace.sameRecord(i, other, i)) {
+                i++;
+            }
+            if (i == length) {
+                System.out.println(trace.size() == other.size() ? "Traces are identical"
+                        : "Traces match until record " + length + ", where the shorter one ends");
+            } else {
+                System.out.println("First difference at record " + i);
+                for (long j = Math.max(0, i - context); j <= i; j++) {
+                    System.out.println("< " + trace.describe(j));
+                    System.out.println("> " + other.describe(j));
+                }
+            }
+            other.close();
+        } else {
+            usage();
+        }
+        trace.close();
+    }
+}
@@ -0,0 +1,127 @@
+package org.the429ers.gameboy;
+
+/***
+ *
+ * Runs the emulator several frames per real frame. Only one frame of each group
+ * is drawn and pacing waits once per group, the others are emulated with the PPU
+ * keeping its timing but composing no pixels. Sound is either decimated, so each
+ * frame makes proportionally fewer samples and plays back sped up, or muted.
+ *
+ * UNLIMITED runs as fast as possible, draws at most one frame per real frame
+ * and is always muted.
+ *
+ * The menu sets the requested settings from any thread, and consumeChanged
+ * latches them for the emulation thread, which everything else is for.
+ *
+ */
+public class Turbo {
+    public static final int OFF = 1;
+    public static final int UNLIMITED = 0;
+    public static final int[] MULTIPLIERS = {OFF, 2, 4, 8, UNLIMITED};
+    public static final long SPEED_WINDOW_NANOS = 1_000_000_000L; //how often the effective speed is measured
+
+    private volatile int requestedMultiplier = OFF;
+    private volatile boolean requestedMuted = false;
+    private volatile boolean changed = true;
+    private int multiplier = OFF; //latched by consumeChanged
+    private boolean muted = false;
+
+    private long lastRender = 0;
+    private long windowStart = -1;
+    private long windowClocks = 0;
+    private volatile double effectiveSpeed = 0;
+
+    public static String describe(int multiplier) {
+        return multiplier == OFF ? "Off" : multiplier == UNLIMITED ? "Unlimited" : multiplier + "x";
+    }
+
+    //the requested multiplier, which is in effect from the next consumeChanged
+    public int getMultiplier() {
+        return requestedMultiplier;
+    }
+
+    public void setMultiplier(int multiplier) {
+        requestedMultiplier = multiplier;
+        changed = true;
+    }
+
+    public boolean isActive() {
+        return multiplier != OFF;
+    }
+
+    public boolean isMuted() {
+        return requestedMuted;
+    }
+
+    public void setMuted(boolean muted) {
+        requestedMuted = muted;
+        changed = true;
+    }
+
+    //puts the requested settings into effect and returns whether they changed since the last call,
+    //only call from the emulation thread
+    public boolean consumeChanged() {
+        if (!changed) {
+            return false;
+        }
+        changed = false;
+        multiplier = requestedMultiplier;
+        muted = requestedMuted;
+        return true;
+    }
+
+    public boolean mutesAudio() {
+        return isActive() && (muted || multiplier == UNLIMITED);
+    }
+
+    //how many times faster sound has to play
+    public int getAudioSpeed() {
+        return multiplier == UNLIMITED ? 1 : multiplier;
+    }
+
+    //frame is the number of frames emulated so far, so the next frame to run
+    public boolean shouldRender(long frame) {
+        if (multiplier == UNLIMITED) {
+            long now = System.nanoTime();
+            if (now - lastRender < FramePacer.FRAME_NANOS) {
+                return false;
+            }
+            lastRender = now;
+            return true;
+        }
+        return frame % multiplier == 0;
+    }
+
+    //whether to wait for real time after this many frames
+    public boolean shouldPace(long frame) {
+        return multiplier != UNLIMITED && frame % multiplier == 0;
+    }
+
+    //measures emulated time against real time, returns true when a new measurement is ready
+    public boolean frameDone(long totalClocks) {
+        long now = System.nanoTime();
+        if (windowStart < 0) {
+            windowStart = now;
+            windowClocks = totalClocks;
+            return false;
+        }
+        long elapsed = now - windowStart;
+        if (elapsed < SPEED_WINDOW_NANOS) {
+            return false;
+        }
+        effectiveSpeed = (totalClocks - windowClocks) * 1e9 / elapsed / Emulator.CLOCK_SPEED;
+        windowStart = now;
+        windowClocks = totalClocks;
+        return true;
+    }
+
+    //restarts the speed measurement, e.g. after a pause
+    public void resetSpeed() {
+        windowStart = -1;
+    }
+
+    //multiple of real Game Boy speed over the last measurement
+    public double getEffectiveSpeed() {
+        return effectiveSpeed;
+    }
+}
@@ -0,0 +1,90 @@
+package org.the429ers.gameboy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ *
+ * Read and write watchpoints on address ranges. The MMU only consults these
+ * for accesses to pages that have a watchpoint on them, so unwatched memory
+ * costs one array lookup per CPU access.
+ *
+ */
+public class Watchpoints {
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+    public static final int ACCESS = READ | WRITE;
+
+    private static class Watchpoint {
+        int start;
+        int end; //inclusive
+        int mode;
+
+        Watchpoint(int start, int end, int mode) {
+            this.start = start;
+            this.end = end;
+            this.mode = mode;
+        }
+
+        public String toString() {
+            String kind = mode == READ ? "read" : mode == WRITE ? "write" : "access";
+            return String.format("%s %04x-%04x", kind, start, end);
+        }
+    }
+
+    private final boolean[] watchedPages = new boolean[0x10000 >> PagedMemory.PAGE_BITS];
+    private final List<Watchpoint> watchpoints = new ArrayList<>();
+    private volatile String hit = null;
+
+    public boolean[] getWatchedPages() {
+        return watchedPages;
+    }
+
+    public boolean isEmpty() {
+        return watchpoints.isEmpty();
+    }
+
+    public void add(int start, int end, int mode) {
+        watchpoints.add(new Watchpoint(start & 0xffff, end & 0xffff, mode));
+        updatePages();
+    }
+
+    //removes every watchpoint covering the given address
+    public void remove(int location) {
+        watchpoints.removeIf(w -> location >= w.start && location <= w.end);
+        updatePages();
+    }
+
+    private void updatePages() {
+        boolean[] pages = new boolean[watchedPages.length];
+        for (Watchpoint w : watchpoints) {
+            for (int page = w.start >> PagedMemory.PAGE_BITS; page <= w.end >> PagedMemory.PAGE_BITS; page++) {
+                pages[page] = true;
+            }
+        }
+        System.arraycopy(pages, 0, watchedPages, 0, pages.length);
+    }
+
+    public void check(int location, int mode, int value, int pc) {
+        for (Watchpoint w : watchpoints) {
+            if ((w.mode & mode) != 0 && location >= w.start && location <= w.end) {
+                hit = String.format("%s of %02x at %04x by instruction at %x",
+                        mode == READ ? "Read" : "Write", value & 0xff, location, pc);
+                return;
+            }
+        }
+    }
+
+    //returns the description of the last watchpoint hit and clears it, or null if nothing was hit
+    public String consumeHit() {
+        String result = hit;
+        hit = null;
+        return result;
+    }
+
+    public void print() {
+        for (Watchpoint w : watchpoints) {
+            System.out.println(w);
+        }
+    }
+}